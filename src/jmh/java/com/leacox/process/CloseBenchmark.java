@@ -0,0 +1,76 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how long {@link FinalizedProcess#close()} takes for a process that is still running, with and without
+ * gobblers to shut down.
+ * 
+ * @author John Leacox
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CloseBenchmark {
+	@Param({ "false", "true" })
+	public boolean gobbleStreams;
+
+	private FinalizedProcessBuilder processBuilder;
+	private FinalizedProcess process;
+
+	@Setup
+	public void setUp() {
+		processBuilder = new FinalizedProcessBuilder("cat").gobbleStreams(gobbleStreams);
+	}
+
+	@Setup(Level.Invocation)
+	public void startProcess() throws IOException {
+		process = processBuilder.start();
+	}
+
+	@Benchmark
+	public void close() throws IOException {
+		process.close();
+	}
+
+	@TearDown(Level.Invocation)
+	public void closeProcess() throws IOException {
+		// In case the benchmark method failed part way through
+		process.close();
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of {@link StreamGobbler}, in MiB per second, with logging turned on and off.
+ * 
+ * <p>
+ * The {@code inMemory} benchmark gobbles a stream that is already in memory on the calling thread, which isolates the
+ * cost of reading and splitting lines. The {@code childProcess} benchmark gobbles the output of an
+ * {@link OutputGenerator} child process, which includes the pipe and the JVM start of the child. Logging goes through
+ * the no-op slf4j binding, so only the cost of the gobbler itself is measured.
+ * 
+ * @author John Leacox
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class GobblerBenchmark {
+	private static final int MEBIBYTE = 1024 * 1024;
+	private static final int IN_MEMORY_MEBIBYTES = 16;
+	private static final int CHILD_MEBIBYTES = 64;
+	private static final long TIMEOUT_MILLISECONDS = 60000;
+
+	private static final Executor CALLER_RUNS = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	@Param({ "false", "true" })
+	public boolean logging;
+
+	@Param({ "80" })
+	public int lineLength;
+
+	/**
+	 * The rate at which the child process writes its output in bytes per second, {@code 0} for as fast as possible.
+	 */
+	@Param({ "0" })
+	public long bytesPerSecond;
+
+	private byte[] output;
+	private FinalizedProcessBuilder processBuilder;
+
+	@Setup
+	public void setUp() {
+		output = OutputGenerator.lines(IN_MEMORY_MEBIBYTES * MEBIBYTE, lineLength);
+		processBuilder = new FinalizedProcessBuilder(OutputGenerator.command((long) CHILD_MEBIBYTES * MEBIBYTE,
+				bytesPerSecond, lineLength));
+		if (logging) {
+			processBuilder.gobbleStreamsWithLogging(true);
+		} else {
+			processBuilder.gobbleStreams(true);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(IN_MEMORY_MEBIBYTES)
+	public void inMemory() throws IOException {
+		StreamGobbler gobbler = new StreamGobbler(new ByteArrayInputStream(output), logging, CALLER_RUNS);
+		gobbler.gobble();
+		gobbler.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(CHILD_MEBIBYTES)
+	public int childProcess() throws IOException, InterruptedException, ProcessTimeoutException {
+		FinalizedProcess process = processBuilder.start();
+		try {
+			return process.waitFor(TIMEOUT_MILLISECONDS);
+		} finally {
+			process.close();
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A child program for the benchmarks that writes lines of output to its normal output at a configurable rate.
+ * 
+ * <pre>
+ * java -cp &lt;classpath&gt; com.leacox.process.OutputGenerator &lt;bytes&gt; [bytesPerSecond] [lineLength]
+ * </pre>
+ * 
+ * A rate of {@code 0}, the default, writes as fast as the reader allows. Lines are {@code 80} bytes long by default,
+ * including the line terminator.
+ * 
+ * @author John Leacox
+ * 
+ */
+public class OutputGenerator {
+	private static final int DEFAULT_LINE_LENGTH = 80;
+	private static final long INTERVAL_MILLISECONDS = 10;
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 1 || args.length > 3) {
+			System.err.println("Usage: OutputGenerator <bytes> [bytesPerSecond] [lineLength]");
+			System.exit(2);
+		}
+		long bytes = Long.parseLong(args[0]);
+		long bytesPerSecond = args.length > 1 ? Long.parseLong(args[1]) : 0;
+		int lineLength = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_LINE_LENGTH;
+
+		OutputStream outputStream = new BufferedOutputStream(System.out, 64 * 1024);
+		generate(outputStream, bytes, bytesPerSecond, lineLength);
+		outputStream.flush();
+	}
+
+	/**
+	 * Returns the command that runs this program in a new JVM with the classpath of the current one.
+	 */
+	static List<String> command(long bytes, long bytesPerSecond, int lineLength) {
+		List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(OutputGenerator.class.getName());
+		command.add(String.valueOf(bytes));
+		command.add(String.valueOf(bytesPerSecond));
+		command.add(String.valueOf(lineLength));
+		return command;
+	}
+
+	/**
+	 * Returns {@code bytes} bytes of lines of the given length, the same as the program writes.
+	 */
+	static byte[] lines(int bytes, int lineLength) {
+		byte[] output = new byte[bytes];
+		for (int i = 0; i < bytes; i++) {
+			output[i] = (byte) (i % lineLength == lineLength - 1 ? '\n' : 'a' + i % 26);
+		}
+		return output;
+	}
+
+	private static void generate(OutputStream outputStream, long bytes, long bytesPerSecond, int lineLength)
+			throws IOException, InterruptedException {
+		byte[] line = lines(lineLength, lineLength);
+		long start = System.nanoTime();
+		long written = 0;
+		while (written < bytes) {
+			if (bytesPerSecond > 0) {
+				long allowed = bytesPerSecond * ((System.nanoTime() - start) / 1000000 + INTERVAL_MILLISECONDS) / 1000;
+				if (written >= allowed) {
+					outputStream.flush();
+					Thread.sleep(INTERVAL_MILLISECONDS);
+					continue;
+				}
+			}
+			int length = (int) Math.min(line.length, bytes - written);
+			outputStream.write(line, 0, length);
+			written += length;
+		}
+	}
+}
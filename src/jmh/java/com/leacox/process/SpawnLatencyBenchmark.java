@@ -0,0 +1,120 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long {@link FinalizedProcessBuilder#start()} takes with each {@link LaunchMechanism} at several heap
+ * sizes.
+ * 
+ * <p>
+ * The launch mechanism is a JVM-wide setting, so every combination is measured in a new JVM that is started with the
+ * heap size pre-touched, so that the whole heap is mapped like it would be in a long running service. This is not a
+ * JMH benchmark; build it with the {@code benchmarks} profile and run it with the test classpath, passing the heap
+ * sizes to compare:
+ * 
+ * <pre>
+ * java -cp &lt;test classpath&gt; com.leacox.process.SpawnLatencyBenchmark 64m 1g 4g
+ * </pre>
+ * 
+ * Mechanisms that are not supported by the JDK and platform are reported as such.
+ * 
+ * @author John Leacox
+ * 
+ */
+public class SpawnLatencyBenchmark {
+	private static final String[] DEFAULT_HEAP_SIZES = { "64m", "1g", "4g" };
+	private static final int WARMUP_ITERATIONS = 20;
+	private static final int ITERATIONS = 200;
+	private static final long CHILD_TIMEOUT_MILLISECONDS = TimeUnit.MINUTES.toMillis(5);
+
+	public static void main(String[] args) throws Exception {
+		if (args.length == 3 && "child".equals(args[0])) {
+			measure(LaunchMechanism.valueOf(args[1]), Integer.parseInt(args[2]));
+			return;
+		}
+
+		String[] heapSizes = args.length > 0 ? args : DEFAULT_HEAP_SIZES;
+		System.out.println(String.format("%-12s %-6s %12s %12s %12s", "mechanism", "heap", "median (us)", "p99 (us)",
+				"max (us)"));
+		for (String heapSize : heapSizes) {
+			for (LaunchMechanism mechanism : LaunchMechanism.values()) {
+				System.out.println(String.format("%-12s %-6s %s", mechanism, heapSize, runChild(mechanism, heapSize)));
+			}
+		}
+	}
+
+	private static String runChild(LaunchMechanism mechanism, String heapSize) throws IOException,
+			InterruptedException, ProcessTimeoutException {
+		List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.add("-Xms" + heapSize);
+		command.add("-Xmx" + heapSize);
+		command.add("-XX:+AlwaysPreTouch");
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(SpawnLatencyBenchmark.class.getName());
+		command.add("child");
+		command.add(mechanism.name());
+		command.add(String.valueOf(ITERATIONS));
+
+		ProcessResult result = new FinalizedProcessBuilder(command).run(CHILD_TIMEOUT_MILLISECONDS);
+		if (result.getExitValue() != 0) {
+			return "failed with exit value " + result.getExitValue();
+		}
+		return result.getOutputString().replaceAll("\\s+$", "");
+	}
+
+	private static void measure(LaunchMechanism mechanism, int iterations) throws IOException,
+			InterruptedException, ProcessTimeoutException {
+		FinalizedProcessBuilder processBuilder = new FinalizedProcessBuilder("/bin/true").launchMechanism(mechanism);
+
+		long[] samples = new long[iterations];
+		for (int i = -WARMUP_ITERATIONS; i < iterations; i++) {
+			FinalizedProcess process;
+			try {
+				process = processBuilder.start();
+			} catch (Error e) {
+				// The JDK rejects launch mechanisms that the platform does not support
+				System.out.println("unsupported: " + e.getMessage());
+				return;
+			}
+			try {
+				process.waitFor(10000);
+			} finally {
+				process.close();
+			}
+			if (i >= 0) {
+				samples[i] = process.getSpawnNanoseconds();
+			}
+		}
+
+		Arrays.sort(samples);
+		System.out.println(String.format("%12d %12d %12d", toMicroseconds(samples[iterations / 2]),
+				toMicroseconds(samples[iterations * 99 / 100]), toMicroseconds(samples[iterations - 1])));
+	}
+
+	private static long toMicroseconds(long nanoseconds) {
+		return TimeUnit.NANOSECONDS.toMicros(nanoseconds);
+	}
+}
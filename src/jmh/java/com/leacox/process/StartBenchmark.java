@@ -0,0 +1,93 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the latency of {@link FinalizedProcessBuilder#start()} for a process that exits right away, with and
+ * without gobblers, against a plain {@link ProcessBuilder#start()}.
+ * 
+ * @author John Leacox
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class StartBenchmark {
+	private static final long TIMEOUT_MILLISECONDS = 10000;
+
+	@Param({ "false", "true" })
+	public boolean gobbleStreams;
+
+	private ProcessBuilder processBuilder;
+	private FinalizedProcessBuilder finalizedProcessBuilder;
+	private Process process;
+	private FinalizedProcess finalizedProcess;
+
+	@Setup
+	public void setUp() {
+		processBuilder = new ProcessBuilder("true");
+		finalizedProcessBuilder = new FinalizedProcessBuilder("true").gobbleStreams(gobbleStreams);
+	}
+
+	@Benchmark
+	public Process processBuilderStart() throws IOException {
+		process = processBuilder.start();
+		return process;
+	}
+
+	@Benchmark
+	public FinalizedProcess finalizedProcessBuilderStart() throws IOException {
+		finalizedProcess = finalizedProcessBuilder.start();
+		return finalizedProcess;
+	}
+
+	@TearDown(Level.Invocation)
+	public void tearDown() throws IOException, InterruptedException, ProcessTimeoutException {
+		if (process != null) {
+			process.waitFor();
+			process.getOutputStream().close();
+			process.getInputStream().close();
+			process.getErrorStream().close();
+			process = null;
+		}
+		if (finalizedProcess != null) {
+			finalizedProcess.waitFor(TIMEOUT_MILLISECONDS);
+			finalizedProcess.close();
+			finalizedProcess = null;
+		}
+	}
+}
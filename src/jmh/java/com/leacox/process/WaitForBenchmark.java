@@ -0,0 +1,97 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the overhead of {@link FinalizedProcess#waitFor(long)}, with its timeout, against a plain
+ * {@link Process#waitFor()}. Each invocation waits for a process that was started, and has already exited, outside of
+ * the measurement, so that only the cost of the call itself is measured and not the time the process takes to exit.
+ * 
+ * @author John Leacox
+ * 
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class WaitForBenchmark {
+	private static final long TIMEOUT_MILLISECONDS = 10000;
+
+	@State(Scope.Thread)
+	public static class PlainProcess {
+		private final ProcessBuilder processBuilder = new ProcessBuilder("true");
+		private Process process;
+
+		@Setup(Level.Invocation)
+		public void setUp() throws IOException, InterruptedException {
+			process = processBuilder.start();
+			process.waitFor();
+		}
+
+		@TearDown(Level.Invocation)
+		public void tearDown() throws IOException {
+			process.getOutputStream().close();
+			process.getInputStream().close();
+			process.getErrorStream().close();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class WrappedProcess {
+		private final FinalizedProcessBuilder processBuilder = new FinalizedProcessBuilder("true");
+		private FinalizedProcess process;
+
+		@Setup(Level.Invocation)
+		public void setUp() throws IOException, InterruptedException {
+			process = processBuilder.start();
+			// Wait on the raw process, so that the wrapper has not observed the exit yet
+			process.getProcess().waitFor();
+		}
+
+		@TearDown(Level.Invocation)
+		public void tearDown() throws IOException {
+			process.close();
+		}
+	}
+
+	@Benchmark
+	public int processWaitFor(PlainProcess state) throws InterruptedException {
+		return state.process.waitFor();
+	}
+
+	@Benchmark
+	public int finalizedProcessWaitFor(WrappedProcess state) throws InterruptedException, ProcessTimeoutException {
+		return state.process.waitFor(TIMEOUT_MILLISECONDS);
+	}
+}
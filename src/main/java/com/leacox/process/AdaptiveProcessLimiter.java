@@ -0,0 +1,270 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link ProcessLimiter} that tunes its limit at run time.
+ * 
+ * <p>
+ * The limit is adjusted with additive increase and multiplicative decrease. While processes are waiting for a permit,
+ * or all permits are in use, the limit grows by one for every {@code limit} processes that finish without signs of
+ * overload. When the machine shows signs of overload, the limit is cut to three quarters, at most once per second.
+ * The limit always stays between the minimum and maximum given to the constructor. The signs of overload are:
+ * 
+ * <ul>
+ * <li>the system load average per available processor is above {@link #maxLoadPerProcessor()}
+ * <li>the average time to launch a process is more than {@link #latencyTolerance()} times the baseline
+ * <li>the average time processes take to finish is more than {@link #latencyTolerance()} times the baseline
+ * </ul>
+ * 
+ * <p>
+ * Slowdowns of less than a millisecond are ignored. A baseline follows a faster average right away and drifts slowly
+ * towards a slower one, so a slowdown that lasts for about a hundred processes becomes the new normal and the limit can
+ * grow again.
+ * 
+ * <p>
+ * Averages are exponentially weighted, so they follow recent processes. The process lifetime signal assumes the
+ * processes that share the limiter do similar work; for unrelated workloads use separate limiters.
+ * 
+ * @author John Leacox
+ * 
+ */
+public class AdaptiveProcessLimiter extends ProcessLimiter {
+	private static final double SMOOTHING = 0.2;
+	private static final double BACKOFF = 0.75;
+	// Much slower than SMOOTHING, so that short slowdowns still stand out against the baseline
+	private static final double BASELINE_DRIFT = 0.01;
+	private static final long DEFAULT_DECREASE_INTERVAL_NANOSECONDS = TimeUnit.SECONDS.toNanos(1);
+	// Slowdowns smaller than this are scheduling noise, not contention
+	private static final long MIN_SLOWDOWN_NANOSECONDS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final int minLimit;
+	private final int maxLimit;
+	private final long decreaseIntervalNanoseconds;
+	private final OperatingSystemMXBean operatingSystem = ManagementFactory.getOperatingSystemMXBean();
+
+	private volatile double maxLoadPerProcessor = 1.0;
+	private volatile double latencyTolerance = 2.0;
+
+	private double spawnAverage = -1;
+	private double spawnBaseline = -1;
+	private double lifetimeAverage = -1;
+	private double lifetimeBaseline = -1;
+	private int finishedSinceIncrease = 0;
+	private long lastDecrease;
+
+	/**
+	 * Constructs a limiter that starts out admitting {@code minLimit} live processes and adapts its limit between
+	 * {@code minLimit} and {@code maxLimit}.
+	 * 
+	 * @param minLimit
+	 *            the lowest limit (must be greater than 0)
+	 * @param maxLimit
+	 *            the highest limit (cannot be less than minLimit)
+	 * @throws IllegalArgumentException
+	 *             if minLimit is negative or zero, or maxLimit is less than minLimit
+	 */
+	public AdaptiveProcessLimiter(int minLimit, int maxLimit) {
+		this(minLimit, maxLimit, DEFAULT_DECREASE_INTERVAL_NANOSECONDS);
+	}
+
+	AdaptiveProcessLimiter(int minLimit, int maxLimit, long decreaseIntervalNanoseconds) {
+		super(minLimit);
+		if (maxLimit < minLimit) {
+			throw new IllegalArgumentException("maxLimit: < minLimit");
+		}
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.decreaseIntervalNanoseconds = decreaseIntervalNanoseconds;
+		this.lastDecrease = System.nanoTime() - decreaseIntervalNanoseconds;
+	}
+
+	/**
+	 * Returns the lowest limit.
+	 */
+	public int getMinLimit() {
+		return minLimit;
+	}
+
+	/**
+	 * Returns the highest limit.
+	 */
+	public int getMaxLimit() {
+		return maxLimit;
+	}
+
+	/**
+	 * Returns the system load average per available processor above which the limit is decreased.
+	 * 
+	 * <p>
+	 * The initial value is {@code 1.0}.
+	 * 
+	 * @return this limiter's {@code maxLoadPerProcessor} property
+	 */
+	public double maxLoadPerProcessor() {
+		return maxLoadPerProcessor;
+	}
+
+	/**
+	 * Sets this limiter's {@code maxLoadPerProcessor} property. The load average is ignored on platforms that do not
+	 * provide one.
+	 * 
+	 * @param maxLoadPerProcessor
+	 *            the new property value (must be greater than 0)
+	 * @return this limiter
+	 * @throws IllegalArgumentException
+	 *             if maxLoadPerProcessor is negative or zero
+	 */
+	public AdaptiveProcessLimiter maxLoadPerProcessor(double maxLoadPerProcessor) {
+		if (maxLoadPerProcessor <= 0) {
+			throw new IllegalArgumentException("maxLoadPerProcessor: <= 0");
+		}
+		this.maxLoadPerProcessor = maxLoadPerProcessor;
+		return this;
+	}
+
+	/**
+	 * Returns how many times slower than their baseline launching or running processes may get before the limit is
+	 * decreased.
+	 * 
+	 * <p>
+	 * The initial value is {@code 2.0}.
+	 * 
+	 * @return this limiter's {@code latencyTolerance} property
+	 */
+	public double latencyTolerance() {
+		return latencyTolerance;
+	}
+
+	/**
+	 * Sets this limiter's {@code latencyTolerance} property.
+	 * 
+	 * @param latencyTolerance
+	 *            the new property value (must be greater than 1)
+	 * @return this limiter
+	 * @throws IllegalArgumentException
+	 *             if latencyTolerance is not greater than 1
+	 */
+	public AdaptiveProcessLimiter latencyTolerance(double latencyTolerance) {
+		if (latencyTolerance <= 1) {
+			throw new IllegalArgumentException("latencyTolerance: <= 1");
+		}
+		this.latencyTolerance = latencyTolerance;
+		return this;
+	}
+
+	/**
+	 * Returns the exponentially weighted average time to launch a process, in nanoseconds, or {@code -1} if no process
+	 * has been started yet.
+	 */
+	public synchronized long getSpawnAverageNanoseconds() {
+		return (long) spawnAverage;
+	}
+
+	/**
+	 * Returns the exponentially weighted average time processes took to finish, in nanoseconds, or {@code -1} if no
+	 * process has finished yet.
+	 */
+	public synchronized long getLifetimeAverageNanoseconds() {
+		return (long) lifetimeAverage;
+	}
+
+	@Override
+	protected synchronized void processStarted(long spawnNanoseconds) {
+		spawnAverage = average(spawnAverage, spawnNanoseconds);
+		spawnBaseline = baseline(spawnBaseline, spawnAverage);
+		if (isSlow(spawnAverage, spawnBaseline)) {
+			decrease();
+		}
+	}
+
+	@Override
+	protected synchronized void processFinished(long lifetimeNanoseconds) {
+		lifetimeAverage = average(lifetimeAverage, lifetimeNanoseconds);
+		lifetimeBaseline = baseline(lifetimeBaseline, lifetimeAverage);
+		if (isOverloaded() || isSlow(spawnAverage, spawnBaseline) || isSlow(lifetimeAverage, lifetimeBaseline)) {
+			decrease();
+		} else {
+			increase();
+		}
+	}
+
+	private static double average(double average, long sample) {
+		if (average < 0) {
+			return sample;
+		}
+		return average + SMOOTHING * (sample - average);
+	}
+
+	private static double baseline(double baseline, double average) {
+		if (baseline < 0 || average < baseline) {
+			return average;
+		}
+		return baseline + BASELINE_DRIFT * (average - baseline);
+	}
+
+	private boolean isSlow(double average, double baseline) {
+		return baseline > 0 && average > baseline * latencyTolerance && average - baseline > MIN_SLOWDOWN_NANOSECONDS;
+	}
+
+	private boolean isOverloaded() {
+		double load = systemLoadAverage();
+		if (load < 0) {
+			return false;
+		}
+		return load / operatingSystem.getAvailableProcessors() > maxLoadPerProcessor;
+	}
+
+	/**
+	 * Returns the system load average for the last minute, or a negative value if it is not available. This is the
+	 * first value of {@code /proc/loadavg} on Linux.
+	 */
+	double systemLoadAverage() {
+		return operatingSystem.getSystemLoadAverage();
+	}
+
+	private void increase() {
+		int limit = getMaxProcesses();
+		if (limit >= maxLimit) {
+			return;
+		}
+		// Only grow while the limit is what holds processes back
+		if (getQueueLength() == 0 && getActiveCount() + 1 < limit) {
+			return;
+		}
+
+		finishedSinceIncrease++;
+		if (finishedSinceIncrease >= limit) {
+			finishedSinceIncrease = 0;
+			setMaxProcesses(limit + 1);
+		}
+	}
+
+	private void decrease() {
+		long now = System.nanoTime();
+		if (now - lastDecrease < decreaseIntervalNanoseconds) {
+			return;
+		}
+		lastDecrease = now;
+		finishedSinceIncrease = 0;
+		setMaxProcesses(Math.max(minLimit, (int) (getMaxProcesses() * BACKOFF)));
+	}
+}
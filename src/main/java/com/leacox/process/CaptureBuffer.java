@@ -0,0 +1,72 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import java.util.Arrays;
+
+/**
+ * A growable byte buffer with an upper bound on its size.
+ * 
+ * <p>
+ * Bytes written after the limit has been reached are dropped and the buffer is marked as truncated, so that a stream
+ * can still be drained to the end without growing the buffer further.
+ * 
+ * @author John Leacox
+ * 
+ */
+final class CaptureBuffer {
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private final int limit;
+
+	private byte[] buffer;
+	private int size = 0;
+	private boolean truncated = false;
+
+	CaptureBuffer(int limit) {
+		if (limit < 0) {
+			throw new IllegalArgumentException("limit: < 0");
+		}
+		this.limit = limit;
+		this.buffer = new byte[Math.min(limit, INITIAL_CAPACITY)];
+	}
+
+	synchronized void write(byte[] bytes, int offset, int length) {
+		int count = Math.min(length, limit - size);
+		if (count < length) {
+			truncated = true;
+		}
+		if (count <= 0) {
+			return;
+		}
+
+		if (size + count > buffer.length) {
+			int capacity = (int) Math.min((long) limit, Math.max((long) buffer.length * 2, (long) size + count));
+			buffer = Arrays.copyOf(buffer, capacity);
+		}
+		System.arraycopy(bytes, offset, buffer, size, count);
+		size += count;
+	}
+
+	synchronized byte[] toByteArray() {
+		return Arrays.copyOf(buffer, size);
+	}
+
+	synchronized boolean isTruncated() {
+		return truncated;
+	}
+}
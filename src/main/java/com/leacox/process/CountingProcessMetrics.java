@@ -0,0 +1,214 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link ProcessMetrics} that keeps counters that can be read, or scraped by a monitoring system, at any time.
+ * 
+ * <p>
+ * All counters are updated with atomic operations and never block the threads reporting them. The counters are
+ * independent of each other, so a snapshot taken while processes are being started may be slightly inconsistent.
+ * 
+ * <pre>
+ * {@code
+ * CountingProcessMetrics metrics = new CountingProcessMetrics();
+ * FinalizedProcessBuilder pb = new FinalizedProcessBuilder("myCommand").metrics(metrics);
+ * ...
+ * long live = metrics.getLiveProcesses();}
+ * </pre>
+ * 
+ * @author John Leacox
+ * 
+ */
+public class CountingProcessMetrics implements ProcessMetrics {
+	private static final int MAX_COUNTED_EXIT_VALUE = 255;
+
+	private final AtomicLong processesStarted = new AtomicLong();
+	private final AtomicLong totalSpawnNanoseconds = new AtomicLong();
+	private final AtomicLong maxSpawnNanoseconds = new AtomicLong();
+	private final AtomicLong processesExited = new AtomicLong();
+	private final AtomicLong failedProcesses = new AtomicLong();
+	private final AtomicLongArray exitValueCounts = new AtomicLongArray(MAX_COUNTED_EXIT_VALUE + 1);
+	private final AtomicLong totalLifetimeNanoseconds = new AtomicLong();
+	private final AtomicLong maxLifetimeNanoseconds = new AtomicLong();
+	private final AtomicLong liveGobblers = new AtomicLong();
+	private final AtomicLongArray bytesGobbled = new AtomicLongArray(Stream.values().length);
+	private final AtomicLongArray linesGobbled = new AtomicLongArray(Stream.values().length);
+	private final AtomicLong waitTimeouts = new AtomicLong();
+
+	@Override
+	public void processStarted(long spawnNanoseconds) {
+		processesStarted.incrementAndGet();
+		totalSpawnNanoseconds.addAndGet(spawnNanoseconds);
+		updateMax(maxSpawnNanoseconds, spawnNanoseconds);
+	}
+
+	@Override
+	public void processExited(int exitValue, long lifetimeNanoseconds) {
+		processesExited.incrementAndGet();
+		if (exitValue != 0) {
+			failedProcesses.incrementAndGet();
+		}
+		if (exitValue >= 0 && exitValue <= MAX_COUNTED_EXIT_VALUE) {
+			exitValueCounts.incrementAndGet(exitValue);
+		}
+		totalLifetimeNanoseconds.addAndGet(lifetimeNanoseconds);
+		updateMax(maxLifetimeNanoseconds, lifetimeNanoseconds);
+	}
+
+	@Override
+	public void gobblerStarted(Stream stream) {
+		liveGobblers.incrementAndGet();
+	}
+
+	@Override
+	public void bytesGobbled(Stream stream, int bytes, int lines) {
+		bytesGobbled.addAndGet(stream.ordinal(), bytes);
+		if (lines > 0) {
+			linesGobbled.addAndGet(stream.ordinal(), lines);
+		}
+	}
+
+	@Override
+	public void gobblerFinished(Stream stream) {
+		liveGobblers.decrementAndGet();
+	}
+
+	@Override
+	public void waitTimedOut() {
+		waitTimeouts.incrementAndGet();
+	}
+
+	private static void updateMax(AtomicLong max, long value) {
+		long current;
+		while (value > (current = max.get())) {
+			if (max.compareAndSet(current, value)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of processes started.
+	 */
+	public long getProcessesStarted() {
+		return processesStarted.get();
+	}
+
+	/**
+	 * Returns the total time spent launching processes, in nanoseconds.
+	 */
+	public long getTotalSpawnNanoseconds() {
+		return totalSpawnNanoseconds.get();
+	}
+
+	/**
+	 * Returns the longest time spent launching a single process, in nanoseconds.
+	 */
+	public long getMaxSpawnNanoseconds() {
+		return maxSpawnNanoseconds.get();
+	}
+
+	/**
+	 * Returns the number of processes that have exited.
+	 */
+	public long getProcessesExited() {
+		return processesExited.get();
+	}
+
+	/**
+	 * Returns the number of processes that have been started and have not been found to have exited yet.
+	 */
+	public long getLiveProcesses() {
+		return Math.max(0, processesStarted.get() - processesExited.get());
+	}
+
+	/**
+	 * Returns the number of processes that exited with a value other than {@code 0}.
+	 */
+	public long getFailedProcesses() {
+		return failedProcesses.get();
+	}
+
+	/**
+	 * Returns the number of processes that exited with the given value. Only exit values from {@code 0} to
+	 * {@code 255} are counted individually, for other values {@code 0} is returned.
+	 * 
+	 * @param exitValue
+	 *            the exit value
+	 * @return the number of processes that exited with the value
+	 */
+	public long getExitValueCount(int exitValue) {
+		if (exitValue < 0 || exitValue > MAX_COUNTED_EXIT_VALUE) {
+			return 0;
+		}
+		return exitValueCounts.get(exitValue);
+	}
+
+	/**
+	 * Returns the total time that exited processes ran for, in nanoseconds.
+	 */
+	public long getTotalLifetimeNanoseconds() {
+		return totalLifetimeNanoseconds.get();
+	}
+
+	/**
+	 * Returns the longest time that a single exited process ran for, in nanoseconds.
+	 */
+	public long getMaxLifetimeNanoseconds() {
+		return maxLifetimeNanoseconds.get();
+	}
+
+	/**
+	 * Returns the number of gobbler tasks that are currently running, each of which occupies a thread of its executor.
+	 */
+	public long getLiveGobblers() {
+		return liveGobblers.get();
+	}
+
+	/**
+	 * Returns the number of bytes gobbled from the given stream of all processes.
+	 * 
+	 * @param stream
+	 *            the stream
+	 * @return the number of bytes gobbled
+	 */
+	public long getBytesGobbled(Stream stream) {
+		return bytesGobbled.get(stream.ordinal());
+	}
+
+	/**
+	 * Returns the number of lines gobbled from the given stream of all processes.
+	 * 
+	 * @param stream
+	 *            the stream
+	 * @return the number of lines gobbled
+	 */
+	public long getLinesGobbled(Stream stream) {
+		return linesGobbled.get(stream.ordinal());
+	}
+
+	/**
+	 * Returns the number of times a thread waiting for a process gave up because its timeout elapsed.
+	 */
+	public long getWaitTimeouts() {
+		return waitTimeouts.get();
+	}
+}
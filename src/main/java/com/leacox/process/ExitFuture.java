@@ -0,0 +1,229 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link Future} that completes with the exit value of a {@link FinalizedProcess}.
+ * 
+ * <p>
+ * Exit futures are obtained from {@link FinalizedProcess#onExit()} or {@link FinalizedProcess#onExit(long)}. They are
+ * completed by a single shared thread that watches all of the processes with pending exit futures, so no thread is
+ * blocked per process while waiting.
+ * 
+ * <p>
+ * An exit future cannot be cancelled, since it may be shared by several callers. Destroy the process instead.
+ * 
+ * @author John Leacox
+ * @see ExitListener
+ * 
+ */
+public class ExitFuture implements Future<Integer> {
+	private static final Logger logger = LoggerFactory.getLogger(ExitFuture.class);
+
+	private final FinalizedProcess process;
+	private final Object lock = new Object();
+
+	private boolean done = false;
+	private int exitValue;
+	private TimeoutException timeout;
+	private List<ExitListener> listeners = new ArrayList<ExitListener>(2);
+
+	ExitFuture(FinalizedProcess process) {
+		this.process = process;
+	}
+
+	/**
+	 * Returns the process this future belongs to.
+	 * 
+	 * @return the process this future belongs to
+	 */
+	public FinalizedProcess getProcess() {
+		return process;
+	}
+
+	/**
+	 * Adds a listener that is notified when this future completes. If the future has already completed, the listener is
+	 * notified immediately on the calling thread.
+	 * 
+	 * @param listener
+	 *            the listener to notify (cannot be null)
+	 * @throws NullPointerException
+	 *             if listener is null
+	 */
+	public void addListener(ExitListener listener) {
+		if (listener == null) {
+			throw new NullPointerException("listener: null");
+		}
+
+		synchronized (lock) {
+			if (!done) {
+				listeners.add(listener);
+				return;
+			}
+		}
+
+		notifyListener(listener);
+	}
+
+	void removeListener(ExitListener listener) {
+		synchronized (lock) {
+			if (!done) {
+				listeners.remove(listener);
+			}
+		}
+	}
+
+	boolean complete(int exitValue) {
+		List<ExitListener> toNotify;
+		synchronized (lock) {
+			if (done) {
+				return false;
+			}
+			this.exitValue = exitValue;
+			toNotify = finish();
+		}
+
+		for (ExitListener listener : toNotify) {
+			notifyListener(listener);
+		}
+		return true;
+	}
+
+	boolean timeout(TimeoutException timeout) {
+		List<ExitListener> toNotify;
+		synchronized (lock) {
+			if (done) {
+				return false;
+			}
+			this.timeout = timeout;
+			toNotify = finish();
+		}
+
+		for (ExitListener listener : toNotify) {
+			notifyListener(listener);
+		}
+		return true;
+	}
+
+	private List<ExitListener> finish() {
+		done = true;
+		lock.notifyAll();
+		List<ExitListener> toNotify = listeners;
+		listeners = null;
+		return toNotify;
+	}
+
+	// A failing listener must not keep the other listeners, or the shared reaper thread, from running
+	private void notifyListener(ExitListener listener) {
+		try {
+			if (timeout != null) {
+				listener.onTimeout(process);
+			} else {
+				listener.onExit(process, exitValue);
+			}
+		} catch (RuntimeException e) {
+			logger.warn("Exit listener failed", e);
+		}
+	}
+
+	/**
+	 * Exit futures cannot be cancelled. This method has no effect.
+	 * 
+	 * @return {@code false}
+	 */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return false;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return false;
+	}
+
+	@Override
+	public boolean isDone() {
+		synchronized (lock) {
+			return done;
+		}
+	}
+
+	/**
+	 * Waits for the process to exit and returns its exit value.
+	 * 
+	 * @return the exit value of the process
+	 * @throws InterruptedException
+	 *             if the current thread was interrupted while waiting
+	 * @throws ExecutionException
+	 *             with a {@link TimeoutException} cause if this future was obtained from
+	 *             {@link FinalizedProcess#onExit(long)} and the process did not exit in time
+	 */
+	@Override
+	public Integer get() throws InterruptedException, ExecutionException {
+		synchronized (lock) {
+			while (!done) {
+				lock.wait();
+			}
+			return result();
+		}
+	}
+
+	/**
+	 * Waits at most the given time for the process to exit and returns its exit value.
+	 * 
+	 * @return the exit value of the process
+	 * @throws InterruptedException
+	 *             if the current thread was interrupted while waiting
+	 * @throws ExecutionException
+	 *             with a {@link TimeoutException} cause if this future was obtained from
+	 *             {@link FinalizedProcess#onExit(long)} and the process did not exit in time
+	 * @throws TimeoutException
+	 *             if the wait timed out
+	 */
+	@Override
+	public Integer get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+			TimeoutException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		synchronized (lock) {
+			while (!done) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					throw new TimeoutException("process has not exited");
+				}
+				TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+			}
+			return result();
+		}
+	}
+
+	private Integer result() throws ExecutionException {
+		if (timeout != null) {
+			throw new ExecutionException(timeout);
+		}
+		return Integer.valueOf(exitValue);
+	}
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+/**
+ * A listener that is notified when a {@link FinalizedProcess} exits.
+ * 
+ * <p>
+ * Listeners are invoked on the shared thread that watches for process exits, so they should return quickly and must
+ * not block.
+ * 
+ * @author John Leacox
+ * @see ExitFuture#addListener(ExitListener)
+ * 
+ */
+public interface ExitListener {
+	/**
+	 * Invoked when the process has exited.
+	 * 
+	 * @param process
+	 *            the process that exited
+	 * @param exitValue
+	 *            the exit value of the process
+	 */
+	void onExit(FinalizedProcess process, int exitValue);
+
+	/**
+	 * Invoked when the process did not exit before the timeout given to {@link FinalizedProcess#onExit(long)}.
+	 * 
+	 * @param process
+	 *            the process that is still running
+	 */
+	void onTimeout(FinalizedProcess process);
+}
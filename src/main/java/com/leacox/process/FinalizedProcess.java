@@ -20,9 +20,15 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * A {@link Closeable} wrapper for {@link Process} for running a native process.
@@ -34,11 +40,18 @@ import java.util.TimerTask;
  * <ul>
  * 
  * <li>It implements {@link Closeable}. The {@link #close()} method will make sure that all of the processes' streams
- * are closed, and if the {@code keepProcess} flag was not set, the process is destroyed via {@link Process#destroy()}.</li>
+ * are closed, and if the {@code keepProcess} flag was not set, the process is destroyed via {@link Process#destroy()},
+ * or together with all of its descendants with {@link #destroyTree()} if the {@code destroyTree} flag was set.</li>
  * 
- * <li>It provides the {@link #waitFor(int)} method that invokes {@link Process#waitFor()} with a timeout period. If the
- * process execution takes longer than the timeout, then the thread is interrupted. This method also makes sure that the
- * thread interrupt flag is cleared</li>
+ * <li>It provides the {@link #waitFor(long)} method that waits for the process with a timeout period. If the process
+ * execution takes longer than the timeout, then a {@link ProcessTimeoutException} is thrown. The waiting thread is
+ * never interrupted, so its interrupt flag is left alone</li>
+ * 
+ * <li>It provides the {@link #onExit()} method that returns an {@link ExitFuture} which completes when the process
+ * exits, without blocking a thread per process.</li>
+ * 
+ * <li>It provides the {@link #isAlive()} and {@link #tryExitValue()} methods to poll the subprocess without catching
+ * exceptions, and {@link #waitAny(Collection, long)} to wait for the first of many processes to exit.</li>
  * 
  * </ul>
  * 
@@ -74,11 +87,40 @@ import java.util.TimerTask;
  * 
  */
 public class FinalizedProcess implements Closeable {
+	static final long DEFAULT_GRACE_PERIOD_MILLISECONDS = 2000;
+	static final long DEFAULT_DESTROY_TIMEOUT_MILLISECONDS = 5000;
+
 	private final Process process;
 	private final boolean keepProcess;
 	private final Set<StreamGobbler> streamGobblers;
+	private final StreamGobbler inputGobbler;
+	private final StreamGobbler errorGobbler;
+
+	private ExitFuture exitFuture;
+	private long spawnNanoseconds = -1;
+	private ProcessLimiter.Permit permit;
+	private ProcessMetrics metrics = NoOpProcessMetrics.NONE;
+	private ProcessTrace trace = new ProcessTrace(null);
+	private boolean destroyTreeOnClose = false;
+	private long gracePeriodMilliseconds = DEFAULT_GRACE_PERIOD_MILLISECONDS;
+	private long destroyTimeoutMilliseconds = DEFAULT_DESTROY_TIMEOUT_MILLISECONDS;
+	private volatile KillReport killReport;
+	private volatile ProcessInput input;
+	private TimeoutPolicy timeoutPolicy = TimeoutPolicy.LEAVE_RUNNING;
+	private boolean outputStreamPiped = true;
+	private boolean inputStreamPiped = true;
+	private boolean errorStreamPiped = true;
 
 	FinalizedProcess(Process process, boolean keepProcess, Set<StreamGobbler> streamGobblers) {
+		this(process, keepProcess, streamGobblers, null, null);
+	}
+
+	FinalizedProcess(Process process, boolean keepProcess, StreamGobbler inputGobbler, StreamGobbler errorGobbler) {
+		this(process, keepProcess, gobblerSet(inputGobbler, errorGobbler), inputGobbler, errorGobbler);
+	}
+
+	private FinalizedProcess(Process process, boolean keepProcess, Set<StreamGobbler> streamGobblers,
+			StreamGobbler inputGobbler, StreamGobbler errorGobbler) {
 		if (process == null) {
 			throw new NullPointerException("process: null");
 		}
@@ -86,6 +128,19 @@ public class FinalizedProcess implements Closeable {
 		this.process = process;
 		this.keepProcess = keepProcess;
 		this.streamGobblers = streamGobblers;
+		this.inputGobbler = inputGobbler;
+		this.errorGobbler = errorGobbler;
+	}
+
+	private static Set<StreamGobbler> gobblerSet(StreamGobbler inputGobbler, StreamGobbler errorGobbler) {
+		Set<StreamGobbler> gobblers = new HashSet<StreamGobbler>(2);
+		if (inputGobbler != null) {
+			gobblers.add(inputGobbler);
+		}
+		if (errorGobbler != null) {
+			gobblers.add(errorGobbler);
+		}
+		return gobblers;
 	}
 
 	/**
@@ -95,6 +150,46 @@ public class FinalizedProcess implements Closeable {
 		process.destroy();
 	}
 
+	/**
+	 * Kills the subprocess without giving it a chance to clean up, which sends {@code SIGKILL} on Unix on Java 8 and
+	 * later.
+	 */
+	void destroyForcibly() {
+		ProcessCompat.destroyForcibly(process);
+	}
+
+	/**
+	 * Destroys the subprocess together with all of its descendants, such as the commands started by a shell script.
+	 * 
+	 * <p>
+	 * Every process of the tree is first asked to terminate, which sends {@code SIGTERM} on Unix, and processes that
+	 * are still running after the {@linkplain FinalizedProcessBuilder#gracePeriodMilliseconds(long) grace period} are
+	 * killed forcibly. This method returns once all processes are gone or the
+	 * {@linkplain FinalizedProcessBuilder#destroyTimeoutMilliseconds(long) destroy timeout} elapsed.
+	 * 
+	 * <p>
+	 * Descendants are found with {@code ProcessHandle} on Java 9 and later, and through {@code /proc} on older versions
+	 * on Linux. Elsewhere only the subprocess itself is destroyed.
+	 * 
+	 * @return what happened to the processes of the tree
+	 */
+	public KillReport destroyTree() {
+		KillReport report = new ProcessTreeKiller(ProcessTree.getInstance()).kill(process, gracePeriodMilliseconds,
+				destroyTimeoutMilliseconds);
+		killReport = report;
+		return report;
+	}
+
+	/**
+	 * Returns what happened to the process tree the last time it was destroyed with {@link #destroyTree()}, which
+	 * {@link #close()} also does if {@link FinalizedProcessBuilder#destroyTree(boolean)} was set.
+	 * 
+	 * @return the last kill report, or {@code null} if the process tree was not destroyed
+	 */
+	public KillReport getKillReport() {
+		return killReport;
+	}
+
 	/**
 	 * Returns the exit value for the subprocess.
 	 * 
@@ -104,7 +199,37 @@ public class FinalizedProcess implements Closeable {
 	 *             if the subprocess represented by this {@code FinalizedProcess} object has not yet terminated
 	 */
 	public int exitValue() {
-		return process.exitValue();
+		int exitValue = process.exitValue();
+		trace.record(ProcessTrace.Phase.EXIT_OBSERVED);
+		return exitValue;
+	}
+
+	/**
+	 * Returns the exit value for the subprocess, or {@code null} if it is still running. Unlike {@link #exitValue()},
+	 * this does not throw an exception while the subprocess is running, which makes it suitable for polling.
+	 * 
+	 * <p>
+	 * On Java 8 and later this checks {@code Process.isAlive()} first. On older versions the only way to find out is
+	 * {@link Process#exitValue()}, so an exception is still thrown and caught internally there.
+	 * 
+	 * @return the exit value of the subprocess, or {@code null} if it has not yet terminated
+	 */
+	public Integer tryExitValue() {
+		Integer exitValue = ProcessCompat.tryExitValue(process);
+		if (exitValue != null) {
+			trace.record(ProcessTrace.Phase.EXIT_OBSERVED);
+		}
+		return exitValue;
+	}
+
+	/**
+	 * Tells whether the subprocess is still running, without throwing an exception like {@link #exitValue()} does.
+	 * 
+	 * @return {@code true} if the subprocess has not yet terminated
+	 * @see #tryExitValue()
+	 */
+	public boolean isAlive() {
+		return tryExitValue() == null;
 	}
 
 	/**
@@ -156,12 +281,88 @@ public class FinalizedProcess implements Closeable {
 		return process.getOutputStream();
 	}
 
+	/**
+	 * Returns the most recent bytes of the normal output of the subprocess, oldest first.
+	 * 
+	 * <p>
+	 * The tail is only captured if the input stream is gobbled and a tail capacity was set with
+	 * {@link FinalizedProcessBuilder#tailCapacity(int)}; otherwise an empty array is returned. The gobbler may still be
+	 * draining output for a short time after the subprocess exits, see {@link #awaitStreamsDrained(long)}.
+	 * 
+	 * @return a copy of the captured tail of the normal output of the subprocess
+	 */
+	public byte[] getInputStreamTail() {
+		return inputGobbler == null ? new byte[0] : inputGobbler.getTail();
+	}
+
+	/**
+	 * Returns the most recent bytes of the error output of the subprocess, oldest first.
+	 * 
+	 * <p>
+	 * The tail is only captured if the error stream is gobbled and a tail capacity was set with
+	 * {@link FinalizedProcessBuilder#tailCapacity(int)}; otherwise an empty array is returned. The gobbler may still be
+	 * draining output for a short time after the subprocess exits, see {@link #awaitStreamsDrained(long)}.
+	 * 
+	 * @return a copy of the captured tail of the error output of the subprocess
+	 */
+	public byte[] getErrorStreamTail() {
+		return errorGobbler == null ? new byte[0] : errorGobbler.getTail();
+	}
+
+	/**
+	 * Returns the number of bytes of the normal output of the subprocess that were dropped because line processing
+	 * could not keep up. See {@link FinalizedProcessBuilder#overflowPolicy(OverflowPolicy)}.
+	 * 
+	 * @return the number of dropped bytes of the normal output
+	 */
+	public long getInputStreamDroppedBytes() {
+		return inputGobbler == null ? 0 : inputGobbler.getDroppedBytes();
+	}
+
+	/**
+	 * Returns the number of bytes of the error output of the subprocess that were dropped because line processing could
+	 * not keep up. See {@link FinalizedProcessBuilder#overflowPolicy(OverflowPolicy)}.
+	 * 
+	 * @return the number of dropped bytes of the error output
+	 */
+	public long getErrorStreamDroppedBytes() {
+		return errorGobbler == null ? 0 : errorGobbler.getDroppedBytes();
+	}
+
+	/**
+	 * Waits for the stream gobblers of the subprocess to reach the end of their streams. This returns immediately if
+	 * no streams are gobbled.
+	 * 
+	 * @param timeoutMilliseconds
+	 *            the maximum time to wait, in milliseconds
+	 * @return {@code true} if all gobbled streams were drained; {@code false} if the timeout elapsed first
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted while waiting
+	 */
+	public boolean awaitStreamsDrained(long timeoutMilliseconds) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMilliseconds);
+		if (streamGobblers != null) {
+			for (StreamGobbler gobbler : streamGobblers) {
+				long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+				if (!gobbler.awaitCompletion(Math.max(0, remaining))) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Causes the current thread to wait, if necessary, until the process represented by this {@code FinalizedProcess}
 	 * object has terminated. This method returns immediately if the subprocess has already terminated. If the
 	 * subprocess has not yet terminated, the calling thread will be blocked until the subprocess exits. If the
-	 * subprocess execution takes longer than the specified {@code timeoutMilliseconds}, then the blocked thread will be
-	 * interrupted.
+	 * subprocess execution takes longer than the specified {@code timeoutMilliseconds}, then the
+	 * {@linkplain FinalizedProcessBuilder#timeoutPolicy(TimeoutPolicy) timeout policy} is applied to the subprocess and
+	 * a {@link ProcessTimeoutException} is thrown.
+	 * 
+	 * <p>
+	 * The wait is bounded by a deadline rather than by interrupting the calling thread, so the interrupt status of the
+	 * thread is never changed by a timeout.
 	 * 
 	 * @param timeoutMilliseconds
 	 *            time, in milliseconds, to wait on the subprocess blocking thread before timing out. (must be greater
@@ -170,26 +371,383 @@ public class FinalizedProcess implements Closeable {
 	 *         {@code 0} indicates normal termination.
 	 * @throws IllegalArgumentException
 	 *             if timeoutMilliseconds is negative or zero.
+	 * @throws ProcessTimeoutException
+	 *             if the subprocess execution times out
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted by another thread while it is waiting.
+	 */
+	public int waitFor(long timeoutMilliseconds) throws InterruptedException, ProcessTimeoutException {
+		return waitFor(timeoutMilliseconds, timeoutPolicy);
+	}
+
+	/**
+	 * Causes the current thread to wait, if necessary, until the process represented by this {@code FinalizedProcess}
+	 * object has terminated, like {@link #waitFor(long)}, applying the given timeout policy if the subprocess execution
+	 * takes longer than the specified {@code timeoutMilliseconds}.
+	 * 
+	 * @param timeoutMilliseconds
+	 *            time, in milliseconds, to wait on the subprocess blocking thread before timing out. (must be greater
+	 *            than 0)
+	 * @param timeoutPolicy
+	 *            what to do to the subprocess when the timeout elapses (cannot be null)
+	 * @return the exit value of the subprocess represented by this {@code Process} object. By convention, the value
+	 *         {@code 0} indicates normal termination.
+	 * @throws IllegalArgumentException
+	 *             if timeoutMilliseconds is negative or zero.
+	 * @throws NullPointerException
+	 *             if timeoutPolicy is null
+	 * @throws ProcessTimeoutException
+	 *             if the subprocess execution times out
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted by another thread while it is waiting.
+	 */
+	public int waitFor(long timeoutMilliseconds, TimeoutPolicy timeoutPolicy) throws InterruptedException,
+			ProcessTimeoutException {
+		if (timeoutMilliseconds <= 0) {
+			throw new IllegalArgumentException("timeoutMilliseconds: <= 0");
+		}
+		if (timeoutPolicy == null) {
+			throw new NullPointerException("timeoutPolicy: null");
+		}
+
+		if (!awaitExit(timeoutMilliseconds)) {
+			metrics.waitTimedOut();
+			throw timedOut(timeoutMilliseconds, timeoutPolicy);
+		}
+		return exitValue();
+	}
+
+	/**
+	 * Causes the current thread to wait, if necessary, until the process represented by this {@code FinalizedProcess}
+	 * object has terminated or the timeout elapsed. Unlike {@link #waitFor(long)}, a timeout is reported by the return
+	 * value and does not affect the subprocess.
+	 * 
+	 * <p>
+	 * On Java 8 and later this uses {@code Process.waitFor(long, TimeUnit)}. On older versions it waits for the
+	 * {@linkplain #onExit() exit future}, so in both cases the calling thread is never interrupted.
+	 * 
+	 * @param timeoutMilliseconds
+	 *            the maximum time to wait, in milliseconds
+	 * @return {@code true} if the subprocess has exited; {@code false} if the timeout elapsed first
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted by another thread while it is waiting.
+	 */
+	public boolean awaitExit(long timeoutMilliseconds) throws InterruptedException {
+		if (ProcessCompat.supportsTimedWaitFor()) {
+			return ProcessCompat.waitFor(process, Math.max(0, timeoutMilliseconds), TimeUnit.MILLISECONDS);
+		}
+
+		if (tryExitValue() != null) {
+			return true;
+		}
+		try {
+			onExit().get(Math.max(0, timeoutMilliseconds), TimeUnit.MILLISECONDS);
+			return true;
+		} catch (TimeoutException e) {
+			return false;
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	private ProcessTimeoutException timedOut(long timeoutMilliseconds, TimeoutPolicy timeoutPolicy) {
+		KillReport report = null;
+		switch (timeoutPolicy) {
+		case DESTROY:
+			process.destroy();
+			break;
+		case DESTROY_TREE:
+			report = destroyTree();
+			break;
+		default:
+			break;
+		}
+		return new ProcessTimeoutException(timeoutMilliseconds, timeoutPolicy, report);
+	}
+
+	/**
+	 * Returns a future that completes with the exit value of the subprocess when it exits. Exits are detected by a
+	 * single shared thread that watches all processes with pending exit futures, so any number of processes can be
+	 * supervised without blocking a thread on each of them. The same future is returned on each call.
+	 * 
+	 * @return a future that completes with the exit value of the subprocess
+	 */
+	public ExitFuture onExit() {
+		synchronized (this) {
+			if (exitFuture != null) {
+				return exitFuture;
+			}
+			exitFuture = new ExitFuture(this);
+		}
+
+		exitFuture.addListener(new ExitListener() {
+			@Override
+			public void onExit(FinalizedProcess process, int exitValue) {
+				trace.record(ProcessTrace.Phase.EXIT_OBSERVED);
+			}
+
+			@Override
+			public void onTimeout(FinalizedProcess process) {
+			}
+		});
+		ProcessReaper.getInstance().register(exitFuture);
+		return exitFuture;
+	}
+
+	/**
+	 * Returns a future that completes with the exit value of the subprocess when it exits, or that fails with a
+	 * {@link TimeoutException} if the subprocess has not exited after {@code timeoutMilliseconds}. Timing out does not
+	 * affect the subprocess.
+	 * 
+	 * @param timeoutMilliseconds
+	 *            time, in milliseconds, to wait for the subprocess to exit. (must be greater than 0)
+	 * @return a future that completes with the exit value of the subprocess or times out
+	 * @throws IllegalArgumentException
+	 *             if timeoutMilliseconds is negative or zero.
+	 */
+	public ExitFuture onExit(final long timeoutMilliseconds) {
+		if (timeoutMilliseconds <= 0) {
+			throw new IllegalArgumentException("timeoutMilliseconds: <= 0");
+		}
+
+		final ExitFuture exit = onExit();
+		final ExitFuture timed = new ExitFuture(this);
+		final TimeoutScheduler scheduler = TimeoutScheduler.getInstance();
+		final ExitListener relay = new ExitListener() {
+			@Override
+			public void onExit(FinalizedProcess process, int exitValue) {
+				timed.complete(exitValue);
+			}
+
+			@Override
+			public void onTimeout(FinalizedProcess process) {
+				timed.timeout(new TimeoutException("process did not exit within " + timeoutMilliseconds + "ms"));
+			}
+		};
+		final ScheduledFuture<?> deadline = scheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				exit.removeListener(relay);
+				relay.onTimeout(FinalizedProcess.this);
+			}
+		}, timeoutMilliseconds, TimeUnit.MILLISECONDS);
+		timed.addListener(new ExitListener() {
+			@Override
+			public void onExit(FinalizedProcess process, int exitValue) {
+				scheduler.cancel(deadline);
+			}
+
+			@Override
+			public void onTimeout(FinalizedProcess process) {
+			}
+		});
+		exit.addListener(relay);
+
+		return timed;
+	}
+
+	/**
+	 * Waits for any of the given processes to exit and returns the first one that did. Processes that have already
+	 * exited are returned right away.
+	 * 
+	 * <p>
+	 * The processes are watched through their {@linkplain #onExit() exit futures}, so no thread is started or blocked
+	 * per process and hundreds of processes can be waited on at once. The listeners this method adds are removed again
+	 * before it returns, so it can be called repeatedly from a supervisor loop.
+	 * 
+	 * @param processes
+	 *            the processes to wait for (cannot be null or empty)
+	 * @param timeoutMilliseconds
+	 *            time, in milliseconds, to wait for a process to exit. (must be greater than 0)
+	 * @return the first process that exited
+	 * @throws NullPointerException
+	 *             if processes is null or contains null
+	 * @throws IllegalArgumentException
+	 *             if processes is empty or timeoutMilliseconds is negative or zero
+	 * @throws TimeoutException
+	 *             if none of the processes exited in time
 	 * @throws InterruptedException
-	 *             if the subprocess execution times out or the current thread is interrupted by another thread while it
-	 *             is waiting.
+	 *             if the current thread is interrupted while it is waiting
 	 */
-	public int waitFor(long timeoutMilliseconds) throws InterruptedException {
+	public static FinalizedProcess waitAny(Collection<? extends FinalizedProcess> processes, long timeoutMilliseconds)
+			throws TimeoutException, InterruptedException {
+		if (processes == null) {
+			throw new NullPointerException("processes: null");
+		}
+		if (processes.isEmpty()) {
+			throw new IllegalArgumentException("processes: empty");
+		}
 		if (timeoutMilliseconds <= 0) {
 			throw new IllegalArgumentException("timeoutMilliseconds: <= 0");
 		}
+		for (FinalizedProcess process : processes) {
+			if (process == null) {
+				throw new NullPointerException("processes: contains null");
+			}
+			if (process.tryExitValue() != null) {
+				return process;
+			}
+		}
+
+		final FinalizedProcess[] first = new FinalizedProcess[1];
+		ExitListener listener = new ExitListener() {
+			@Override
+			public void onExit(FinalizedProcess process, int exitValue) {
+				synchronized (first) {
+					if (first[0] == null) {
+						first[0] = process;
+						first.notifyAll();
+					}
+				}
+			}
+
+			@Override
+			public void onTimeout(FinalizedProcess process) {
+			}
+		};
 
-		Timer timer = new Timer(true);
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMilliseconds);
+		List<ExitFuture> futures = new ArrayList<ExitFuture>(processes.size());
 		try {
-			InterruptTimerTask interrupter = new InterruptTimerTask(Thread.currentThread());
-			timer.schedule(interrupter, timeoutMilliseconds);
-			return process.waitFor();
+			for (FinalizedProcess process : processes) {
+				ExitFuture future = process.onExit();
+				futures.add(future);
+				future.addListener(listener);
+			}
+
+			synchronized (first) {
+				while (first[0] == null) {
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) {
+						throw new TimeoutException("No process exited within " + timeoutMilliseconds + " milliseconds");
+					}
+					TimeUnit.NANOSECONDS.timedWait(first, remaining);
+				}
+				return first[0];
+			}
 		} finally {
-			timer.cancel();
-			Thread.interrupted();
+			for (ExitFuture future : futures) {
+				future.removeListener(listener);
+			}
 		}
 	}
 
+	/**
+	 * Returns how long it took to launch the subprocess, in nanoseconds. This is the time spent in
+	 * {@link ProcessBuilder#start()}, which is dominated by the {@link LaunchMechanism} used by the JDK.
+	 * 
+	 * @return the spawn latency in nanoseconds, or {@code -1} if this process was not started by a
+	 *         {@link FinalizedProcessBuilder}
+	 */
+	public long getSpawnNanoseconds() {
+		return spawnNanoseconds;
+	}
+
+	void setSpawnNanoseconds(long spawnNanoseconds) {
+		this.spawnNanoseconds = spawnNanoseconds;
+	}
+
+	/**
+	 * Returns the timestamps of the lifecycle of the subprocess so far. The trace is updated as the subprocess
+	 * progresses, so later calls may return more phases.
+	 * 
+	 * @return the lifecycle trace of the subprocess
+	 */
+	public ProcessTrace getTrace() {
+		return trace;
+	}
+
+	void setTrace(ProcessTrace trace) {
+		this.trace = trace;
+	}
+
+	void setTimeoutPolicy(TimeoutPolicy timeoutPolicy) {
+		this.timeoutPolicy = timeoutPolicy;
+	}
+
+	/**
+	 * Makes {@link #close()} destroy the whole process tree and sets how long that may take.
+	 */
+	void setDestroyTree(boolean destroyTreeOnClose, long gracePeriodMilliseconds, long destroyTimeoutMilliseconds) {
+		this.destroyTreeOnClose = destroyTreeOnClose;
+		this.gracePeriodMilliseconds = gracePeriodMilliseconds;
+		this.destroyTimeoutMilliseconds = destroyTimeoutMilliseconds;
+	}
+
+	/**
+	 * Records which streams of the process are pipes to the JVM. Streams that were redirected elsewhere are not closed.
+	 */
+	void setPipedStreams(boolean outputStream, boolean inputStream, boolean errorStream) {
+		this.outputStreamPiped = outputStream;
+		this.inputStreamPiped = inputStream;
+		this.errorStreamPiped = errorStream;
+	}
+
+	/**
+	 * Aborts the input that is written to the process in the background when the process exits or is closed, so that
+	 * a feeder waiting for more input does not hold on to its thread forever.
+	 */
+	void feedInput(final ProcessInput input) {
+		this.input = input;
+		onExit().addListener(new ExitListener() {
+			@Override
+			public void onExit(FinalizedProcess process, int exitValue) {
+				input.cancel();
+			}
+
+			@Override
+			public void onTimeout(FinalizedProcess process) {
+			}
+		});
+	}
+
+	/**
+	 * Releases the permit when the process exits, or when it is closed if that happens first.
+	 */
+	void holdPermit(final ProcessLimiter.Permit permit) {
+		this.permit = permit;
+		onExit().addListener(new ExitListener() {
+			@Override
+			public void onExit(FinalizedProcess process, int exitValue) {
+				permit.release();
+			}
+
+			@Override
+			public void onTimeout(FinalizedProcess process) {
+			}
+		});
+	}
+
+	/**
+	 * Reports the timeouts of this process and, once it exits, its exit value and lifetime to the given metrics.
+	 */
+	void reportMetrics(final ProcessMetrics metrics) {
+		this.metrics = metrics;
+		final long started = System.nanoTime();
+		onExit().addListener(new ExitListener() {
+			@Override
+			public void onExit(FinalizedProcess process, int exitValue) {
+				metrics.processExited(exitValue, System.nanoTime() - started);
+			}
+
+			@Override
+			public void onTimeout(FinalizedProcess process) {
+			}
+		});
+	}
+
+	Process getProcess() {
+		return process;
+	}
+
+	StreamGobbler getInputGobbler() {
+		return inputGobbler;
+	}
+
+	StreamGobbler getErrorGobbler() {
+		return errorGobbler;
+	}
+
 	@Override
 	public void close() throws IOException {
 		if (streamGobblers != null) {
@@ -203,42 +761,41 @@ public class FinalizedProcess implements Closeable {
 
 		if (process != null) {
 			try {
-				if (process.getErrorStream() != null) {
+				if (errorStreamPiped && process.getErrorStream() != null) {
 					process.getErrorStream().close();
 				}
 			} catch (IOException e) {
 			}
 
 			try {
-				if (process.getInputStream() != null) {
+				if (inputStreamPiped && process.getInputStream() != null) {
 					process.getInputStream().close();
 				}
 			} catch (IOException e) {
 			}
 
 			try {
-				if (process.getOutputStream() != null) {
+				if (outputStreamPiped && process.getOutputStream() != null) {
 					process.getOutputStream().close();
 				}
 			} catch (IOException e) {
 			}
 
 			if (!keepProcess) {
-				process.destroy();
+				if (destroyTreeOnClose) {
+					destroyTree();
+				} else {
+					process.destroy();
+				}
 			}
 		}
-	}
-
-	private static class InterruptTimerTask extends TimerTask {
-		private final Thread thread;
 
-		public InterruptTimerTask(Thread t) {
-			this.thread = t;
+		if (input != null) {
+			input.cancel();
 		}
-
-		@Override
-		public void run() {
-			thread.interrupt();
+		if (permit != null) {
+			permit.release();
 		}
+		trace.record(ProcessTrace.Phase.CLOSED);
 	}
 }
@@ -18,10 +18,12 @@ package com.leacox.process;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashSet;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class wraps {@link ProcessBuilder} for creating operating system processes using the safer
@@ -72,13 +74,38 @@ import java.util.Set;
  * @see ProcessBuilder
  */
 public class FinalizedProcessBuilder {
+	private static final int DEFAULT_MAX_CAPTURE_SIZE = 16 * 1024 * 1024;
+
 	private final ProcessBuilder processBuilder;
+	private Redirect redirectInput = Redirect.PIPE;
+	private Redirect redirectOutput = Redirect.PIPE;
+	private Redirect redirectError = Redirect.PIPE;
 
 	private boolean keepProcess = false;
+	private boolean destroyTree = false;
+	private TimeoutPolicy timeoutPolicy = TimeoutPolicy.LEAVE_RUNNING;
+	private long gracePeriodMilliseconds = FinalizedProcess.DEFAULT_GRACE_PERIOD_MILLISECONDS;
+	private long destroyTimeoutMilliseconds = FinalizedProcess.DEFAULT_DESTROY_TIMEOUT_MILLISECONDS;
 	private boolean gobbleInput = false;
 	private boolean gobbleInputLogging = false;
 	private boolean gobbleError = false;
 	private boolean gobbleErrorLogging = false;
+	private Executor gobblerExecutor = StreamGobbler.sharedExecutor();
+	private int tailCapacity = 0;
+	private int maxCaptureSize = DEFAULT_MAX_CAPTURE_SIZE;
+	private LineListener inputLineListener = null;
+	private LineListener errorLineListener = null;
+	private int handoffCapacity = 0;
+	private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+	private int maxLogLinesPerSecond = 0;
+	private long maxLogBytesPerSecond = 0;
+	private int logSampleRate = 1;
+	private boolean collapseRepeatedLines = false;
+	private LaunchMechanism launchMechanism;
+	private ProcessLimiter processLimiter;
+	private long admissionTimeoutMilliseconds = -1;
+	private ProcessInput input;
+	private ProcessMetrics metrics = NoOpProcessMetrics.NONE;
 
 	/**
 	 * Constructs a process builder with the specified operating system program and arguments. This constructor does
@@ -277,6 +304,165 @@ public class FinalizedProcessBuilder {
 		return this;
 	}
 
+	/**
+	 * Returns where the normal input of the subprocess comes from.
+	 * 
+	 * <p>
+	 * The initial value is {@link Redirect#PIPE}, meaning it is written through
+	 * {@link FinalizedProcess#getOutputStream()}.
+	 * 
+	 * @return this process builder's {@code redirectInput} property
+	 */
+	public Redirect redirectInput() {
+		return redirectInput;
+	}
+
+	/**
+	 * Sets where the normal input of the subprocess comes from.
+	 * 
+	 * <p>
+	 * If this property is not {@link Redirect#PIPE}, then the input is read directly by the subprocess and
+	 * {@link FinalizedProcess#getOutputStream()} is a stream that cannot be written to.
+	 * 
+	 * @param redirectInput
+	 *            the new property value, {@link Redirect#PIPE}, {@link Redirect#INHERIT} or {@link Redirect#from(File)}
+	 * @return this process builder
+	 * @throws NullPointerException
+	 *             if redirectInput is null
+	 * @throws IllegalArgumentException
+	 *             if redirectInput writes to a file or discards
+	 * @throws UnsupportedOperationException
+	 *             if redirectInput is not {@link Redirect#PIPE} and this is running on Java 6
+	 */
+	public FinalizedProcessBuilder redirectInput(Redirect redirectInput) {
+		if (redirectInput == null) {
+			throw new NullPointerException("redirectInput: null");
+		}
+		Redirect.Type type = redirectInput.type();
+		if (type == Redirect.Type.WRITE || type == Redirect.Type.APPEND || type == Redirect.Type.DISCARD) {
+			throw new IllegalArgumentException("redirectInput: " + redirectInput);
+		}
+		ProcessCompat.redirect(processBuilder, "redirectInput", redirectInput);
+		this.redirectInput = redirectInput;
+		return this;
+	}
+
+	/**
+	 * Returns the input that is written to the normal input of the subprocess in the background.
+	 * 
+	 * <p>
+	 * The initial value is {@code null}, meaning the caller writes the input through
+	 * {@link FinalizedProcess#getOutputStream()}.
+	 * 
+	 * @return this process builder's {@code input} property
+	 */
+	public ProcessInput input() {
+		return input;
+	}
+
+	/**
+	 * Sets the input that is written to the normal input of the subprocess in the background.
+	 * 
+	 * <p>
+	 * If this property is not {@code null}, then the input is written by a task on the {@link #gobblerExecutor()
+	 * gobbler executor} alongside the gobblers, and the normal input of the subprocess is closed once all of it has
+	 * been written. Since a {@link ProcessInput} can only feed a single process, a new input needs to be set before
+	 * each subprocess is started. The input can only be used when {@link #redirectInput(Redirect) redirectInput} is
+	 * {@link Redirect#PIPE}.
+	 * 
+	 * @param input
+	 *            the new property value
+	 * @return this process builder
+	 */
+	public FinalizedProcessBuilder input(ProcessInput input) {
+		this.input = input;
+		return this;
+	}
+
+	/**
+	 * Returns where the normal output of the subprocess goes to.
+	 * 
+	 * <p>
+	 * The initial value is {@link Redirect#PIPE}, meaning it is read through {@link FinalizedProcess#getInputStream()}.
+	 * 
+	 * @return this process builder's {@code redirectOutput} property
+	 */
+	public Redirect redirectOutput() {
+		return redirectOutput;
+	}
+
+	/**
+	 * Sets where the normal output of the subprocess goes to.
+	 * 
+	 * <p>
+	 * If this property is not {@link Redirect#PIPE}, then the output is written directly by the subprocess, so it is
+	 * never read into the JVM. The input stream is not gobbled in that case, even if {@link #gobbleInputStream()} is
+	 * set, and {@link FinalizedProcess#getInputStream()} is an empty stream.
+	 * 
+	 * @param redirectOutput
+	 *            the new property value
+	 * @return this process builder
+	 * @throws NullPointerException
+	 *             if redirectOutput is null
+	 * @throws IllegalArgumentException
+	 *             if redirectOutput reads from a file
+	 * @throws UnsupportedOperationException
+	 *             if redirectOutput is not {@link Redirect#PIPE} and this is running on Java 6
+	 */
+	public FinalizedProcessBuilder redirectOutput(Redirect redirectOutput) {
+		if (redirectOutput == null) {
+			throw new NullPointerException("redirectOutput: null");
+		}
+		if (redirectOutput.type() == Redirect.Type.READ) {
+			throw new IllegalArgumentException("redirectOutput: " + redirectOutput);
+		}
+		ProcessCompat.redirect(processBuilder, "redirectOutput", redirectOutput);
+		this.redirectOutput = redirectOutput;
+		return this;
+	}
+
+	/**
+	 * Returns where the error output of the subprocess goes to.
+	 * 
+	 * <p>
+	 * The initial value is {@link Redirect#PIPE}, meaning it is read through {@link FinalizedProcess#getErrorStream()}.
+	 * 
+	 * @return this process builder's {@code redirectError} property
+	 */
+	public Redirect redirectError() {
+		return redirectError;
+	}
+
+	/**
+	 * Sets where the error output of the subprocess goes to.
+	 * 
+	 * <p>
+	 * If this property is not {@link Redirect#PIPE}, then the error output is written directly by the subprocess, so
+	 * it is never read into the JVM. The error stream is not gobbled in that case, even if {@link #gobbleErrorStream()}
+	 * is set. This property is ignored if {@link #redirectErrorStream()} is set.
+	 * 
+	 * @param redirectError
+	 *            the new property value
+	 * @return this process builder
+	 * @throws NullPointerException
+	 *             if redirectError is null
+	 * @throws IllegalArgumentException
+	 *             if redirectError reads from a file
+	 * @throws UnsupportedOperationException
+	 *             if redirectError is not {@link Redirect#PIPE} and this is running on Java 6
+	 */
+	public FinalizedProcessBuilder redirectError(Redirect redirectError) {
+		if (redirectError == null) {
+			throw new NullPointerException("redirectError: null");
+		}
+		if (redirectError.type() == Redirect.Type.READ) {
+			throw new IllegalArgumentException("redirectError: " + redirectError);
+		}
+		ProcessCompat.redirect(processBuilder, "redirectError", redirectError);
+		this.redirectError = redirectError;
+		return this;
+	}
+
 	/**
 	 * Tells whether this process builder destroys the subprocess when it is closed or not.
 	 * 
@@ -318,6 +504,134 @@ public class FinalizedProcessBuilder {
 		return this;
 	}
 
+	/**
+	 * Tells whether closing the subprocess destroys its descendants too.
+	 * 
+	 * <p>
+	 * The initial value is {@code false}, meaning only the subprocess itself is destroyed.
+	 * 
+	 * @return this process builder's {@code destroyTree} property
+	 */
+	public boolean destroyTree() {
+		return destroyTree;
+	}
+
+	/**
+	 * Sets whether closing the subprocess destroys its descendants too.
+	 * 
+	 * <p>
+	 * If this property is {@code true}, then closing a subprocess that is not {@linkplain #keepProcess(boolean) kept}
+	 * destroys it together with all of its descendants with {@link FinalizedProcess#destroyTree()}. This stops the
+	 * commands started by shell scripts and other wrappers, which would keep running after the wrapper itself is
+	 * destroyed. Closing then blocks for up to the {@linkplain #destroyTimeoutMilliseconds(long) destroy timeout}.
+	 * 
+	 * @param destroyTree
+	 *            the new property value
+	 * @return this process builder
+	 */
+	public FinalizedProcessBuilder destroyTree(boolean destroyTree) {
+		this.destroyTree = destroyTree;
+		return this;
+	}
+
+	/**
+	 * Returns how long the processes of a tree that is being destroyed have to exit before they are killed forcibly.
+	 * 
+	 * <p>
+	 * The initial value is {@code 2000} milliseconds.
+	 * 
+	 * @return this process builder's {@code gracePeriodMilliseconds} property
+	 */
+	public long gracePeriodMilliseconds() {
+		return gracePeriodMilliseconds;
+	}
+
+	/**
+	 * Sets how long the processes of a tree that is being destroyed have to exit before they are killed forcibly.
+	 * 
+	 * <p>
+	 * If this property is {@code 0}, then the processes are killed forcibly right away, without a chance to clean up.
+	 * 
+	 * @param gracePeriodMilliseconds
+	 *            the new property value (cannot be negative)
+	 * @return this process builder
+	 * @throws IllegalArgumentException
+	 *             if gracePeriodMilliseconds is negative
+	 * @see FinalizedProcess#destroyTree()
+	 */
+	public FinalizedProcessBuilder gracePeriodMilliseconds(long gracePeriodMilliseconds) {
+		if (gracePeriodMilliseconds < 0) {
+			throw new IllegalArgumentException("gracePeriodMilliseconds: < 0");
+		}
+		this.gracePeriodMilliseconds = gracePeriodMilliseconds;
+		return this;
+	}
+
+	/**
+	 * Returns the maximum time that destroying a process tree may take.
+	 * 
+	 * <p>
+	 * The initial value is {@code 5000} milliseconds.
+	 * 
+	 * @return this process builder's {@code destroyTimeoutMilliseconds} property
+	 */
+	public long destroyTimeoutMilliseconds() {
+		return destroyTimeoutMilliseconds;
+	}
+
+	/**
+	 * Sets the maximum time that destroying a process tree may take, including the grace period. Processes that are
+	 * still running when it elapses are reported as survivors in the {@link KillReport}.
+	 * 
+	 * @param destroyTimeoutMilliseconds
+	 *            the new property value (must be greater than 0)
+	 * @return this process builder
+	 * @throws IllegalArgumentException
+	 *             if destroyTimeoutMilliseconds is negative or zero
+	 * @see FinalizedProcess#destroyTree()
+	 */
+	public FinalizedProcessBuilder destroyTimeoutMilliseconds(long destroyTimeoutMilliseconds) {
+		if (destroyTimeoutMilliseconds <= 0) {
+			throw new IllegalArgumentException("destroyTimeoutMilliseconds: <= 0");
+		}
+		this.destroyTimeoutMilliseconds = destroyTimeoutMilliseconds;
+		return this;
+	}
+
+	/**
+	 * Returns what {@link FinalizedProcess#waitFor(long)} does to the subprocess when the timeout elapses.
+	 * 
+	 * <p>
+	 * The initial value is {@link TimeoutPolicy#LEAVE_RUNNING}, meaning the subprocess is left running.
+	 * 
+	 * @return this process builder's {@code timeoutPolicy} property
+	 */
+	public TimeoutPolicy timeoutPolicy() {
+		return timeoutPolicy;
+	}
+
+	/**
+	 * Sets what {@link FinalizedProcess#waitFor(long)} does to the subprocess when the timeout elapses. This also
+	 * applies to the timeout of {@link #run(long)}.
+	 * 
+	 * <p>
+	 * With {@link TimeoutPolicy#DESTROY} or {@link TimeoutPolicy#DESTROY_TREE} a runaway subprocess stops using
+	 * resources as soon as its time is up, instead of when it is closed.
+	 * 
+	 * @param timeoutPolicy
+	 *            the new property value
+	 * @return this process builder
+	 * @throws NullPointerException
+	 *             if timeoutPolicy is null
+	 */
+	public FinalizedProcessBuilder timeoutPolicy(TimeoutPolicy timeoutPolicy) {
+		if (timeoutPolicy == null) {
+			throw new NullPointerException("timeoutPolicy: null");
+		}
+		this.timeoutPolicy = timeoutPolicy;
+		return this;
+	}
+
 	/**
 	 * Tells whether the created sub process will gobble the input stream or not.
 	 * 
@@ -524,6 +838,498 @@ public class FinalizedProcessBuilder {
 		return this;
 	}
 
+	/**
+	 * Returns the executor that stream gobblers of the created sub processes run on.
+	 * 
+	 * <p>
+	 * By default this is the pool shared by all stream gobblers, see {@link StreamGobbler#sharedExecutor()}.
+	 * 
+	 * @return this process builder's {@code gobblerExecutor} property
+	 */
+	public Executor gobblerExecutor() {
+		return gobblerExecutor;
+	}
+
+	/**
+	 * Sets this process builder's {@code gobblerExecutor} property.
+	 * 
+	 * <p>
+	 * Each gobbled stream occupies a thread of the executor until the stream ends, so the executor must be able to run
+	 * a task for every stream being gobbled at the same time. A cached thread pool with a custom {@code ThreadFactory}
+	 * can be used to control thread naming, priority, and stack size.
+	 * 
+	 * @param gobblerExecutor
+	 *            the new property value (cannot be null)
+	 * @return this process builder
+	 * @throws NullPointerException
+	 *             if gobblerExecutor is null
+	 */
+	public FinalizedProcessBuilder gobblerExecutor(Executor gobblerExecutor) {
+		if (gobblerExecutor == null) {
+			throw new NullPointerException("gobblerExecutor: null");
+		}
+		this.gobblerExecutor = gobblerExecutor;
+		return this;
+	}
+
+	/**
+	 * Returns the number of bytes of each gobbled stream that the created sub processes keep.
+	 * 
+	 * <p>
+	 * If this property is greater than {@code 0}, then the most recent bytes of each gobbled stream are kept in a ring
+	 * buffer of this size and are available from {@link FinalizedProcess#getInputStreamTail()} and
+	 * {@link FinalizedProcess#getErrorStreamTail()}. The initial value is {@code 0}, meaning no tail is kept.
+	 * 
+	 * @return this process builder's {@code tailCapacity} property
+	 */
+	public int tailCapacity() {
+		return tailCapacity;
+	}
+
+	/**
+	 * Sets this process builder's {@code tailCapacity} property.
+	 * 
+	 * <p>
+	 * If this property is greater than {@code 0}, then the most recent bytes of each gobbled stream are kept in a ring
+	 * buffer of this size and are available from {@link FinalizedProcess#getInputStreamTail()} and
+	 * {@link FinalizedProcess#getErrorStreamTail()}. Streams that are not gobbled are not captured.
+	 * 
+	 * @param tailCapacity
+	 *            the new property value, in bytes per stream (cannot be negative)
+	 * @return this process builder
+	 * @throws IllegalArgumentException
+	 *             if tailCapacity is negative
+	 */
+	public FinalizedProcessBuilder tailCapacity(int tailCapacity) {
+		if (tailCapacity < 0) {
+			throw new IllegalArgumentException("tailCapacity: < 0");
+		}
+		this.tailCapacity = tailCapacity;
+		return this;
+	}
+
+	/**
+	 * Returns the listener that is called for each line of the gobbled input stream of the created sub processes.
+	 * 
+	 * <p>
+	 * The initial value is {@code null}, meaning no listener is called.
+	 * 
+	 * @return this process builder's {@code inputLineListener} property
+	 */
+	public LineListener inputLineListener() {
+		return inputLineListener;
+	}
+
+	/**
+	 * Sets this process builder's {@code inputLineListener} property.
+	 * 
+	 * <p>
+	 * If this property is not {@code null} and the input stream is gobbled, then the listener is called for each line
+	 * of the input stream with a view of a reused buffer. See {@link LineListener}.
+	 * 
+	 * @param inputLineListener
+	 *            the new property value, or {@code null} for no listener
+	 * @return this process builder
+	 */
+	public FinalizedProcessBuilder inputLineListener(LineListener inputLineListener) {
+		this.inputLineListener = inputLineListener;
+		return this;
+	}
+
+	/**
+	 * Returns the listener that is called for each line of the gobbled error stream of the created sub processes.
+	 * 
+	 * <p>
+	 * The initial value is {@code null}, meaning no listener is called.
+	 * 
+	 * @return this process builder's {@code errorLineListener} property
+	 */
+	public LineListener errorLineListener() {
+		return errorLineListener;
+	}
+
+	/**
+	 * Sets this process builder's {@code errorLineListener} property.
+	 * 
+	 * <p>
+	 * If this property is not {@code null} and the error stream is gobbled, then the listener is called for each line
+	 * of the error stream with a view of a reused buffer. See {@link LineListener}.
+	 * 
+	 * @param errorLineListener
+	 *            the new property value, or {@code null} for no listener
+	 * @return this process builder
+	 */
+	public FinalizedProcessBuilder errorLineListener(LineListener errorLineListener) {
+		this.errorLineListener = errorLineListener;
+		return this;
+	}
+
+	/**
+	 * Returns the maximum number of lines of each gobbled stream that are logged per second.
+	 * 
+	 * <p>
+	 * The initial value is {@code 0}, meaning there is no limit.
+	 * 
+	 * @return this process builder's {@code maxLogLinesPerSecond} property
+	 */
+	public int maxLogLinesPerSecond() {
+		return maxLogLinesPerSecond;
+	}
+
+	/**
+	 * Sets this process builder's {@code maxLogLinesPerSecond} property.
+	 * 
+	 * <p>
+	 * If this property is greater than {@code 0}, then at most this many lines of each logged stream are logged per
+	 * second. Lines over the limit are skipped without being decoded, and a summary of the number of skipped lines is
+	 * logged instead. This protects the logging pipeline from a process that prints in a tight loop.
+	 * 
+	 * @param maxLogLinesPerSecond
+	 *            the new property value, or {@code 0} for no limit (cannot be negative)
+	 * @return this process builder
+	 * @throws IllegalArgumentException
+	 *             if maxLogLinesPerSecond is negative
+	 */
+	public FinalizedProcessBuilder maxLogLinesPerSecond(int maxLogLinesPerSecond) {
+		if (maxLogLinesPerSecond < 0) {
+			throw new IllegalArgumentException("maxLogLinesPerSecond: < 0");
+		}
+		this.maxLogLinesPerSecond = maxLogLinesPerSecond;
+		return this;
+	}
+
+	/**
+	 * Returns the maximum number of bytes of each gobbled stream that are logged per second.
+	 * 
+	 * <p>
+	 * The initial value is {@code 0}, meaning there is no limit.
+	 * 
+	 * @return this process builder's {@code maxLogBytesPerSecond} property
+	 */
+	public long maxLogBytesPerSecond() {
+		return maxLogBytesPerSecond;
+	}
+
+	/**
+	 * Sets this process builder's {@code maxLogBytesPerSecond} property.
+	 * 
+	 * <p>
+	 * If this property is greater than {@code 0}, then at most this many bytes of each logged stream are logged per
+	 * second. Lines over the limit are skipped without being decoded, and a summary of the number of skipped lines is
+	 * logged instead.
+	 * 
+	 * @param maxLogBytesPerSecond
+	 *            the new property value, or {@code 0} for no limit (cannot be negative)
+	 * @return this process builder
+	 * @throws IllegalArgumentException
+	 *             if maxLogBytesPerSecond is negative
+	 */
+	public FinalizedProcessBuilder maxLogBytesPerSecond(long maxLogBytesPerSecond) {
+		if (maxLogBytesPerSecond < 0) {
+			throw new IllegalArgumentException("maxLogBytesPerSecond: < 0");
+		}
+		this.maxLogBytesPerSecond = maxLogBytesPerSecond;
+		return this;
+	}
+
+	/**
+	 * Returns how many lines of each gobbled stream are logged per line that is actually logged.
+	 * 
+	 * <p>
+	 * The initial value is {@code 1}, meaning every line is logged.
+	 * 
+	 * @return this process builder's {@code logSampleRate} property
+	 */
+	public int logSampleRate() {
+		return logSampleRate;
+	}
+
+	/**
+	 * Sets this process builder's {@code logSampleRate} property.
+	 * 
+	 * <p>
+	 * If this property is greater than {@code 1}, then only one out of every {@code logSampleRate} lines of each logged
+	 * stream is logged. The other lines are skipped without being decoded, and a summary of the number of skipped lines
+	 * is logged at the end of the stream.
+	 * 
+	 * @param logSampleRate
+	 *            the new property value (must be greater than 0)
+	 * @return this process builder
+	 * @throws IllegalArgumentException
+	 *             if logSampleRate is negative or zero
+	 */
+	public FinalizedProcessBuilder logSampleRate(int logSampleRate) {
+		if (logSampleRate <= 0) {
+			throw new IllegalArgumentException("logSampleRate: <= 0");
+		}
+		this.logSampleRate = logSampleRate;
+		return this;
+	}
+
+	/**
+	 * Returns whether consecutive identical lines of each logged stream are collapsed into a repeat count.
+	 * 
+	 * <p>
+	 * The initial value is {@code false}.
+	 * 
+	 * @return this process builder's {@code collapseRepeatedLines} property
+	 */
+	public boolean collapseRepeatedLines() {
+		return collapseRepeatedLines;
+	}
+
+	/**
+	 * Sets this process builder's {@code collapseRepeatedLines} property.
+	 * 
+	 * <p>
+	 * If this property is {@code true}, then a line of a logged stream that is byte for byte identical to the previous
+	 * line is not logged again. Instead a single "last line repeated N times" message is logged once a different line
+	 * arrives or the stream ends. Repeated lines do not count towards {@link #maxLogLinesPerSecond()} or
+	 * {@link #maxLogBytesPerSecond()}.
+	 * 
+	 * @param collapseRepeatedLines
+	 *            the new property value
+	 * @return this process builder
+	 */
+	public FinalizedProcessBuilder collapseRepeatedLines(boolean collapseRepeatedLines) {
+		this.collapseRepeatedLines = collapseRepeatedLines;
+		return this;
+	}
+
+	/**
+	 * Returns the mechanism the JDK is asked to launch the process with.
+	 * 
+	 * <p>
+	 * The initial value is {@code null}, meaning the JDK default or the {@code jdk.lang.Process.launchMechanism}
+	 * system property is used.
+	 * 
+	 * @return this process builder's {@code launchMechanism} property
+	 */
+	public LaunchMechanism launchMechanism() {
+		return launchMechanism;
+	}
+
+	/**
+	 * Sets this process builder's {@code launchMechanism} property.
+	 * 
+	 * <p>
+	 * The JDK chooses the launch mechanism once for the whole JVM, see {@link LaunchMechanism}. If this property is not
+	 * {@code null}, then {@link #start()} sets the {@code jdk.lang.Process.launchMechanism} system property before
+	 * the first process is started, and fails with an {@link IllegalStateException} if a different mechanism has
+	 * already been chosen or a process has already been started with the JDK default. Processes started by other
+	 * code in the JVM cannot be detected, so this should be set before anything else starts a process.
+	 * 
+	 * @param launchMechanism
+	 *            the new property value, or {@code null} to use the JDK default
+	 * @return this process builder
+	 */
+	public FinalizedProcessBuilder launchMechanism(LaunchMechanism launchMechanism) {
+		this.launchMechanism = launchMechanism;
+		return this;
+	}
+
+	/**
+	 * Returns the limiter that started processes count against.
+	 * 
+	 * <p>
+	 * The initial value is {@code null}, meaning the number of processes is not limited.
+	 * 
+	 * @return this process builder's {@code processLimiter} property
+	 */
+	public ProcessLimiter processLimiter() {
+		return processLimiter;
+	}
+
+	/**
+	 * Sets this process builder's {@code processLimiter} property.
+	 * 
+	 * <p>
+	 * If this property is not {@code null}, then {@link #start()} takes a permit from the limiter before starting the
+	 * process, waiting up to {@link #admissionTimeoutMilliseconds()} for one if the limit has been reached. The permit
+	 * is released when the process exits or is closed, whichever comes first. Share one limiter between all of the
+	 * builders that should count against the same limit.
+	 * 
+	 * @param processLimiter
+	 *            the new property value, or {@code null} for no limit
+	 * @return this process builder
+	 */
+	public FinalizedProcessBuilder processLimiter(ProcessLimiter processLimiter) {
+		this.processLimiter = processLimiter;
+		return this;
+	}
+
+	/**
+	 * Returns how long, in milliseconds, {@link #start()} waits for the process limiter to admit a new process.
+	 * 
+	 * <p>
+	 * The initial value is {@code -1}, meaning it waits as long as necessary.
+	 * 
+	 * @return this process builder's {@code admissionTimeoutMilliseconds} property
+	 */
+	public long admissionTimeoutMilliseconds() {
+		return admissionTimeoutMilliseconds;
+	}
+
+	/**
+	 * Sets this process builder's {@code admissionTimeoutMilliseconds} property.
+	 * 
+	 * <p>
+	 * If the {@link #processLimiter(ProcessLimiter) process limiter} does not admit the process within this time,
+	 * {@link #start()} fails with a {@link ProcessAdmissionException}. A negative value waits as long as necessary, and
+	 * {@code 0} fails right away if the limit has been reached.
+	 * 
+	 * @param admissionTimeoutMilliseconds
+	 *            the new property value
+	 * @return this process builder
+	 */
+	public FinalizedProcessBuilder admissionTimeoutMilliseconds(long admissionTimeoutMilliseconds) {
+		this.admissionTimeoutMilliseconds = admissionTimeoutMilliseconds;
+		return this;
+	}
+
+	/**
+	 * Returns the metrics that the processes started by this process builder report to.
+	 * 
+	 * <p>
+	 * The initial value is a {@link NoOpProcessMetrics} that ignores all metrics.
+	 * 
+	 * @return this process builder's {@code metrics} property
+	 */
+	public ProcessMetrics metrics() {
+		return metrics;
+	}
+
+	/**
+	 * Sets the metrics that the processes started by this process builder report to.
+	 * 
+	 * <p>
+	 * Each started process reports its spawn latency, its exit value and lifetime once it exits, and the timeouts of
+	 * {@link FinalizedProcess#waitFor(long)}. Its gobblers report when they start and finish and the bytes and lines
+	 * they read. Exits are detected by the same shared thread as {@link FinalizedProcess#onExit()}, which is only
+	 * used when metrics are set.
+	 * 
+	 * @param metrics
+	 *            the new property value
+	 * @return this process builder
+	 * @throws NullPointerException
+	 *             if metrics is null
+	 * @see CountingProcessMetrics
+	 */
+	public FinalizedProcessBuilder metrics(ProcessMetrics metrics) {
+		if (metrics == null) {
+			throw new NullPointerException("metrics: null");
+		}
+		this.metrics = metrics;
+		return this;
+	}
+
+	/**
+	 * Returns the size of the buffer between reading a gobbled stream and processing its lines.
+	 * 
+	 * <p>
+	 * If this property is greater than {@code 0}, then the lines of gobbled streams that are logged or passed to a line
+	 * listener are processed on a separate task from the one reading the stream, with a buffer of this many bytes in
+	 * between. The initial value is {@code 0}, meaning lines are processed on the reading task.
+	 * 
+	 * @return this process builder's {@code handoffCapacity} property
+	 */
+	public int handoffCapacity() {
+		return handoffCapacity;
+	}
+
+	/**
+	 * Sets this process builder's {@code handoffCapacity} property.
+	 * 
+	 * <p>
+	 * If this property is greater than {@code 0}, then the lines of gobbled streams that are logged or passed to a line
+	 * listener are processed on a separate task from the one reading the stream, with a buffer of this many bytes in
+	 * between. A slow log appender or listener then does not stall the reader, so the process can keep writing at full
+	 * speed. What happens when the buffer fills up is set with {@link #overflowPolicy(OverflowPolicy)}.
+	 * 
+	 * @param handoffCapacity
+	 *            the new property value, in bytes per stream (cannot be negative)
+	 * @return this process builder
+	 * @throws IllegalArgumentException
+	 *             if handoffCapacity is negative
+	 */
+	public FinalizedProcessBuilder handoffCapacity(int handoffCapacity) {
+		if (handoffCapacity < 0) {
+			throw new IllegalArgumentException("handoffCapacity: < 0");
+		}
+		this.handoffCapacity = handoffCapacity;
+		return this;
+	}
+
+	/**
+	 * Returns what the stream gobblers do when line processing falls behind by more than the
+	 * {@link #handoffCapacity()}.
+	 * 
+	 * <p>
+	 * The initial value is {@link OverflowPolicy#BLOCK}.
+	 * 
+	 * @return this process builder's {@code overflowPolicy} property
+	 */
+	public OverflowPolicy overflowPolicy() {
+		return overflowPolicy;
+	}
+
+	/**
+	 * Sets this process builder's {@code overflowPolicy} property.
+	 * 
+	 * <p>
+	 * With {@link OverflowPolicy#BLOCK} no output is lost, but the process is eventually slowed down by slow line
+	 * processing. With the dropping policies the process is never slowed down, and the number of dropped bytes is
+	 * available from {@link FinalizedProcess#getInputStreamDroppedBytes()} and
+	 * {@link FinalizedProcess#getErrorStreamDroppedBytes()}.
+	 * 
+	 * @param overflowPolicy
+	 *            the new property value (cannot be null)
+	 * @return this process builder
+	 * @throws NullPointerException
+	 *             if overflowPolicy is null
+	 */
+	public FinalizedProcessBuilder overflowPolicy(OverflowPolicy overflowPolicy) {
+		if (overflowPolicy == null) {
+			throw new NullPointerException("overflowPolicy: null");
+		}
+		this.overflowPolicy = overflowPolicy;
+		return this;
+	}
+
+	/**
+	 * Returns the maximum number of bytes of each stream that {@link #run(long)} captures.
+	 * 
+	 * <p>
+	 * Output beyond this size is still drained from the process but is dropped, and the result is marked as truncated.
+	 * The initial value is 16 MiB.
+	 * 
+	 * @return this process builder's {@code maxCaptureSize} property
+	 */
+	public int maxCaptureSize() {
+		return maxCaptureSize;
+	}
+
+	/**
+	 * Sets this process builder's {@code maxCaptureSize} property.
+	 * 
+	 * <p>
+	 * Output beyond this size is still drained from the process but is dropped, and the result is marked as truncated.
+	 * This bounds the memory used by {@link #run(long)} no matter how much output the process writes.
+	 * 
+	 * @param maxCaptureSize
+	 *            the new property value, in bytes per stream (cannot be negative)
+	 * @return this process builder
+	 * @throws IllegalArgumentException
+	 *             if maxCaptureSize is negative
+	 */
+	public FinalizedProcessBuilder maxCaptureSize(int maxCaptureSize) {
+		if (maxCaptureSize < 0) {
+			throw new IllegalArgumentException("maxCaptureSize: < 0");
+		}
+		this.maxCaptureSize = maxCaptureSize;
+		return this;
+	}
+
 	/**
 	 * Starts a new process using the attributes of this process builder.
 	 * 
@@ -581,24 +1387,328 @@ public class FinalizedProcessBuilder {
 	 *             denies write access to the file
 	 * 
 	 *             </ul>
+	 * @throws IllegalStateException
+	 *             if the {@link #launchMechanism(LaunchMechanism) launch mechanism} can no longer be chosen
+	 * @throws ProcessAdmissionException
+	 *             if the {@link #processLimiter(ProcessLimiter) process limiter} did not admit the process in time
+	 * @throws InterruptedIOException
+	 *             if the current thread is interrupted while it is waiting for the process limiter
 	 * @throws IOException
 	 *             if an I/O error occurs
 	 */
 	public FinalizedProcess start() throws IOException {
-		Process process = processBuilder.start();
+		return start(false);
+	}
+
+	/**
+	 * Runs a new process using the attributes of this process builder, waits for it to exit, and returns its exit
+	 * value along with everything it wrote to its normal and error output.
+	 * 
+	 * <p>
+	 * Both streams are drained at the same time while the process runs, so the process can never block on a full pipe.
+	 * Up to {@link #maxCaptureSize()} bytes of each stream are kept. The streams are also logged if logging is enabled
+	 * for them. Streams that are redirected away from the JVM are captured as empty. The process is closed before this
+	 * method returns.
+	 * 
+	 * <p>
+	 * The streams are read until the process exits and then until their end, within the same timeout. If they are
+	 * still open when the timeout elapses, the output captured so far is returned and the result is marked as not
+	 * {@linkplain ProcessResult#isComplete() complete}.
+	 * 
+	 * <p>
+	 * Here is an example that runs a command and reads its output:
+	 * 
+	 * <pre>
+	 * {@code
+	 * ProcessResult result = new FinalizedProcessBuilder("myCommand", "myArg").run(5000);
+	 * if (result.getExitValue() == 0) {
+	 *   String output = result.getOutputString();
+	 * }}
+	 * </pre>
+	 * 
+	 * @param timeoutMilliseconds
+	 *            time, in milliseconds, to wait for the process to exit. (must be greater than 0)
+	 * @return the exit value and captured output of the process
+	 * @throws IllegalArgumentException
+	 *             if timeoutMilliseconds is negative or zero.
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws ProcessTimeoutException
+	 *             if the process execution times out, after the {@link #timeoutPolicy(TimeoutPolicy) timeout policy}
+	 *             was applied
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted while it is waiting
+	 * @see #start()
+	 */
+	public ProcessResult run(long timeoutMilliseconds) throws IOException, InterruptedException,
+			ProcessTimeoutException {
+		if (timeoutMilliseconds <= 0) {
+			throw new IllegalArgumentException("timeoutMilliseconds: <= 0");
+		}
+
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMilliseconds);
+		FinalizedProcess process = start(true);
+		try {
+			int exitValue = process.waitFor(timeoutMilliseconds);
+
+			// Output written just before the exit may still be in the pipes
+			long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			boolean drained = process.awaitStreamsDrained(Math.max(0, remaining));
+
+			StreamGobbler inputGobbler = process.getInputGobbler();
+			StreamGobbler errorGobbler = process.getErrorGobbler();
+			return new ProcessResult(exitValue, captured(inputGobbler), isCaptureTruncated(inputGobbler),
+					captured(errorGobbler), isCaptureTruncated(errorGobbler), drained);
+		} finally {
+			process.close();
+		}
+	}
+
+	// Redirected streams are not gobbled, so there is nothing captured for them
+	private static byte[] captured(StreamGobbler gobbler) {
+		return gobbler == null ? new byte[0] : gobbler.getCaptured();
+	}
+
+	private static boolean isCaptureTruncated(StreamGobbler gobbler) {
+		return gobbler != null && gobbler.isCaptureTruncated();
+	}
+
+	/**
+	 * Starts a pipeline of processes, one for each of the given process builders, where the normal output of each
+	 * process is connected to the normal input of the next one, like {@code cmdA | cmdB | cmdC} in a shell.
+	 * 
+	 * <p>
+	 * On Java 9 and later the processes are connected directly by the operating system with
+	 * {@code ProcessBuilder.startPipeline}, so the bytes passed between them never go through the JVM. On older
+	 * versions of Java the bytes are copied between the processes by tasks on the {@link #gobblerExecutor() gobbler
+	 * executor} of the upstream process builder.
+	 * 
+	 * <p>
+	 * The normal input of the first process and the normal output of the last process are available from the
+	 * returned pipeline, and the {@link #input(ProcessInput) input} of the first process builder is written to the
+	 * first process. The normal output of the other processes is never gobbled, regardless of their process
+	 * builders; their error output is handled as usual. Each process counts against the
+	 * {@link #processLimiter(ProcessLimiter) process limiter} of its process builder.
+	 * 
+	 * @param processBuilders
+	 *            the process builders of the stages of the pipeline, in order (cannot be empty)
+	 * @return the started pipeline
+	 * @throws NullPointerException
+	 *             if processBuilders or one of its elements is null
+	 * @throws IllegalArgumentException
+	 *             if processBuilders is empty
+	 * @throws IOException
+	 *             if a process could not be started, in which case the processes started so far are closed
+	 * @see #start()
+	 */
+	public static ProcessPipeline startPipeline(List<FinalizedProcessBuilder> processBuilders) throws IOException {
+		return ProcessPipeline.startStages(processBuilders);
+	}
+
+	private FinalizedProcess start(boolean capture) throws IOException {
+		ProcessTrace trace = newTrace();
+		ProcessInput input = claimInput();
+		ProcessLimiter.Permit permit;
+		try {
+			permit = admit();
+		} catch (IOException e) {
+			unclaimInput(input);
+			throw e;
+		}
+		FinalizedProcess finalizedProcess;
+		try {
+			selectLaunchMechanism();
+			LaunchMechanism.processStarting();
+			long spawnStart = System.nanoTime();
+			Process process;
+			try {
+				process = processBuilder.start();
+			} catch (IOException e) {
+				unclaimInput(input);
+				throw e;
+			} catch (RuntimeException e) {
+				unclaimInput(input);
+				throw e;
+			}
+			long spawned = System.nanoTime();
+			trace.record(ProcessTrace.Phase.SPAWNED, spawned);
+
+			finalizedProcess = wrap(trace, process, spawned - spawnStart, gobbleInput || capture, capture, input);
+		} catch (IOException e) {
+			releasePermit(permit);
+			throw e;
+		} catch (RuntimeException e) {
+			releasePermit(permit);
+			throw e;
+		}
+		holdPermit(finalizedProcess, permit);
+		return finalizedProcess;
+	}
+
+	/**
+	 * Returns a new trace for a process of this process builder, with the start requested now.
+	 */
+	ProcessTrace newTrace() {
+		List<String> command = processBuilder.command();
+		ProcessTrace trace = new ProcessTrace(command.isEmpty() ? null : command.get(0));
+		trace.record(ProcessTrace.Phase.START_REQUESTED);
+		return trace;
+	}
+
+	/**
+	 * Claims the input for a process that is about to be started, so that an input that cannot be used fails before a
+	 * process is spawned.
+	 */
+	ProcessInput claimInput() {
+		ProcessInput input = this.input;
+		if (input != null) {
+			if (redirectInput.type() != Redirect.Type.PIPE) {
+				throw new IllegalStateException("input cannot be used with redirectInput " + redirectInput);
+			}
+			input.claim();
+		}
+		return input;
+	}
+
+	static void unclaimInput(ProcessInput input) {
+		if (input != null) {
+			input.unclaim();
+		}
+	}
+
+	ProcessBuilder getProcessBuilder() {
+		return processBuilder;
+	}
+
+	void selectLaunchMechanism() {
+		if (launchMechanism != null) {
+			LaunchMechanism.select(launchMechanism);
+		}
+	}
 
-		Set<StreamGobbler> gobblers = new HashSet<StreamGobbler>(2);
-		if (gobbleInput) {
-			StreamGobbler inputGobbler = new StreamGobbler(process.getInputStream(), gobbleInputLogging);
-			inputGobbler.gobble();
-			gobblers.add(inputGobbler);
+	ProcessLimiter.Permit admit() throws IOException {
+		List<ProcessLimiter.Permit> permits = admit(1);
+		return permits == null ? null : permits.get(0);
+	}
+
+	/**
+	 * Takes the given number of permits from the process limiter at once, or returns {@code null} if there is no
+	 * limiter.
+	 */
+	List<ProcessLimiter.Permit> admit(int count) throws IOException {
+		ProcessLimiter processLimiter = this.processLimiter;
+		if (processLimiter == null) {
+			return null;
+		}
+
+		List<ProcessLimiter.Permit> permits;
+		try {
+			permits = processLimiter.acquire(count, admissionTimeoutMilliseconds);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the process limiter");
+		}
+		if (permits == null) {
+			int maxProcesses = processLimiter.getMaxProcesses();
+			if (count > maxProcesses) {
+				throw new ProcessAdmissionException("Pipeline of " + count + " processes exceeds the process limit of "
+						+ maxProcesses);
+			}
+			throw new ProcessAdmissionException("Process limit of " + maxProcesses + " reached, not admitted within "
+					+ admissionTimeoutMilliseconds + " milliseconds");
+		}
+		return permits;
+	}
+
+	static void releasePermit(ProcessLimiter.Permit permit) {
+		if (permit != null) {
+			permit.release();
+		}
+	}
+
+	static void holdPermit(FinalizedProcess finalizedProcess, ProcessLimiter.Permit permit) {
+		if (permit != null) {
+			permit.started(finalizedProcess.getSpawnNanoseconds());
+			finalizedProcess.holdPermit(permit);
+		}
+	}
+
+	/**
+	 * Starts the gobblers and the feeder of the claimed input, if any, of a newly started process and wraps it.
+	 */
+	FinalizedProcess wrap(ProcessTrace trace, Process process, long spawnNanoseconds, boolean gobbleOutput,
+			boolean capture, ProcessInput input) throws IOException {
+		boolean inputPiped = redirectInput.type() == Redirect.Type.PIPE;
+		boolean outputPiped = redirectOutput.type() == Redirect.Type.PIPE;
+		boolean errorPiped = redirectError.type() == Redirect.Type.PIPE;
+
+		StreamGobbler inputGobbler = null;
+		StreamGobbler errorGobbler = null;
+		try {
+			if (gobbleOutput && outputPiped) {
+				inputGobbler = newGobbler(process.getInputStream(), ProcessMetrics.Stream.OUTPUT, gobbleInputLogging,
+						inputLineListener, capture);
+				inputGobbler.trace(trace, ProcessTrace.Phase.FIRST_OUTPUT_BYTE, ProcessTrace.Phase.OUTPUT_DRAINED);
+				inputGobbler.gobble();
+			}
+			if ((gobbleError || capture) && errorPiped) {
+				errorGobbler = newGobbler(process.getErrorStream(), ProcessMetrics.Stream.ERROR, gobbleErrorLogging,
+						errorLineListener, capture);
+				errorGobbler.trace(trace, ProcessTrace.Phase.FIRST_ERROR_BYTE, ProcessTrace.Phase.ERROR_DRAINED);
+				errorGobbler.gobble();
+			}
+			if (input != null) {
+				gobblerExecutor.execute(new InputFeeder(input, process.getOutputStream()));
+			}
+		} catch (RuntimeException e) {
+			// The executor rejected a task, clean up the process
+			new FinalizedProcess(process, false, inputGobbler, errorGobbler).close();
+			throw e;
 		}
-		if (gobbleError) {
-			StreamGobbler errorGobbler = new StreamGobbler(process.getErrorStream(), gobbleErrorLogging);
-			errorGobbler.gobble();
-			gobblers.add(errorGobbler);
+
+		FinalizedProcess finalizedProcess = new FinalizedProcess(process, keepProcess, inputGobbler, errorGobbler);
+		finalizedProcess.setSpawnNanoseconds(spawnNanoseconds);
+		finalizedProcess.setTrace(trace);
+		finalizedProcess.setDestroyTree(destroyTree, gracePeriodMilliseconds, destroyTimeoutMilliseconds);
+		finalizedProcess.setTimeoutPolicy(timeoutPolicy);
+		finalizedProcess.setPipedStreams(inputPiped, outputPiped, errorPiped);
+		if (input != null) {
+			finalizedProcess.feedInput(input);
+		}
+		if (metrics != NoOpProcessMetrics.NONE) {
+			metrics.processStarted(spawnNanoseconds);
+			finalizedProcess.reportMetrics(metrics);
 		}
+		return finalizedProcess;
+	}
 
-		return new FinalizedProcess(process, keepProcess, gobblers);
+	private StreamGobbler newGobbler(InputStream stream, ProcessMetrics.Stream metricsStream, boolean logging,
+			LineListener listener, boolean capture) {
+		StreamGobbler gobbler = new StreamGobbler(stream, logging, gobblerExecutor);
+		if (metrics != NoOpProcessMetrics.NONE) {
+			gobbler.metrics(metrics, metricsStream);
+		}
+		if (listener != null) {
+			gobbler.lineListener(listener);
+		}
+		if (handoffCapacity > 0) {
+			gobbler.handoff(handoffCapacity, overflowPolicy);
+		}
+		if (maxLogLinesPerSecond > 0 || maxLogBytesPerSecond > 0) {
+			gobbler.logRateLimit(maxLogLinesPerSecond, maxLogBytesPerSecond);
+		}
+		if (logSampleRate > 1) {
+			gobbler.logSampleRate(logSampleRate);
+		}
+		if (collapseRepeatedLines) {
+			gobbler.collapseRepeatedLines(true);
+		}
+		if (tailCapacity > 0) {
+			gobbler.captureTail(tailCapacity);
+		}
+		if (capture) {
+			gobbler.capture(maxCaptureSize);
+		}
+		return gobbler;
 	}
 }
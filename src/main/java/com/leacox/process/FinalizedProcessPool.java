@@ -0,0 +1,512 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A pool of long lived worker processes that serve requests over their standard input and output.
+ * 
+ * <p>
+ * Starting a process is expensive compared to a short request, so for helper programs that are called very often the
+ * pool keeps a fixed number of them running and hands them out with {@link #borrow(long)}. Requests and responses are
+ * delimited with the configured {@link Framing}. Workers that have exited, that fail the {@link WorkerHealthCheck},
+ * that failed a request, or that reached {@link #maxUsesPerWorker()} are closed and replaced with new processes.
+ * 
+ * <p>
+ * The worker processes are started with the given {@link FinalizedProcessBuilder}. The builder must not gobble or
+ * merge the normal output of the process, since the pool reads the responses from it, and it must not keep processes,
+ * since the pool owns the workers. If the workers write to their error output, it should be gobbled so that they never
+ * block on a full pipe.
+ * 
+ * <p>
+ * The pool is safe to borrow from and return to from many threads at the same time.
+ * 
+ * <pre>
+ * {@code
+ * FinalizedProcessPool pool = new FinalizedProcessPool(
+ *     new FinalizedProcessBuilder("myHelper").gobbleErrorStreamWithLogging(true), 4)
+ *     .framing(Framing.LENGTH_PREFIXED).maxUsesPerWorker(1000);
+ * pool.start();
+ * try {
+ *   PooledWorker worker = pool.borrow(1000);
+ *   try {
+ *     byte[] response = worker.request(request);
+ *   } finally {
+ *     worker.close();
+ *   }
+ * } finally {
+ *   pool.close();
+ * }}
+ * </pre>
+ * 
+ * @author John Leacox
+ * 
+ */
+public class FinalizedProcessPool implements Closeable {
+	private static final Logger logger = LoggerFactory.getLogger(FinalizedProcessPool.class);
+
+	private static final int DEFAULT_MAX_RESPONSE_SIZE = 16 * 1024 * 1024;
+	private static final long REPLACER_KEEP_ALIVE_SECONDS = 60;
+
+	// Recycling and replacing workers happens off the thread that returns them, see release
+	private static final Executor REPLACER = new ThreadPoolExecutor(0, Integer.MAX_VALUE, REPLACER_KEEP_ALIVE_SECONDS,
+			TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+				private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "FinalizedProcessPool-" + threadNumber.getAndIncrement());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	private final FinalizedProcessBuilder processBuilder;
+	private final int size;
+	private final Semaphore available;
+	private final ConcurrentLinkedQueue<PooledWorker> idleWorkers = new ConcurrentLinkedQueue<PooledWorker>();
+	private final AtomicInteger workersStarted = new AtomicInteger();
+	private final AtomicInteger workersRecycled = new AtomicInteger();
+
+	private volatile Framing framing = Framing.NEWLINE;
+	private volatile int maxUsesPerWorker = 0;
+	private volatile int maxResponseSize = DEFAULT_MAX_RESPONSE_SIZE;
+	private volatile long requestTimeoutMilliseconds = 0;
+	private volatile WorkerHealthCheck healthCheck;
+	private volatile boolean closed = false;
+
+	/**
+	 * Constructs a pool of worker processes started with the given process builder.
+	 * 
+	 * @param processBuilder
+	 *            the process builder used to start the workers
+	 * @param size
+	 *            the number of workers (must be greater than 0)
+	 * @throws NullPointerException
+	 *             if processBuilder is null
+	 * @throws IllegalArgumentException
+	 *             if size is negative or zero, or the process builder gobbles or merges the normal output of the
+	 *             process, or keeps processes
+	 */
+	public FinalizedProcessPool(FinalizedProcessBuilder processBuilder, int size) {
+		if (processBuilder == null) {
+			throw new NullPointerException("processBuilder: null");
+		}
+		if (size <= 0) {
+			throw new IllegalArgumentException("size: <= 0");
+		}
+		if (processBuilder.gobbleInputStream()) {
+			throw new IllegalArgumentException("processBuilder: gobbles the input stream");
+		}
+		if (processBuilder.redirectErrorStream()) {
+			throw new IllegalArgumentException("processBuilder: redirects the error stream");
+		}
+		if (processBuilder.keepProcess()) {
+			throw new IllegalArgumentException("processBuilder: keeps processes");
+		}
+
+		this.processBuilder = processBuilder;
+		this.size = size;
+		this.available = new Semaphore(size, true);
+	}
+
+	/**
+	 * Returns the number of workers in this pool.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns how requests and responses are delimited.
+	 * 
+	 * <p>
+	 * The initial value is {@link Framing#NEWLINE}.
+	 * 
+	 * @return this pool's {@code framing} property
+	 */
+	public Framing framing() {
+		return framing;
+	}
+
+	/**
+	 * Sets this pool's {@code framing} property. This must be set before the pool is started.
+	 * 
+	 * @param framing
+	 *            the new property value
+	 * @return this pool
+	 * @throws NullPointerException
+	 *             if framing is null
+	 */
+	public FinalizedProcessPool framing(Framing framing) {
+		if (framing == null) {
+			throw new NullPointerException("framing: null");
+		}
+		this.framing = framing;
+		return this;
+	}
+
+	/**
+	 * Returns the number of requests after which a worker is replaced with a new process.
+	 * 
+	 * <p>
+	 * The initial value is {@code 0}, meaning workers are never recycled because of their number of uses.
+	 * 
+	 * @return this pool's {@code maxUsesPerWorker} property
+	 */
+	public int maxUsesPerWorker() {
+		return maxUsesPerWorker;
+	}
+
+	/**
+	 * Sets this pool's {@code maxUsesPerWorker} property.
+	 * 
+	 * <p>
+	 * If this property is greater than {@code 0}, then a worker that has served this many requests is closed when it
+	 * is returned to the pool and replaced with a new process. This bounds the damage of slow leaks in long lived
+	 * helper programs.
+	 * 
+	 * @param maxUsesPerWorker
+	 *            the new property value, or {@code 0} for no limit (cannot be negative)
+	 * @return this pool
+	 * @throws IllegalArgumentException
+	 *             if maxUsesPerWorker is negative
+	 */
+	public FinalizedProcessPool maxUsesPerWorker(int maxUsesPerWorker) {
+		if (maxUsesPerWorker < 0) {
+			throw new IllegalArgumentException("maxUsesPerWorker: < 0");
+		}
+		this.maxUsesPerWorker = maxUsesPerWorker;
+		return this;
+	}
+
+	/**
+	 * Returns the maximum size of a response in bytes.
+	 * 
+	 * <p>
+	 * The initial value is 16 MiB.
+	 * 
+	 * @return this pool's {@code maxResponseSize} property
+	 */
+	public int maxResponseSize() {
+		return maxResponseSize;
+	}
+
+	/**
+	 * Sets this pool's {@code maxResponseSize} property. A response that is longer fails the request, so a
+	 * misbehaving worker cannot make the pool buffer an unbounded amount of output. This must be set before the pool
+	 * is started.
+	 * 
+	 * @param maxResponseSize
+	 *            the new property value (must be greater than 0)
+	 * @return this pool
+	 * @throws IllegalArgumentException
+	 *             if maxResponseSize is negative or zero
+	 */
+	public FinalizedProcessPool maxResponseSize(int maxResponseSize) {
+		if (maxResponseSize <= 0) {
+			throw new IllegalArgumentException("maxResponseSize: <= 0");
+		}
+		this.maxResponseSize = maxResponseSize;
+		return this;
+	}
+
+	/**
+	 * Returns the time, in milliseconds, a worker has to answer a request.
+	 * 
+	 * <p>
+	 * The initial value is {@code 0}, meaning requests never time out.
+	 * 
+	 * @return this pool's {@code requestTimeoutMilliseconds} property
+	 */
+	public long requestTimeoutMilliseconds() {
+		return requestTimeoutMilliseconds;
+	}
+
+	/**
+	 * Sets this pool's {@code requestTimeoutMilliseconds} property.
+	 * 
+	 * <p>
+	 * If this property is greater than {@code 0}, then a worker that has not answered a request within this time is
+	 * killed, the request fails with an {@link IOException}, and the worker is replaced once it is returned to the
+	 * pool. Without a timeout, a hung worker blocks the thread that sent it a request forever.
+	 * 
+	 * @param requestTimeoutMilliseconds
+	 *            the new property value, or {@code 0} for no timeout (cannot be negative)
+	 * @return this pool
+	 * @throws IllegalArgumentException
+	 *             if requestTimeoutMilliseconds is negative
+	 */
+	public FinalizedProcessPool requestTimeoutMilliseconds(long requestTimeoutMilliseconds) {
+		if (requestTimeoutMilliseconds < 0) {
+			throw new IllegalArgumentException("requestTimeoutMilliseconds: < 0");
+		}
+		this.requestTimeoutMilliseconds = requestTimeoutMilliseconds;
+		return this;
+	}
+
+	/**
+	 * Returns the health check run on a worker before it is borrowed.
+	 * 
+	 * <p>
+	 * The initial value is {@code null}, meaning only workers that have exited are replaced.
+	 * 
+	 * @return this pool's {@code healthCheck} property
+	 */
+	public WorkerHealthCheck healthCheck() {
+		return healthCheck;
+	}
+
+	/**
+	 * Sets this pool's {@code healthCheck} property.
+	 * 
+	 * <p>
+	 * If this property is not {@code null}, then it is run on every idle worker before it is handed out by
+	 * {@link #borrow(long)}. A worker that fails the check is replaced with a new process.
+	 * 
+	 * @param healthCheck
+	 *            the new property value, or {@code null} for no health check
+	 * @return this pool
+	 */
+	public FinalizedProcessPool healthCheck(WorkerHealthCheck healthCheck) {
+		this.healthCheck = healthCheck;
+		return this;
+	}
+
+	/**
+	 * Starts all of the workers of this pool, so that the first requests do not pay for starting a process.
+	 * 
+	 * <p>
+	 * Starting the pool is optional; workers that are missing are started when they are first borrowed.
+	 * 
+	 * @throws IllegalStateException
+	 *             if the pool is closed
+	 * @throws IOException
+	 *             if a worker could not be started, in which case the workers started so far are left in the pool
+	 */
+	public void start() throws IOException {
+		checkOpen();
+		if (!available.tryAcquire(size)) {
+			// Some workers are already borrowed, leave the pool to fill up on demand
+			return;
+		}
+		try {
+			for (int i = idleWorkers.size(); i < size; i++) {
+				idleWorkers.offer(newWorker());
+			}
+		} finally {
+			available.release(size);
+		}
+	}
+
+	/**
+	 * Borrows a worker, waiting up to the given time for one to become available. The worker must be returned to the
+	 * pool by closing it.
+	 * 
+	 * <p>
+	 * An idle worker that has exited or fails the health check is closed and replaced with a new process before it is
+	 * returned.
+	 * 
+	 * @param timeoutMilliseconds
+	 *            time, in milliseconds, to wait for a worker. (must be greater than 0)
+	 * @return the borrowed worker
+	 * @throws IllegalArgumentException
+	 *             if timeoutMilliseconds is negative or zero
+	 * @throws IllegalStateException
+	 *             if the pool is closed
+	 * @throws TimeoutException
+	 *             if no worker became available in time
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted while it is waiting
+	 * @throws IOException
+	 *             if a new worker process could not be started
+	 */
+	public PooledWorker borrow(long timeoutMilliseconds) throws TimeoutException, InterruptedException, IOException {
+		if (timeoutMilliseconds <= 0) {
+			throw new IllegalArgumentException("timeoutMilliseconds: <= 0");
+		}
+		checkOpen();
+
+		if (!available.tryAcquire(timeoutMilliseconds, TimeUnit.MILLISECONDS)) {
+			throw new TimeoutException("No worker became available within " + timeoutMilliseconds + " milliseconds");
+		}
+
+		boolean succeeded = false;
+		try {
+			checkOpen();
+			PooledWorker worker = idleWorkers.poll();
+			if (worker == null || !isHealthy(worker)) {
+				if (worker != null) {
+					recycle(worker);
+				}
+				worker = newWorker();
+			}
+			worker.markBorrowed();
+			succeeded = true;
+			return worker;
+		} finally {
+			if (!succeeded) {
+				available.release();
+			}
+		}
+	}
+
+	private boolean isHealthy(PooledWorker worker) {
+		if (!worker.isAlive()) {
+			return false;
+		}
+		WorkerHealthCheck healthCheck = this.healthCheck;
+		if (healthCheck == null) {
+			return true;
+		}
+
+		worker.markBorrowed();
+		try {
+			return healthCheck.isHealthy(worker) && !worker.isBroken();
+		} catch (IOException e) {
+			logger.warn("Worker health check failed", e);
+			return false;
+		} catch (RuntimeException e) {
+			logger.warn("Worker health check failed", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the number of worker processes this pool has started.
+	 */
+	public int getWorkersStarted() {
+		return workersStarted.get();
+	}
+
+	/**
+	 * Returns the number of worker processes this pool has closed because they exited, failed a request or a health
+	 * check, or reached the maximum number of uses.
+	 */
+	public int getWorkersRecycled() {
+		return workersRecycled.get();
+	}
+
+	/**
+	 * Returns the number of workers that can currently be borrowed without waiting.
+	 */
+	public int getAvailableCount() {
+		return available.availablePermits();
+	}
+
+	void release(final PooledWorker worker) {
+		int maxUses = maxUsesPerWorker;
+		if (!closed && (worker.isBroken() || !worker.isAlive() || (maxUses > 0 && worker.getUses() >= maxUses))) {
+			// Closing the old process and starting a new one can take a while, so it is not done by the caller. The
+			// permit is only released once the replacement is idle, so the pool never holds more workers than its size.
+			REPLACER.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						recycle(worker);
+						replace();
+					} finally {
+						released();
+					}
+				}
+			});
+			return;
+		}
+
+		try {
+			if (closed) {
+				worker.destroy();
+			} else {
+				idleWorkers.offer(worker);
+			}
+		} finally {
+			released();
+		}
+	}
+
+	private void released() {
+		available.release();
+
+		// The pool may have been closed while the worker was being returned
+		if (closed) {
+			closeIdleWorkers();
+		}
+	}
+
+	private void recycle(PooledWorker worker) {
+		workersRecycled.incrementAndGet();
+		worker.destroy();
+	}
+
+	/**
+	 * Starts a replacement for a recycled worker right away, so that the next borrower does not have to wait for it.
+	 * If the process cannot be started now, it is started by the next borrower instead.
+	 */
+	private void replace() {
+		if (closed) {
+			return;
+		}
+		try {
+			idleWorkers.offer(newWorker());
+		} catch (IOException e) {
+			logger.warn("Failed to start a replacement worker", e);
+		}
+	}
+
+	private PooledWorker newWorker() throws IOException {
+		FinalizedProcess process = processBuilder.start();
+		workersStarted.incrementAndGet();
+		return new PooledWorker(this, process, framing, maxResponseSize);
+	}
+
+	private void checkOpen() {
+		if (closed) {
+			throw new IllegalStateException("Pool is closed");
+		}
+	}
+
+	/**
+	 * Closes this pool and all of its idle workers. Borrowed workers are closed when they are returned. Closing a pool
+	 * that is already closed has no effect.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		closeIdleWorkers();
+	}
+
+	private void closeIdleWorkers() {
+		PooledWorker worker;
+		while ((worker = idleWorkers.poll()) != null) {
+			worker.destroy();
+		}
+	}
+}
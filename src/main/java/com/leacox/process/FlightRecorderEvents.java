@@ -0,0 +1,131 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Emits the phases of a {@link ProcessTrace} as JDK Flight Recorder events.
+ * 
+ * <p>
+ * The event type is defined at runtime with {@code jdk.jfr.EventFactory}, which is looked up reflectively so that this
+ * library can still be built and run on Java 6. When Flight Recorder is not available, or is not recording the event,
+ * emitting an event only costs a field read or a reflective call to {@code EventType.isEnabled()}.
+ * 
+ * @author John Leacox
+ * 
+ */
+final class FlightRecorderEvents {
+	static final String EVENT_NAME = "com.leacox.process.ProcessLifecycle";
+
+	private static final Object EVENT_FACTORY;
+	private static final Object EVENT_TYPE;
+	private static final Method NEW_EVENT;
+	private static final Method IS_ENABLED;
+	private static final Method SET;
+	private static final Method COMMIT;
+
+	static {
+		Object eventFactory = null;
+		Object eventType = null;
+		Method newEvent = null;
+		Method isEnabled = null;
+		Method set = null;
+		Method commit = null;
+		try {
+			Class<?> eventFactoryClass = ProcessCompat.findClass("jdk.jfr.EventFactory");
+			if (eventFactoryClass != null) {
+				eventFactory = createEventFactory(eventFactoryClass);
+				eventType = eventFactoryClass.getMethod("getEventType").invoke(eventFactory);
+				newEvent = eventFactoryClass.getMethod("newEvent");
+				isEnabled = Class.forName("jdk.jfr.EventType").getMethod("isEnabled");
+				Class<?> eventClass = Class.forName("jdk.jfr.Event");
+				set = eventClass.getMethod("set", int.class, Object.class);
+				commit = eventClass.getMethod("commit");
+			}
+		} catch (Exception e) {
+			// Flight Recorder is not usable, for example because the jdk.jfr module is not present
+			eventFactory = null;
+		} catch (LinkageError e) {
+			eventFactory = null;
+		}
+		EVENT_FACTORY = eventFactory;
+		EVENT_TYPE = eventType;
+		NEW_EVENT = newEvent;
+		IS_ENABLED = isEnabled;
+		SET = set;
+		COMMIT = commit;
+	}
+
+	private FlightRecorderEvents() {
+	}
+
+	private static Object createEventFactory(Class<?> eventFactoryClass) throws Exception {
+		List<Object> eventAnnotations = Arrays.asList(annotation("jdk.jfr.Name", EVENT_NAME),
+				annotation("jdk.jfr.Label", "Process Lifecycle"),
+				annotation("jdk.jfr.Category", new String[] { "Process Warden" }),
+				annotation("jdk.jfr.Description", "A phase in the lifecycle of a process started by process-warden"),
+				annotation("jdk.jfr.StackTrace", Boolean.FALSE));
+
+		List<Object> fields = new ArrayList<Object>();
+		fields.add(field(String.class, "program", annotation("jdk.jfr.Label", "Program")));
+		fields.add(field(String.class, "phase", annotation("jdk.jfr.Label", "Phase")));
+		fields.add(field(long.class, "sinceStart", annotation("jdk.jfr.Label", "Since Start"),
+				annotation("jdk.jfr.Timespan", "NANOSECONDS")));
+
+		return eventFactoryClass.getMethod("create", List.class, List.class).invoke(null, eventAnnotations, fields);
+	}
+
+	private static Object annotation(String type, Object value) throws Exception {
+		Class<?> annotationElementClass = Class.forName("jdk.jfr.AnnotationElement");
+		Constructor<?> constructor = annotationElementClass.getConstructor(Class.class, Object.class);
+		return constructor.newInstance(Class.forName(type).asSubclass(Annotation.class), value);
+	}
+
+	private static Object field(Class<?> type, String name, Object... annotations) throws Exception {
+		Class<?> valueDescriptorClass = Class.forName("jdk.jfr.ValueDescriptor");
+		Constructor<?> constructor = valueDescriptorClass.getConstructor(Class.class, String.class, List.class);
+		return constructor.newInstance(type, name, Arrays.asList(annotations));
+	}
+
+	/**
+	 * Returns whether lifecycle events can be emitted on this JDK, which requires Java 11 or later.
+	 */
+	static boolean isAvailable() {
+		return EVENT_FACTORY != null;
+	}
+
+	/**
+	 * Emits a lifecycle event if Flight Recorder is recording it.
+	 */
+	static void lifecycle(String program, ProcessTrace.Phase phase, long sinceStart) {
+		if (EVENT_FACTORY == null || !((Boolean) ProcessCompat.invoke(IS_ENABLED, EVENT_TYPE)).booleanValue()) {
+			return;
+		}
+
+		Object event = ProcessCompat.invoke(NEW_EVENT, EVENT_FACTORY);
+		ProcessCompat.invoke(SET, event, Integer.valueOf(0), program);
+		ProcessCompat.invoke(SET, event, Integer.valueOf(1), phase.name());
+		ProcessCompat.invoke(SET, event, Integer.valueOf(2), Long.valueOf(sinceStart));
+		ProcessCompat.invoke(COMMIT, event);
+	}
+}
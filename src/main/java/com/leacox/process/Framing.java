@@ -0,0 +1,37 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+/**
+ * How requests and responses are delimited on the standard input and output of a pooled worker process.
+ * 
+ * @author John Leacox
+ * @see FinalizedProcessPool#framing(Framing)
+ * 
+ */
+public enum Framing {
+	/**
+	 * Each message is terminated by a {@code '\n'}. A {@code "\r\n"} terminator is also accepted for responses.
+	 * Requests cannot contain a newline.
+	 */
+	NEWLINE,
+
+	/**
+	 * Each message is preceded by its length as a four byte big-endian integer. Messages can contain any bytes.
+	 */
+	LENGTH_PREFIXED
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded byte buffer that hands bytes over from the thread reading a stream to the thread processing them.
+ * 
+ * <p>
+ * When the buffer is full, writes either wait or drop bytes, depending on the {@link OverflowPolicy}. Reads wait for
+ * bytes until the writer has finished.
+ * 
+ * @author John Leacox
+ * 
+ */
+final class HandoffBuffer {
+	private final byte[] buffer;
+	private final OverflowPolicy policy;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+
+	private int head = 0;
+	private int size = 0;
+	private long droppedBytes = 0;
+	private boolean finished = false;
+	private boolean aborted = false;
+
+	HandoffBuffer(int capacity, OverflowPolicy policy) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity: <= 0");
+		}
+		if (policy == null) {
+			throw new NullPointerException("policy: null");
+		}
+		this.buffer = new byte[capacity];
+		this.policy = policy;
+	}
+
+	/**
+	 * Adds the bytes to the buffer, waiting for space or dropping bytes according to the overflow policy.
+	 * 
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting for space
+	 */
+	void write(byte[] bytes, int offset, int length) throws InterruptedException {
+		lock.lock();
+		try {
+			while (length > 0 && !aborted) {
+				int free = buffer.length - size;
+				if (free == 0) {
+					if (policy == OverflowPolicy.BLOCK) {
+						notFull.await();
+						continue;
+					} else if (policy == OverflowPolicy.DROP_NEWEST) {
+						droppedBytes += length;
+						return;
+					} else {
+						int drop = Math.min(length, buffer.length);
+						head = (head + drop) % buffer.length;
+						size -= drop;
+						droppedBytes += drop;
+						free = drop;
+					}
+				}
+
+				int count = Math.min(length, free);
+				int tail = (head + size) % buffer.length;
+				int first = Math.min(count, buffer.length - tail);
+				System.arraycopy(bytes, offset, buffer, tail, first);
+				System.arraycopy(bytes, offset + first, buffer, 0, count - first);
+				size += count;
+				offset += count;
+				length -= count;
+				notEmpty.signal();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Moves buffered bytes into {@code bytes}, waiting until some are available.
+	 * 
+	 * @return the number of bytes read, or {@code -1} if the writer has finished and the buffer is empty, or the
+	 *         buffer was aborted
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting for bytes
+	 */
+	int read(byte[] bytes) throws InterruptedException {
+		lock.lock();
+		try {
+			while (size == 0 && !finished && !aborted) {
+				notEmpty.await();
+			}
+			if (aborted || size == 0) {
+				return -1;
+			}
+
+			int count = Math.min(bytes.length, size);
+			int first = Math.min(count, buffer.length - head);
+			System.arraycopy(buffer, head, bytes, 0, first);
+			System.arraycopy(buffer, 0, bytes, first, count - first);
+			head = (head + count) % buffer.length;
+			size -= count;
+			notFull.signal();
+			return count;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Marks the end of the written bytes. Bytes still in the buffer can be read.
+	 */
+	void finish() {
+		lock.lock();
+		try {
+			finished = true;
+			notEmpty.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Stops both sides right away. Waiting writes return and reads return {@code -1}.
+	 */
+	void abort() {
+		lock.lock();
+		try {
+			aborted = true;
+			notEmpty.signalAll();
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	long getDroppedBytes() {
+		lock.lock();
+		try {
+			return droppedBytes;
+		} finally {
+			lock.unlock();
+		}
+	}
+}
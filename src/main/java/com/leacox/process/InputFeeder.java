@@ -0,0 +1,94 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes a {@link ProcessInput} to the normal input of a process and closes it afterwards.
+ * 
+ * <p>
+ * The writes block while the pipe to the process is full, which keeps the input from getting ahead of the process.
+ * If the process exits or its input is closed before everything was written, the input is aborted so producers that
+ * are still adding to it find out.
+ * 
+ * @author John Leacox
+ * 
+ */
+final class InputFeeder implements Runnable {
+	private static final Logger logger = LoggerFactory.getLogger(InputFeeder.class);
+
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	private final ProcessInput input;
+	private final OutputStream outputStream;
+
+	InputFeeder(ProcessInput input, OutputStream outputStream) {
+		this.input = input;
+		this.outputStream = outputStream;
+	}
+
+	@Override
+	public void run() {
+		IOException failure = null;
+		try {
+			ByteBuffer buffer;
+			while ((buffer = input.next()) != null) {
+				write(buffer.duplicate());
+			}
+			outputStream.flush();
+		} catch (IOException e) {
+			// The process exited before reading all of its input, or the process was closed
+			logger.debug("Stopped writing process input", e);
+			failure = e;
+		} catch (InterruptedException e) {
+			failure = new InterruptedIOException("Interrupted while writing process input");
+			Thread.currentThread().interrupt();
+		} finally {
+			try {
+				outputStream.close();
+			} catch (IOException e) {
+			}
+			if (failure != null) {
+				input.abort();
+			}
+			input.release();
+			input.finish(failure);
+		}
+	}
+
+	private void write(ByteBuffer buffer) throws IOException {
+		byte[] chunk = buffer.hasArray() ? null : new byte[Math.min(buffer.remaining(), CHUNK_SIZE)];
+		while (buffer.hasRemaining()) {
+			int length = Math.min(buffer.remaining(), CHUNK_SIZE);
+			if (chunk == null) {
+				outputStream.write(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+				buffer.position(buffer.position() + length);
+			} else {
+				buffer.get(chunk, 0, length);
+				outputStream.write(chunk, 0, length);
+			}
+			input.written(length);
+		}
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What happened to the processes of a process tree when it was destroyed with
+ * {@link FinalizedProcess#destroyTree()}.
+ * 
+ * <p>
+ * Processes are identified by their operating system id. The id of the subprocess itself is {@code -1} if it could not
+ * be determined.
+ * 
+ * @author John Leacox
+ * 
+ */
+public final class KillReport {
+	private final List<Long> terminated;
+	private final List<Long> killed;
+	private final List<Long> survivors;
+	private final Map<Long, String> commands;
+	private final long elapsedMilliseconds;
+
+	KillReport(List<Long> terminated, List<Long> killed, List<Long> survivors, Map<Long, String> commands,
+			long elapsedMilliseconds) {
+		this.terminated = Collections.unmodifiableList(terminated);
+		this.killed = Collections.unmodifiableList(killed);
+		this.survivors = Collections.unmodifiableList(survivors);
+		this.commands = Collections.unmodifiableMap(commands);
+		this.elapsedMilliseconds = elapsedMilliseconds;
+	}
+
+	/**
+	 * Returns the processes that exited within the grace period after being asked to terminate.
+	 * 
+	 * @return the ids of the processes that terminated gracefully
+	 */
+	public List<Long> getTerminated() {
+		return terminated;
+	}
+
+	/**
+	 * Returns the processes that were still running after the grace period and were killed forcibly.
+	 * 
+	 * @return the ids of the killed processes
+	 */
+	public List<Long> getKilled() {
+		return killed;
+	}
+
+	/**
+	 * Returns the processes that were still running when the time allowed for destroying the tree ran out.
+	 * 
+	 * @return the ids of the processes that survived
+	 */
+	public List<Long> getSurvivors() {
+		return survivors;
+	}
+
+	/**
+	 * Returns the name of the command that a process of the tree was running.
+	 * 
+	 * @param pid
+	 *            the id of the process
+	 * @return the command name, or {@code null} if it is not known
+	 */
+	public String getCommand(long pid) {
+		return commands.get(Long.valueOf(pid));
+	}
+
+	/**
+	 * Returns how long destroying the tree took, in milliseconds.
+	 * 
+	 * @return the elapsed time in milliseconds
+	 */
+	public long getElapsedMilliseconds() {
+		return elapsedMilliseconds;
+	}
+
+	/**
+	 * Tells whether all processes of the tree are gone.
+	 * 
+	 * @return {@code true} if no process survived
+	 */
+	public boolean isComplete() {
+		return survivors.isEmpty();
+	}
+
+	/**
+	 * Returns the processes by outcome, for example
+	 * {@code terminated [1234 (sh)], killed [1240 (sleep)], survivors [] in 1003ms}.
+	 */
+	@Override
+	public String toString() {
+		return "terminated " + describe(terminated) + ", killed " + describe(killed) + ", survivors "
+				+ describe(survivors) + " in " + elapsedMilliseconds + "ms";
+	}
+
+	private String describe(List<Long> pids) {
+		StringBuilder builder = new StringBuilder("[");
+		for (Long pid : pids) {
+			if (builder.length() > 1) {
+				builder.append(", ");
+			}
+			builder.append(pid);
+			String command = commands.get(pid);
+			if (command != null) {
+				builder.append(" (").append(command).append(')');
+			}
+		}
+		return builder.append(']').toString();
+	}
+}
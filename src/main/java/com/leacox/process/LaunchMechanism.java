@@ -0,0 +1,113 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * How the JDK launches subprocesses on Unix-like platforms.
+ * 
+ * <p>
+ * The JDK reads the mechanism from the {@code jdk.lang.Process.launchMechanism} system property once, when it starts
+ * its first subprocess, and uses it for every subprocess of the JVM after that. It is therefore a JVM-wide setting
+ * that has to be chosen before the first subprocess is started. Not every mechanism is available on every JDK and
+ * platform; for example, Java 8 on Linux supports {@link #FORK} and {@link #VFORK} but not {@link #POSIX_SPAWN}, and
+ * the JDK fails to start any subprocess if an unsupported mechanism is chosen.
+ * 
+ * <p>
+ * The cost of {@code fork} grows with the memory of the JVM, since the page tables of the whole heap are copied, while
+ * {@code vfork} and {@code posix_spawn} are cheap regardless of the heap size. Use {@code SpawnLatencyBenchmark} in
+ * the benchmark sources to compare them on a given machine.
+ * 
+ * @author John Leacox
+ * @see FinalizedProcessBuilder#launchMechanism(LaunchMechanism)
+ * 
+ */
+public enum LaunchMechanism {
+	/**
+	 * Launch with {@code posix_spawn}, through the {@code jspawnhelper} executable of the JDK.
+	 */
+	POSIX_SPAWN,
+
+	/**
+	 * Launch with {@code fork} followed by {@code exec}.
+	 */
+	FORK,
+
+	/**
+	 * Launch with {@code vfork} followed by {@code exec}. Only available on Linux.
+	 */
+	VFORK;
+
+	/**
+	 * The system property the JDK reads the launch mechanism from.
+	 */
+	public static final String PROPERTY = "jdk.lang.Process.launchMechanism";
+
+	// Guarded by the class lock, so that a mechanism cannot be selected while the first process is being started
+	private static boolean processStarted = false;
+
+	/**
+	 * Returns the launch mechanism chosen with the {@code jdk.lang.Process.launchMechanism} system property, or
+	 * {@code null} if the property is not set, in which case the JDK uses its platform default.
+	 * 
+	 * @return the chosen launch mechanism, or {@code null}
+	 * @throws IllegalArgumentException
+	 *             if the property is set to a value that is not a launch mechanism
+	 */
+	public static LaunchMechanism configured() {
+		return parse(System.getProperty(PROPERTY));
+	}
+
+	private static LaunchMechanism parse(String value) {
+		if (value == null) {
+			return null;
+		}
+		return valueOf(value.toUpperCase(Locale.ENGLISH));
+	}
+
+	/**
+	 * Makes sure the JDK launches subprocesses with the given mechanism, setting the system property if it is not set
+	 * yet.
+	 */
+	static synchronized void select(LaunchMechanism mechanism) {
+		select(mechanism, System.getProperties(), processStarted);
+	}
+
+	static void select(LaunchMechanism mechanism, Properties properties, boolean processStarted) {
+		LaunchMechanism configured = parse(properties.getProperty(PROPERTY));
+		if (configured == mechanism) {
+			return;
+		}
+		if (configured != null) {
+			throw new IllegalStateException("The launch mechanism is already set to " + configured);
+		}
+		if (processStarted) {
+			throw new IllegalStateException("The launch mechanism must be chosen before the first process is started");
+		}
+		properties.setProperty(PROPERTY, mechanism.name());
+	}
+
+	/**
+	 * Records that a subprocess is about to be started. The JDK may read the system property from then on, so it can
+	 * no longer be changed, even if starting the subprocess fails.
+	 */
+	static synchronized void processStarting() {
+		processStarted = true;
+	}
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+/**
+ * A listener that is called for each line of a gobbled stream.
+ * 
+ * <p>
+ * Lines are passed as a view of a buffer owned by the gobbler, without being decoded or copied. The buffer is reused
+ * for later lines, so the listener must copy any bytes it wants to keep before returning. The line terminator is not
+ * included. Listeners are called on the gobbler's thread and should return quickly, since the stream is not read while
+ * a listener runs.
+ * 
+ * @author John Leacox
+ * @see FinalizedProcessBuilder#inputLineListener(LineListener)
+ * @see FinalizedProcessBuilder#errorLineListener(LineListener)
+ * 
+ */
+public interface LineListener {
+	/**
+	 * Invoked for each line read from the stream.
+	 * 
+	 * @param buffer
+	 *            the buffer holding the line
+	 * @param offset
+	 *            the index of the first byte of the line in the buffer
+	 * @param length
+	 *            the number of bytes in the line
+	 */
+	void onLine(byte[] buffer, int offset, int length);
+}
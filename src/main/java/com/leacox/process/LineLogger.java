@@ -0,0 +1,193 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Logs each line of a gobbled stream at INFO level.
+ * 
+ * <p>
+ * Logging can be limited to a number of lines and bytes per second, and sampled so that only every n-th line is
+ * logged. The limits are checked on the raw bytes, so lines that are suppressed are never decoded. The number of
+ * suppressed lines is logged when the next one second rate limit window starts, and at the end of the stream.
+ * 
+ * <p>
+ * Consecutive identical lines can also be collapsed. The lines are compared by their bytes, and a repeat of the
+ * previous line is counted instead of logged. Once a different line arrives, or the stream ends, a single
+ * "last line repeated N times" message is logged. Collapsing happens before rate limiting, so repeated lines do not
+ * count towards the limits.
+ * 
+ * @author John Leacox
+ * 
+ */
+final class LineLogger implements LineListener {
+	private static final Logger defaultLogger = LoggerFactory.getLogger(StreamGobbler.class);
+	private static final long WINDOW_NANOSECONDS = TimeUnit.SECONDS.toNanos(1);
+
+	private final Logger logger;
+	private final Charset charset = Charset.defaultCharset();
+	private final int maxLinesPerSecond;
+	private final long maxBytesPerSecond;
+	private final int sampleRate;
+	private final boolean collapseRepeatedLines;
+
+	private long windowStart;
+	private int windowLines = 0;
+	private long windowBytes = 0;
+	private long sampleCount = 0;
+	private long suppressedLines = 0;
+	private long suppressedBytes = 0;
+
+	private byte[] previousLine = new byte[0];
+	private int previousLength = -1;
+	private boolean previousLogged = false;
+	private long repeatCount = 0;
+
+	LineLogger() {
+		this(defaultLogger, 0, 0, 1, false);
+	}
+
+	/**
+	 * @param maxLinesPerSecond
+	 *            the maximum number of lines to log per second, or {@code 0} for no limit
+	 * @param maxBytesPerSecond
+	 *            the maximum number of bytes to log per second, or {@code 0} for no limit
+	 * @param sampleRate
+	 *            log only every n-th line, or {@code 1} to log every line
+	 * @param collapseRepeatedLines
+	 *            whether consecutive identical lines are logged once with a repeat count
+	 */
+	LineLogger(int maxLinesPerSecond, long maxBytesPerSecond, int sampleRate, boolean collapseRepeatedLines) {
+		this(defaultLogger, maxLinesPerSecond, maxBytesPerSecond, sampleRate, collapseRepeatedLines);
+	}
+
+	LineLogger(Logger logger, int maxLinesPerSecond, long maxBytesPerSecond, int sampleRate,
+			boolean collapseRepeatedLines) {
+		this.logger = logger;
+		this.maxLinesPerSecond = maxLinesPerSecond;
+		this.maxBytesPerSecond = maxBytesPerSecond;
+		this.sampleRate = sampleRate;
+		this.collapseRepeatedLines = collapseRepeatedLines;
+		this.windowStart = System.nanoTime();
+	}
+
+	@Override
+	public void onLine(byte[] buffer, int offset, int length) {
+		if (!logger.isInfoEnabled()) {
+			return;
+		}
+
+		if (collapseRepeatedLines) {
+			if (isRepeat(buffer, offset, length)) {
+				repeatCount++;
+				if (!previousLogged) {
+					suppressedLines++;
+					suppressedBytes += length;
+				}
+				return;
+			}
+			logRepeats();
+			rememberLine(buffer, offset, length);
+		}
+
+		if (maxLinesPerSecond > 0 || maxBytesPerSecond > 0) {
+			long now = System.nanoTime();
+			if (now - windowStart >= WINDOW_NANOSECONDS) {
+				logSuppressed();
+				windowStart = now;
+				windowLines = 0;
+				windowBytes = 0;
+			}
+		}
+
+		previousLogged = isAllowed(length);
+		if (!previousLogged) {
+			suppressedLines++;
+			suppressedBytes += length;
+			return;
+		}
+
+		logger.info(new String(buffer, offset, length, charset));
+	}
+
+	private boolean isRepeat(byte[] buffer, int offset, int length) {
+		if (length != previousLength) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (buffer[offset + i] != previousLine[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void rememberLine(byte[] buffer, int offset, int length) {
+		if (previousLine.length < length) {
+			previousLine = new byte[Math.max(length, previousLine.length * 2)];
+		}
+		System.arraycopy(buffer, offset, previousLine, 0, length);
+		previousLength = length;
+	}
+
+	private void logRepeats() {
+		if (repeatCount > 0) {
+			if (previousLogged) {
+				logger.info("last line repeated {} times", repeatCount);
+			}
+			repeatCount = 0;
+		}
+	}
+
+	private boolean isAllowed(int length) {
+		if (sampleRate > 1 && sampleCount++ % sampleRate != 0) {
+			return false;
+		}
+		if (maxLinesPerSecond > 0 && windowLines >= maxLinesPerSecond) {
+			return false;
+		}
+		if (maxBytesPerSecond > 0 && windowBytes + length > maxBytesPerSecond) {
+			return false;
+		}
+
+		windowLines++;
+		windowBytes += length;
+		return true;
+	}
+
+	/**
+	 * Logs the pending repeat count and the number of lines suppressed since the last summary, if any. Called at the
+	 * end of the stream.
+	 */
+	void endOfStream() {
+		logRepeats();
+		logSuppressed();
+	}
+
+	private void logSuppressed() {
+		if (suppressedLines > 0) {
+			logger.info("{} lines suppressed ({} bytes)", suppressedLines, suppressedBytes);
+			suppressedLines = 0;
+			suppressedBytes = 0;
+		}
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+/**
+ * Splits a stream of bytes into lines without decoding them.
+ * 
+ * <p>
+ * Lines are terminated by a line feed, a carriage return, or a carriage return followed by a line feed, the same as
+ * {@link java.io.BufferedReader#readLine()}. The terminator is not included in the line. Lines longer than the maximum
+ * line length are split into several lines so that a stream without line breaks cannot grow the buffer without bound.
+ * 
+ * <p>
+ * Each line is handed to the {@link LineListener} as a view of an internal buffer that is reused for the next line.
+ * 
+ * @author John Leacox
+ * 
+ */
+final class LineSplitter {
+	static final int MAX_LINE_LENGTH = 64 * 1024;
+
+	private final LineListener listener;
+
+	private byte[] line = new byte[256];
+	private int length = 0;
+	private boolean skipLineFeed = false;
+
+	LineSplitter(LineListener listener) {
+		this.listener = listener;
+	}
+
+	void write(byte[] bytes, int offset, int count) {
+		int start = offset;
+		int end = offset + count;
+		for (int i = offset; i < end; i++) {
+			byte b = bytes[i];
+			if (b == '\n' || b == '\r') {
+				if (b == '\n' && skipLineFeed) {
+					skipLineFeed = false;
+					start = i + 1;
+					continue;
+				}
+
+				emit(bytes, start, i - start);
+				skipLineFeed = b == '\r';
+				start = i + 1;
+			} else {
+				skipLineFeed = false;
+			}
+		}
+
+		append(bytes, start, end - start);
+	}
+
+	/**
+	 * Emits the last line if the stream did not end with a line terminator.
+	 */
+	void flush() {
+		if (length > 0) {
+			listener.onLine(line, 0, length);
+			length = 0;
+		}
+	}
+
+	private void emit(byte[] bytes, int offset, int count) {
+		if (length == 0) {
+			listener.onLine(bytes, offset, count);
+			return;
+		}
+
+		append(bytes, offset, count);
+		flush();
+	}
+
+	private void append(byte[] bytes, int offset, int count) {
+		while (count > 0) {
+			if (length == MAX_LINE_LENGTH) {
+				flush();
+			}
+			if (length == line.length) {
+				byte[] grown = new byte[Math.min(line.length * 2, MAX_LINE_LENGTH)];
+				System.arraycopy(line, 0, grown, 0, length);
+				line = grown;
+			}
+
+			int copy = Math.min(count, line.length - length);
+			System.arraycopy(bytes, offset, line, length, copy);
+			length += copy;
+			offset += copy;
+			count -= copy;
+		}
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+/**
+ * A {@link ProcessMetrics} that ignores all metrics. This is the default for {@link FinalizedProcessBuilder}, and a
+ * convenient base class for listeners that only care about some of the metrics.
+ * 
+ * @author John Leacox
+ * 
+ */
+public class NoOpProcessMetrics implements ProcessMetrics {
+	static final ProcessMetrics NONE = new NoOpProcessMetrics();
+
+	@Override
+	public void processStarted(long spawnNanoseconds) {
+	}
+
+	@Override
+	public void processExited(int exitValue, long lifetimeNanoseconds) {
+	}
+
+	@Override
+	public void gobblerStarted(Stream stream) {
+	}
+
+	@Override
+	public void bytesGobbled(Stream stream, int bytes, int lines) {
+	}
+
+	@Override
+	public void gobblerFinished(Stream stream) {
+	}
+
+	@Override
+	public void waitTimedOut() {
+	}
+}
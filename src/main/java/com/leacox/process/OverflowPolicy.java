@@ -0,0 +1,42 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+/**
+ * What a stream gobbler does when its reader gets ahead of the processing of the lines it has read.
+ * 
+ * @author John Leacox
+ * @see FinalizedProcessBuilder#overflowPolicy(OverflowPolicy)
+ * 
+ */
+public enum OverflowPolicy {
+	/**
+	 * The reader waits for space in the buffer. No output is lost, but a slow listener or logger eventually slows
+	 * down the process.
+	 */
+	BLOCK,
+
+	/**
+	 * The oldest buffered bytes are dropped to make room for new ones. The dropped bytes are counted.
+	 */
+	DROP_OLDEST,
+
+	/**
+	 * New bytes that do not fit into the buffer are dropped. The dropped bytes are counted.
+	 */
+	DROP_NEWEST
+}
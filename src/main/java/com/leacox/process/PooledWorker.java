@@ -0,0 +1,245 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A long lived worker process borrowed from a {@link FinalizedProcessPool}.
+ * 
+ * <p>
+ * A worker is used by one thread at a time. Requests are written to the standard input of the process and responses
+ * are read from its standard output using the {@link Framing} of the pool. Closing the worker returns it to the pool;
+ * it must not be used afterwards.
+ * 
+ * <pre>
+ * {@code
+ * PooledWorker worker = pool.borrow(1000);
+ * try {
+ *   byte[] response = worker.request(request);
+ * } finally {
+ *   worker.close();
+ * }}
+ * </pre>
+ * 
+ * @author John Leacox
+ * 
+ */
+public class PooledWorker implements Closeable {
+	private final FinalizedProcessPool pool;
+	private final FinalizedProcess process;
+	private final Framing framing;
+	private final int maxResponseSize;
+	private final DataOutputStream output;
+	private final DataInputStream input;
+	private final AtomicBoolean borrowed = new AtomicBoolean();
+	private int uses = 0;
+	private boolean broken = false;
+	private volatile boolean timedOut = false;
+
+	PooledWorker(FinalizedProcessPool pool, FinalizedProcess process, Framing framing, int maxResponseSize) {
+		this.pool = pool;
+		this.process = process;
+		this.framing = framing;
+		this.maxResponseSize = maxResponseSize;
+		this.output = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+		this.input = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+	}
+
+	/**
+	 * Sends a request to the worker process and waits for its response.
+	 * 
+	 * <p>
+	 * If this throws an {@link IOException}, the state of the conversation with the process is unknown, so the worker
+	 * is not reused once it is returned to the pool.
+	 * 
+	 * <p>
+	 * If the pool has a {@linkplain FinalizedProcessPool#requestTimeoutMilliseconds(long) request timeout} and the
+	 * response does not arrive in time, the worker process is killed, which fails the request, and the worker is not
+	 * reused.
+	 * 
+	 * @param request
+	 *            the request message, without framing
+	 * @return the response message, without framing
+	 * @throws NullPointerException
+	 *             if request is null
+	 * @throws IllegalArgumentException
+	 *             if the framing is {@link Framing#NEWLINE} and the request contains a newline
+	 * @throws IllegalStateException
+	 *             if the worker has been returned to the pool
+	 * @throws IOException
+	 *             if writing the request or reading the response fails, the response is longer than the maximum
+	 *             response size of the pool, or the request timed out
+	 */
+	public byte[] request(byte[] request) throws IOException {
+		if (request == null) {
+			throw new NullPointerException("request: null");
+		}
+		if (!borrowed.get()) {
+			throw new IllegalStateException("Worker has been returned to the pool");
+		}
+		if (framing == Framing.NEWLINE) {
+			for (byte b : request) {
+				if (b == '\n') {
+					throw new IllegalArgumentException("request: contains a newline");
+				}
+			}
+		}
+
+		uses++;
+		long timeoutMilliseconds = pool.requestTimeoutMilliseconds();
+		ScheduledFuture<?> deadline = timeoutMilliseconds > 0 ? scheduleDeadline(timeoutMilliseconds) : null;
+		boolean succeeded = false;
+		try {
+			writeRequest(request);
+			byte[] response = readResponse();
+			succeeded = true;
+			return response;
+		} catch (IOException e) {
+			if (timedOut) {
+				throw new IOException("Worker did not respond within " + timeoutMilliseconds + " milliseconds", e);
+			}
+			throw e;
+		} finally {
+			if (deadline != null) {
+				TimeoutScheduler.getInstance().cancel(deadline);
+			}
+			// The deadline may have killed the process just after the response arrived
+			if (!succeeded || timedOut) {
+				broken = true;
+			}
+		}
+	}
+
+	/**
+	 * Kills the process once the request has taken too long. The blocked read or write then fails, which is the only
+	 * way to get a thread out of a blocking pipe operation.
+	 */
+	private ScheduledFuture<?> scheduleDeadline(long timeoutMilliseconds) {
+		return TimeoutScheduler.getInstance().schedule(new Runnable() {
+			@Override
+			public void run() {
+				timedOut = true;
+				process.destroyForcibly();
+			}
+		}, timeoutMilliseconds, TimeUnit.MILLISECONDS);
+	}
+
+	private void writeRequest(byte[] request) throws IOException {
+		if (framing == Framing.LENGTH_PREFIXED) {
+			output.writeInt(request.length);
+			output.write(request);
+		} else {
+			output.write(request);
+			output.write('\n');
+		}
+		output.flush();
+	}
+
+	private byte[] readResponse() throws IOException {
+		if (framing == Framing.LENGTH_PREFIXED) {
+			int length = input.readInt();
+			if (length < 0 || length > maxResponseSize) {
+				throw new IOException("Invalid response length: " + length);
+			}
+			byte[] response = new byte[length];
+			input.readFully(response);
+			return response;
+		}
+
+		ByteArrayOutputStream response = new ByteArrayOutputStream();
+		int b;
+		while ((b = input.read()) != '\n') {
+			if (b == -1) {
+				throw new EOFException("Worker closed its output stream");
+			}
+			if (response.size() == maxResponseSize) {
+				throw new IOException("Response is longer than " + maxResponseSize + " bytes");
+			}
+			response.write(b);
+		}
+		byte[] bytes = response.toByteArray();
+		if (bytes.length > 0 && bytes[bytes.length - 1] == '\r') {
+			byte[] trimmed = new byte[bytes.length - 1];
+			System.arraycopy(bytes, 0, trimmed, 0, trimmed.length);
+			return trimmed;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Returns the worker process, for example to check its error stream tail. The process must not be closed or have
+	 * its streams used directly; the pool owns it.
+	 */
+	public FinalizedProcess getProcess() {
+		return process;
+	}
+
+	/**
+	 * Returns the number of requests this worker process has served, including the current one.
+	 */
+	public int getUses() {
+		return uses;
+	}
+
+	/**
+	 * Returns this worker to the pool. The worker is recycled instead of reused if it has failed a request or reached
+	 * the maximum number of uses of the pool. Closing a worker that has already been returned has no effect.
+	 */
+	@Override
+	public void close() {
+		if (borrowed.compareAndSet(true, false)) {
+			pool.release(this);
+		}
+	}
+
+	void markBorrowed() {
+		borrowed.set(true);
+	}
+
+	boolean isBroken() {
+		return broken;
+	}
+
+	boolean isAlive() {
+		return process.tryExitValue() == null;
+	}
+
+	/**
+	 * Closes the process. Closing stdin first gives workers that exit at the end of their input a chance to do so.
+	 */
+	void destroy() {
+		try {
+			output.close();
+		} catch (IOException e) {
+		}
+		try {
+			process.close();
+		} catch (IOException e) {
+		}
+	}
+}
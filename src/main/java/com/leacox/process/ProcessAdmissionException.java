@@ -0,0 +1,34 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a process could not be started because its {@link ProcessLimiter} did not admit it in time.
+ * 
+ * @author John Leacox
+ * @see FinalizedProcessBuilder#processLimiter(ProcessLimiter)
+ * 
+ */
+public class ProcessAdmissionException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	public ProcessAdmissionException(String message) {
+		super(message);
+	}
+}
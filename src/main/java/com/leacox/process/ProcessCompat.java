@@ -0,0 +1,247 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Access to {@link Process} functionality that was added after Java 6.
+ * 
+ * <p>
+ * The newer methods are looked up reflectively so that this library can still be built and run on Java 6. When a
+ * method is not available, a fallback that works with the Java 6 API is used instead.
+ * 
+ * @author John Leacox
+ * 
+ */
+final class ProcessCompat {
+	private static final Method IS_ALIVE = findMethod(Process.class, "isAlive");
+	private static final Method WAIT_FOR = findMethod(Process.class, "waitFor", long.class, TimeUnit.class);
+	private static final Method PID = findMethod(Process.class, "pid");
+	private static final Method DESTROY_FORCIBLY = findMethod(Process.class, "destroyForcibly");
+	private static final Method START_PIPELINE = findMethod(ProcessBuilder.class, "startPipeline", List.class);
+	private static final Class<?> JDK_REDIRECT = findClass("java.lang.ProcessBuilder$Redirect");
+	private static final File NULL_FILE = new File(File.separatorChar == '\\' ? "NUL" : "/dev/null");
+
+	private ProcessCompat() {
+	}
+
+	/**
+	 * Returns the exit value of the process, or {@code null} if the process is still running. Unlike
+	 * {@link Process#exitValue()}, this does not throw an exception on Java 8 and later while the process is running.
+	 */
+	static Integer tryExitValue(Process process) {
+		if (IS_ALIVE != null) {
+			if (((Boolean) invoke(IS_ALIVE, process)).booleanValue()) {
+				return null;
+			}
+			return Integer.valueOf(process.exitValue());
+		}
+
+		try {
+			return Integer.valueOf(process.exitValue());
+		} catch (IllegalThreadStateException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns whether {@link #waitFor(Process, long, TimeUnit)} is available, which it is on Java 8 and later.
+	 */
+	static boolean supportsTimedWaitFor() {
+		return WAIT_FOR != null;
+	}
+
+	/**
+	 * Waits at most the given time for the process to exit with {@code Process.waitFor(long, TimeUnit)}.
+	 * 
+	 * @return {@code true} if the process has exited; {@code false} if the timeout elapsed first
+	 */
+	static boolean waitFor(Process process, long timeout, TimeUnit unit) throws InterruptedException {
+		try {
+			return ((Boolean) WAIT_FOR.invoke(process, timeout, unit)).booleanValue();
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof InterruptedException) {
+				throw (InterruptedException) e.getCause();
+			}
+			throw unwrap(e);
+		}
+	}
+
+	/**
+	 * Returns the operating system id of the process, or {@code -1} if it cannot be determined. On Java 9 and later
+	 * this is {@code Process.pid()}, on older versions the private {@code pid} field of the JDK's Unix implementation is
+	 * read.
+	 */
+	static long pid(Process process) {
+		if (PID != null) {
+			try {
+				return ((Long) invoke(PID, process)).longValue();
+			} catch (UnsupportedOperationException e) {
+				return -1;
+			}
+		}
+
+		try {
+			Field field = process.getClass().getDeclaredField("pid");
+			field.setAccessible(true);
+			return ((Number) field.get(process)).longValue();
+		} catch (Exception e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Returns whether {@link #destroyForcibly(Process)} kills processes forcibly, which it does on Java 8 and later.
+	 */
+	static boolean supportsDestroyForcibly() {
+		return DESTROY_FORCIBLY != null;
+	}
+
+	/**
+	 * Kills the process with {@code Process.destroyForcibly} on Java 8 and later, which sends {@code SIGKILL} on Unix.
+	 * On older versions this falls back to {@link Process#destroy()}.
+	 */
+	static void destroyForcibly(Process process) {
+		if (DESTROY_FORCIBLY != null) {
+			invoke(DESTROY_FORCIBLY, process);
+		} else {
+			process.destroy();
+		}
+	}
+
+	/**
+	 * Returns whether the JDK can connect the processes of a pipeline itself, which it can on Java 9 and later.
+	 */
+	static boolean supportsPipelines() {
+		return START_PIPELINE != null;
+	}
+
+	/**
+	 * Starts the processes of a pipeline with {@code ProcessBuilder.startPipeline}.
+	 */
+	@SuppressWarnings("unchecked")
+	static List<Process> startPipeline(List<ProcessBuilder> processBuilders) throws IOException {
+		try {
+			return (List<Process>) START_PIPELINE.invoke(null, processBuilders);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw unwrap(e);
+		}
+	}
+
+	/**
+	 * Sets a redirect of the process builder with {@code ProcessBuilder.redirectInput}, {@code redirectOutput} or
+	 * {@code redirectError}. {@link Redirect#DISCARD} is emulated with a redirect to the null device on Java 7 and 8.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             if the redirect is not {@link Redirect#PIPE} and the JDK does not support redirects
+	 */
+	static void redirect(ProcessBuilder processBuilder, String methodName, Redirect redirect) {
+		if (JDK_REDIRECT == null) {
+			if (redirect.type() == Redirect.Type.PIPE) {
+				return;
+			}
+			throw new UnsupportedOperationException("Redirecting process streams requires Java 7 or later");
+		}
+		invoke(findMethod(ProcessBuilder.class, methodName, JDK_REDIRECT), processBuilder, toJdkRedirect(redirect));
+	}
+
+	private static Object toJdkRedirect(Redirect redirect) {
+		switch (redirect.type()) {
+		case INHERIT:
+			return getStaticField(JDK_REDIRECT, "INHERIT");
+		case DISCARD:
+			Object discard = getStaticField(JDK_REDIRECT, "DISCARD");
+			return discard != null ? discard : jdkRedirect("to", NULL_FILE);
+		case READ:
+			return jdkRedirect("from", redirect.file());
+		case WRITE:
+			return jdkRedirect("to", redirect.file());
+		case APPEND:
+			return jdkRedirect("appendTo", redirect.file());
+		default:
+			return getStaticField(JDK_REDIRECT, "PIPE");
+		}
+	}
+
+	private static Object jdkRedirect(String factoryName, File file) {
+		return invoke(findMethod(JDK_REDIRECT, factoryName, File.class), null, file);
+	}
+
+	static Class<?> findClass(String name) {
+		try {
+			return Class.forName(name);
+		} catch (ClassNotFoundException e) {
+			return null;
+		}
+	}
+
+	static Object getStaticField(Class<?> type, String name) {
+		try {
+			return type.getField(name).get(null);
+		} catch (NoSuchFieldException e) {
+			return null;
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static Method findMethod(Class<?> type, String name, Class<?>... parameterTypes) {
+		try {
+			return type.getMethod(name, parameterTypes);
+		} catch (NoSuchMethodException e) {
+			return null;
+		} catch (SecurityException e) {
+			return null;
+		}
+	}
+
+	static Object invoke(Method method, Object target, Object... args) {
+		try {
+			return method.invoke(target, args);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		} catch (InvocationTargetException e) {
+			throw unwrap(e);
+		}
+	}
+
+	private static RuntimeException unwrap(InvocationTargetException e) {
+		Throwable cause = e.getCause();
+		if (cause instanceof RuntimeException) {
+			return (RuntimeException) cause;
+		}
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		return new UndeclaredThrowableException(cause);
+	}
+}
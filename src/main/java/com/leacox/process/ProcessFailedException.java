@@ -0,0 +1,50 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+/**
+ * Thrown by {@link ProcessGroup#waitAllOrFail(long)} when a member of the group exits with a non-zero exit value.
+ * 
+ * @author John Leacox
+ * 
+ */
+public class ProcessFailedException extends Exception {
+	private static final long serialVersionUID = 1L;
+
+	private final transient FinalizedProcess process;
+	private final int exitValue;
+
+	public ProcessFailedException(FinalizedProcess process, int exitValue) {
+		super("Process exited with exit value " + exitValue);
+		this.process = process;
+		this.exitValue = exitValue;
+	}
+
+	/**
+	 * Returns the process that failed.
+	 */
+	public FinalizedProcess getProcess() {
+		return process;
+	}
+
+	/**
+	 * Returns the exit value of the process that failed.
+	 */
+	public int getExitValue() {
+		return exitValue;
+	}
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A batch of processes that are started together and waited on together.
+ * 
+ * <p>
+ * Waiting is aggregated through the {@link ExitFuture}s of the members, so no thread is blocked per member; the
+ * calling thread waits once for the whole group. Closing the group closes all of its members.
+ * 
+ * <pre>
+ * {@code
+ * ProcessGroup group = ProcessGroup.start(builders);
+ * try {
+ *   int[] exitValues = group.waitAllOrFail(60000);
+ * } finally {
+ *   group.close();
+ * }}
+ * </pre>
+ * 
+ * @author John Leacox
+ * 
+ */
+public class ProcessGroup implements Closeable {
+	private final List<FinalizedProcess> processes;
+	private final Object lock = new Object();
+
+	private final Integer[] exitValues;
+	private int exitedCount = 0;
+	private int firstFailed = -1;
+
+	ProcessGroup(List<FinalizedProcess> processes) {
+		this.processes = Collections.unmodifiableList(new ArrayList<FinalizedProcess>(processes));
+		this.exitValues = new Integer[processes.size()];
+		for (int i = 0; i < processes.size(); i++) {
+			final int index = i;
+			processes.get(i).onExit().addListener(new ExitListener() {
+				@Override
+				public void onExit(FinalizedProcess process, int exitValue) {
+					exited(index, exitValue);
+				}
+
+				@Override
+				public void onTimeout(FinalizedProcess process) {
+				}
+			});
+		}
+	}
+
+	/**
+	 * Starts a process for each of the given process builders.
+	 * 
+	 * @param processBuilders
+	 *            the process builders to start, in the order of the members of the group
+	 * @return the started group
+	 * @throws IOException
+	 *             if a process could not be started, in which case the processes started so far are closed
+	 * @see FinalizedProcessBuilder#start()
+	 */
+	public static ProcessGroup start(FinalizedProcessBuilder... processBuilders) throws IOException {
+		return start(Arrays.asList(processBuilders));
+	}
+
+	/**
+	 * Starts a process for each of the given process builders.
+	 * 
+	 * @param processBuilders
+	 *            the process builders to start, in the order of the members of the group
+	 * @return the started group
+	 * @throws IOException
+	 *             if a process could not be started, in which case the processes started so far are closed
+	 * @see FinalizedProcessBuilder#start()
+	 */
+	public static ProcessGroup start(Collection<FinalizedProcessBuilder> processBuilders) throws IOException {
+		List<FinalizedProcess> processes = new ArrayList<FinalizedProcess>(processBuilders.size());
+		boolean succeeded = false;
+		try {
+			for (FinalizedProcessBuilder processBuilder : processBuilders) {
+				processes.add(processBuilder.start());
+			}
+			succeeded = true;
+		} finally {
+			if (!succeeded) {
+				close(processes);
+			}
+		}
+		return new ProcessGroup(processes);
+	}
+
+	private void exited(int index, int exitValue) {
+		synchronized (lock) {
+			exitValues[index] = Integer.valueOf(exitValue);
+			exitedCount++;
+			if (exitValue != 0 && firstFailed == -1) {
+				firstFailed = index;
+			}
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Returns the members of this group, in the order of the process builders they were started with.
+	 */
+	public List<FinalizedProcess> getProcesses() {
+		return processes;
+	}
+
+	/**
+	 * Returns the number of members of this group.
+	 */
+	public int size() {
+		return processes.size();
+	}
+
+	/**
+	 * Waits for all members of this group to exit.
+	 * 
+	 * @param timeoutMilliseconds
+	 *            time, in milliseconds, to wait for all of the processes to exit. (must be greater than 0)
+	 * @return the exit values of the members, in the order of {@link #getProcesses()}
+	 * @throws IllegalArgumentException
+	 *             if timeoutMilliseconds is negative or zero
+	 * @throws TimeoutException
+	 *             if not all members exited in time
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted while it is waiting
+	 */
+	public int[] waitAll(long timeoutMilliseconds) throws TimeoutException, InterruptedException {
+		if (timeoutMilliseconds <= 0) {
+			throw new IllegalArgumentException("timeoutMilliseconds: <= 0");
+		}
+
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMilliseconds);
+		synchronized (lock) {
+			while (exitedCount < exitValues.length) {
+				await(deadline, timeoutMilliseconds);
+			}
+			return exitValues();
+		}
+	}
+
+	/**
+	 * Waits for all members of this group to exit successfully, failing as soon as one of them exits with a non-zero
+	 * exit value. The members that are still running at that point are destroyed.
+	 * 
+	 * @param timeoutMilliseconds
+	 *            time, in milliseconds, to wait for all of the processes to exit. (must be greater than 0)
+	 * @return the exit values of the members, in the order of {@link #getProcesses()}, all of which are {@code 0}
+	 * @throws IllegalArgumentException
+	 *             if timeoutMilliseconds is negative or zero
+	 * @throws ProcessFailedException
+	 *             if a member exited with a non-zero exit value
+	 * @throws TimeoutException
+	 *             if not all members exited in time
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted while it is waiting
+	 */
+	public int[] waitAllOrFail(long timeoutMilliseconds) throws ProcessFailedException, TimeoutException,
+			InterruptedException {
+		if (timeoutMilliseconds <= 0) {
+			throw new IllegalArgumentException("timeoutMilliseconds: <= 0");
+		}
+
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMilliseconds);
+		int failed;
+		int failedExitValue;
+		synchronized (lock) {
+			while (exitedCount < exitValues.length && firstFailed == -1) {
+				await(deadline, timeoutMilliseconds);
+			}
+			if (firstFailed == -1) {
+				return exitValues();
+			}
+			failed = firstFailed;
+			failedExitValue = exitValues[failed].intValue();
+		}
+
+		cancel();
+		throw new ProcessFailedException(processes.get(failed), failedExitValue);
+	}
+
+	private int[] exitValues() {
+		int[] values = new int[exitValues.length];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = exitValues[i].intValue();
+		}
+		return values;
+	}
+
+	/**
+	 * Waits for any member of this group to exit. Members that have already exited are returned right away.
+	 * 
+	 * @param timeoutMilliseconds
+	 *            time, in milliseconds, to wait for a process to exit. (must be greater than 0)
+	 * @return the first member that exited
+	 * @throws IllegalArgumentException
+	 *             if timeoutMilliseconds is negative or zero
+	 * @throws TimeoutException
+	 *             if no member exited in time
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted while it is waiting
+	 * @see FinalizedProcess#waitAny(Collection, long)
+	 */
+	public FinalizedProcess waitAny(long timeoutMilliseconds) throws TimeoutException, InterruptedException {
+		return FinalizedProcess.waitAny(processes, timeoutMilliseconds);
+	}
+
+	private void await(long deadline, long timeoutMilliseconds) throws TimeoutException, InterruptedException {
+		long remaining = deadline - System.nanoTime();
+		if (remaining <= 0) {
+			throw new TimeoutException("Process group did not exit within " + timeoutMilliseconds + " milliseconds");
+		}
+		TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+	}
+
+	/**
+	 * Destroys all members of this group that are still running.
+	 */
+	public void cancel() {
+		for (FinalizedProcess process : processes) {
+			if (process.tryExitValue() == null) {
+				process.destroy();
+			}
+		}
+	}
+
+	/**
+	 * Closes all members of this group.
+	 */
+	@Override
+	public void close() {
+		close(processes);
+	}
+
+	static void close(List<FinalizedProcess> processes) {
+		for (FinalizedProcess process : processes) {
+			try {
+				process.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Data that is written to the normal input of a subprocess in the background.
+ * 
+ * <p>
+ * The input is written by a task on the {@link FinalizedProcessBuilder#gobblerExecutor() gobbler executor} while the
+ * gobblers drain the output, so a process that reads its whole input before it writes its output, or one that
+ * interleaves both, cannot deadlock with the caller. Writing blocks while the pipe to the process is full, so the
+ * input is only produced as fast as the process consumes it. The normal input of the process is closed once all of
+ * the input has been written.
+ * 
+ * <p>
+ * A process input can only feed a single process.
+ * 
+ * @author John Leacox
+ * @see FinalizedProcessBuilder#input(ProcessInput)
+ * 
+ */
+public abstract class ProcessInput {
+	private static final int FILE_BUFFER_SIZE = 64 * 1024;
+
+	private final AtomicBoolean claimed = new AtomicBoolean();
+	private final AtomicLong bytesWritten = new AtomicLong();
+	private final CountDownLatch finished = new CountDownLatch(1);
+	private volatile IOException failure;
+
+	ProcessInput() {
+	}
+
+	/**
+	 * Returns an input that writes the given bytes.
+	 * 
+	 * @param bytes
+	 *            the bytes to write, which must not be modified until the input has been written
+	 * @return an input that writes the bytes
+	 * @throws NullPointerException
+	 *             if bytes is null
+	 */
+	public static ProcessInput of(byte[] bytes) {
+		if (bytes == null) {
+			throw new NullPointerException("bytes: null");
+		}
+		return of(ByteBuffer.wrap(bytes));
+	}
+
+	/**
+	 * Returns an input that writes the remaining bytes of each of the given buffers, in order.
+	 * 
+	 * @param buffers
+	 *            the buffers to write, which must not be modified until the input has been written
+	 * @return an input that writes the buffers
+	 * @throws NullPointerException
+	 *             if buffers or one of its elements is null
+	 */
+	public static ProcessInput of(ByteBuffer... buffers) {
+		if (buffers == null) {
+			throw new NullPointerException("buffers: null");
+		}
+		final List<ByteBuffer> list = new ArrayList<ByteBuffer>(Arrays.asList(buffers));
+		for (ByteBuffer buffer : list) {
+			if (buffer == null) {
+				throw new NullPointerException("buffers: contains null");
+			}
+		}
+
+		return new ProcessInput() {
+			private final Iterator<ByteBuffer> iterator = list.iterator();
+
+			@Override
+			ByteBuffer next() {
+				return iterator.hasNext() ? iterator.next() : null;
+			}
+		};
+	}
+
+	/**
+	 * Returns an input that writes the contents of the given file. The file is streamed through a single reused buffer
+	 * as it is written, so it is never loaded into memory as a whole.
+	 * 
+	 * @param file
+	 *            the file to write
+	 * @return an input that writes the file
+	 * @throws NullPointerException
+	 *             if file is null
+	 */
+	public static ProcessInput ofFile(final File file) {
+		if (file == null) {
+			throw new NullPointerException("file: null");
+		}
+
+		return new ProcessInput() {
+			private final ByteBuffer buffer = ByteBuffer.allocate(FILE_BUFFER_SIZE);
+			private FileInputStream inputStream;
+			private FileChannel channel;
+
+			// The feeder writes each buffer completely before it asks for the next one, so the buffer can be reused
+			@Override
+			ByteBuffer next() throws IOException {
+				if (channel == null) {
+					inputStream = new FileInputStream(file);
+					channel = inputStream.getChannel();
+				}
+				buffer.clear();
+				if (channel.read(buffer) < 0) {
+					return null;
+				}
+				buffer.flip();
+				return buffer;
+			}
+
+			@Override
+			void release() {
+				if (inputStream != null) {
+					try {
+						inputStream.close();
+					} catch (IOException e) {
+					}
+				}
+			}
+		};
+	}
+
+	/**
+	 * Returns an input that writes buffers as they are added to it. Adding buffers blocks while the queue is full, so
+	 * producers cannot get ahead of the process by more than {@code capacity} buffers.
+	 * 
+	 * @param capacity
+	 *            the maximum number of buffers waiting to be written (must be greater than 0)
+	 * @return an input that writes queued buffers
+	 * @throws IllegalArgumentException
+	 *             if capacity is negative or zero
+	 */
+	public static QueuedProcessInput queue(int capacity) {
+		return new QueuedProcessInput(capacity);
+	}
+
+	/**
+	 * Returns the next buffer to write, or {@code null} at the end of the input.
+	 */
+	abstract ByteBuffer next() throws IOException, InterruptedException;
+
+	/**
+	 * Called when the process stopped reading its input before all of it was written, or when the process exited or
+	 * was closed while the input was still being written.
+	 */
+	void abort() {
+	}
+
+	/**
+	 * Aborts the input if it is still being written, because the process it feeds exited or was closed.
+	 */
+	void cancel() {
+		if (finished.getCount() > 0) {
+			abort();
+		}
+	}
+
+	/**
+	 * Releases the resources of the input once it is no longer used.
+	 */
+	void release() {
+	}
+
+	void claim() {
+		if (!claimed.compareAndSet(false, true)) {
+			throw new IllegalStateException("Process input is already used by another process");
+		}
+	}
+
+	/**
+	 * Makes the input available again after the process it was claimed for could not be started.
+	 */
+	void unclaim() {
+		claimed.set(false);
+	}
+
+	void written(int bytes) {
+		bytesWritten.addAndGet(bytes);
+	}
+
+	void finish(IOException failure) {
+		this.failure = failure;
+		finished.countDown();
+	}
+
+	/**
+	 * Returns the number of bytes written to the process so far.
+	 */
+	public long getBytesWritten() {
+		return bytesWritten.get();
+	}
+
+	/**
+	 * Waits until all of the input has been written, or writing it failed.
+	 * 
+	 * @param timeoutMilliseconds
+	 *            time, in milliseconds, to wait
+	 * @return {@code true} if writing the input ended before the timeout
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted while it is waiting
+	 */
+	public boolean awaitCompletion(long timeoutMilliseconds) throws InterruptedException {
+		return finished.await(timeoutMilliseconds, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Returns the error that stopped the input from being written, for example because the process exited before it
+	 * read all of it, or {@code null} if the input was written completely or is still being written.
+	 */
+	public IOException getFailure() {
+		return failure;
+	}
+}
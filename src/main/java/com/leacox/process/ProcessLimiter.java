@@ -0,0 +1,305 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits how many processes can be live at the same time.
+ * 
+ * <p>
+ * A limiter is shared by the process builders that should count against the same limit, see
+ * {@link FinalizedProcessBuilder#processLimiter(ProcessLimiter)}. Each started process holds a permit until it exits
+ * or is closed, whichever comes first. When all permits are taken, starting a process waits for one to be released,
+ * up to the admission timeout of the builder. This protects the host from running out of process ids and file
+ * descriptors under a burst of requests.
+ * 
+ * <p>
+ * The limit can be changed while the limiter is in use. Lowering it does not affect processes that are already
+ * running; new processes are admitted once enough of them have finished. Subclasses can tune the limit at run time
+ * from {@link #processStarted(long)} and {@link #processFinished(long)}, see {@link AdaptiveProcessLimiter}.
+ * 
+ * @author John Leacox
+ * 
+ */
+public class ProcessLimiter {
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition permitReleased = lock.newCondition();
+
+	private int maxProcesses;
+	private int activeCount = 0;
+	private int waitingCount = 0;
+	private long admittedCount = 0;
+	private long rejectedCount = 0;
+	private long totalWaitNanoseconds = 0;
+	private long maxWaitNanoseconds = 0;
+
+	/**
+	 * Constructs a limiter that admits up to the given number of live processes.
+	 * 
+	 * @param maxProcesses
+	 *            the maximum number of live processes (must be greater than 0)
+	 * @throws IllegalArgumentException
+	 *             if maxProcesses is negative or zero
+	 */
+	public ProcessLimiter(int maxProcesses) {
+		if (maxProcesses <= 0) {
+			throw new IllegalArgumentException("maxProcesses: <= 0");
+		}
+		this.maxProcesses = maxProcesses;
+	}
+
+	/**
+	 * Returns the maximum number of live processes.
+	 */
+	public int getMaxProcesses() {
+		lock.lock();
+		try {
+			return maxProcesses;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Changes the maximum number of live processes. Raising the limit admits waiting processes right away.
+	 * 
+	 * @param maxProcesses
+	 *            the new maximum number of live processes (must be greater than 0)
+	 * @throws IllegalArgumentException
+	 *             if maxProcesses is negative or zero
+	 */
+	public void setMaxProcesses(int maxProcesses) {
+		if (maxProcesses <= 0) {
+			throw new IllegalArgumentException("maxProcesses: <= 0");
+		}
+		lock.lock();
+		try {
+			this.maxProcesses = maxProcesses;
+			permitReleased.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Takes a permit for a new process, waiting for one to be released if necessary.
+	 * 
+	 * @param timeoutMilliseconds
+	 *            time, in milliseconds, to wait for a permit. A negative value waits as long as necessary, and
+	 *            {@code 0} fails right away if no permit is available.
+	 * @return a permit that must be released once the process has exited or was closed, or {@code null} if no permit
+	 *         became available in time
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted while it is waiting
+	 */
+	Permit acquire(long timeoutMilliseconds) throws InterruptedException {
+		List<Permit> permits = acquire(1, timeoutMilliseconds);
+		return permits == null ? null : permits.get(0);
+	}
+
+	/**
+	 * Takes several permits at once, for the processes of a pipeline, waiting for enough of them to be released if
+	 * necessary. Taking the permits one at a time instead could leave several pipelines each holding some of the
+	 * permits while waiting for the rest.
+	 * 
+	 * @param count
+	 *            the number of permits to take
+	 * @param timeoutMilliseconds
+	 *            time, in milliseconds, to wait for the permits. A negative value waits as long as necessary, and
+	 *            {@code 0} fails right away if not enough permits are available.
+	 * @return the permits, or {@code null} if not enough permits became available in time. This is also the case
+	 *         right away if more permits are requested than the limit allows.
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted while it is waiting
+	 */
+	List<Permit> acquire(int count, long timeoutMilliseconds) throws InterruptedException {
+		long start = System.nanoTime();
+		lock.lockInterruptibly();
+		try {
+			if (activeCount + count > maxProcesses && timeoutMilliseconds != 0) {
+				long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMilliseconds);
+				waitingCount++;
+				try {
+					// Requests that exceed the limit itself can never be admitted, do not wait for them
+					while (activeCount + count > maxProcesses && count <= maxProcesses) {
+						if (timeoutMilliseconds < 0) {
+							permitReleased.await();
+						} else if (remaining > 0) {
+							remaining = permitReleased.awaitNanos(remaining);
+						} else {
+							break;
+						}
+					}
+				} finally {
+					waitingCount--;
+				}
+			}
+
+			long waitNanoseconds = System.nanoTime() - start;
+			totalWaitNanoseconds += waitNanoseconds;
+			maxWaitNanoseconds = Math.max(maxWaitNanoseconds, waitNanoseconds);
+			if (activeCount + count > maxProcesses) {
+				rejectedCount++;
+				return null;
+			}
+
+			activeCount += count;
+			admittedCount += count;
+			List<Permit> permits = new ArrayList<Permit>(count);
+			for (int i = 0; i < count; i++) {
+				permits.add(new Permit());
+			}
+			return permits;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void release() {
+		lock.lock();
+		try {
+			activeCount--;
+			permitReleased.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Called after a process that holds a permit of this limiter has been started. The default implementation does
+	 * nothing.
+	 * 
+	 * @param spawnNanoseconds
+	 *            how long it took to launch the process, in nanoseconds
+	 */
+	protected void processStarted(long spawnNanoseconds) {
+	}
+
+	/**
+	 * Called after the permit of a started process has been released because the process exited or was closed. The
+	 * default implementation does nothing.
+	 * 
+	 * @param lifetimeNanoseconds
+	 *            how long the process held its permit after it was started, in nanoseconds
+	 */
+	protected void processFinished(long lifetimeNanoseconds) {
+	}
+
+	/**
+	 * Returns the number of processes that currently hold a permit.
+	 */
+	public int getActiveCount() {
+		lock.lock();
+		try {
+			return activeCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of process starts that are currently waiting for a permit.
+	 */
+	public int getQueueLength() {
+		lock.lock();
+		try {
+			return waitingCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of processes that have been admitted.
+	 */
+	public long getAdmittedCount() {
+		lock.lock();
+		try {
+			return admittedCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of process starts that failed because no permit became available in time.
+	 */
+	public long getRejectedCount() {
+		lock.lock();
+		try {
+			return rejectedCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the total time, in nanoseconds, that process starts have spent waiting for a permit, including starts
+	 * that were rejected.
+	 */
+	public long getTotalWaitNanoseconds() {
+		lock.lock();
+		try {
+			return totalWaitNanoseconds;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the longest time, in nanoseconds, that a single process start has waited for a permit.
+	 */
+	public long getMaxWaitNanoseconds() {
+		lock.lock();
+		try {
+			return maxWaitNanoseconds;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * A permit held by one live process. Releasing it more than once has no effect, so it can be released both when
+	 * the process exits and when it is closed.
+	 */
+	final class Permit {
+		private final AtomicBoolean released = new AtomicBoolean();
+		private volatile long startedAt;
+		private volatile boolean started = false;
+
+		void started(long spawnNanoseconds) {
+			startedAt = System.nanoTime();
+			started = true;
+			processStarted(spawnNanoseconds);
+		}
+
+		void release() {
+			if (released.compareAndSet(false, true)) {
+				ProcessLimiter.this.release();
+				if (started) {
+					processFinished(System.nanoTime() - startedAt);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+/**
+ * A listener for metrics about the processes started by a {@link FinalizedProcessBuilder} and their gobblers.
+ * 
+ * <p>
+ * Methods are called on the threads that start, gobble and reap the processes, often concurrently, and should return
+ * quickly. {@link NoOpProcessMetrics} ignores all of them and can be extended to handle only some, and
+ * {@link CountingProcessMetrics} keeps lock-free counters that can be scraped at any time.
+ * 
+ * @author John Leacox
+ * @see FinalizedProcessBuilder#metrics(ProcessMetrics)
+ * 
+ */
+public interface ProcessMetrics {
+	/**
+	 * The streams of a process that are gobbled.
+	 */
+	enum Stream {
+		/**
+		 * The normal output of the process, read through {@link FinalizedProcess#getInputStream()}.
+		 */
+		OUTPUT,
+
+		/**
+		 * The error output of the process, read through {@link FinalizedProcess#getErrorStream()}.
+		 */
+		ERROR
+	}
+
+	/**
+	 * Invoked when a process was started.
+	 * 
+	 * @param spawnNanoseconds
+	 *            how long it took to launch the process, in nanoseconds
+	 */
+	void processStarted(long spawnNanoseconds);
+
+	/**
+	 * Invoked when a process was found to have exited.
+	 * 
+	 * @param exitValue
+	 *            the exit value of the process
+	 * @param lifetimeNanoseconds
+	 *            how long the process ran after it was launched, in nanoseconds
+	 */
+	void processExited(int exitValue, long lifetimeNanoseconds);
+
+	/**
+	 * Invoked when a gobbler task starts running on its executor.
+	 * 
+	 * @param stream
+	 *            the stream being gobbled
+	 */
+	void gobblerStarted(Stream stream);
+
+	/**
+	 * Invoked each time a gobbler reads from its stream.
+	 * 
+	 * @param stream
+	 *            the stream being gobbled
+	 * @param bytes
+	 *            the number of bytes read
+	 * @param lines
+	 *            the number of line feeds in the bytes read
+	 */
+	void bytesGobbled(Stream stream, int bytes, int lines);
+
+	/**
+	 * Invoked when a gobbler task stops running, at the end of the stream or after being closed.
+	 * 
+	 * @param stream
+	 *            the stream being gobbled
+	 */
+	void gobblerFinished(Stream stream);
+
+	/**
+	 * Invoked when a thread waiting in {@link FinalizedProcess#waitFor(long)} gives up because the timeout elapsed.
+	 */
+	void waitTimedOut();
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A pipeline of processes where the normal output of each process is connected to the normal input of the next one.
+ * 
+ * <p>
+ * Pipelines are started with {@link FinalizedProcessBuilder#startPipeline(List)}. The members of the group are the
+ * stages of the pipeline in order, so {@link #waitAll(long)} returns the exit value of each stage. Closing the
+ * pipeline closes every stage.
+ * 
+ * <pre>
+ * {@code
+ * ProcessPipeline pipeline = FinalizedProcessBuilder.startPipeline(Arrays.asList(
+ *     new FinalizedProcessBuilder("cmdA"), new FinalizedProcessBuilder("cmdB").gobbleInputStream(true)));
+ * try {
+ *   int[] exitValues = pipeline.waitAll(5000);
+ * } finally {
+ *   pipeline.close();
+ * }}
+ * </pre>
+ * 
+ * @author John Leacox
+ * 
+ */
+public class ProcessPipeline extends ProcessGroup {
+	ProcessPipeline(List<FinalizedProcess> stages) {
+		super(stages);
+	}
+
+	static ProcessPipeline startStages(List<FinalizedProcessBuilder> processBuilders) throws IOException {
+		if (processBuilders == null) {
+			throw new NullPointerException("processBuilders: null");
+		}
+		if (processBuilders.isEmpty()) {
+			throw new IllegalArgumentException("processBuilders: empty");
+		}
+		for (FinalizedProcessBuilder processBuilder : processBuilders) {
+			if (processBuilder == null) {
+				throw new NullPointerException("processBuilders: contains null");
+			}
+		}
+
+		int last = processBuilders.size() - 1;
+		List<ProcessLimiter.Permit> permits = new ArrayList<ProcessLimiter.Permit>(processBuilders.size());
+		List<FinalizedProcess> stages = new ArrayList<FinalizedProcess>(processBuilders.size());
+		boolean succeeded = false;
+		List<ProcessTrace> traces = new ArrayList<ProcessTrace>(processBuilders.size());
+		for (FinalizedProcessBuilder processBuilder : processBuilders) {
+			traces.add(processBuilder.newTrace());
+		}
+		ProcessInput input = processBuilders.get(0).claimInput();
+		boolean launched = false;
+		try {
+			permits.addAll(admit(processBuilders));
+			for (FinalizedProcessBuilder processBuilder : processBuilders) {
+				processBuilder.selectLaunchMechanism();
+			}
+			LaunchMechanism.processStarting();
+
+			long[] spawnNanoseconds = new long[processBuilders.size()];
+			List<Process> processes = launch(processBuilders, spawnNanoseconds);
+			launched = true;
+			long spawned = System.nanoTime();
+			for (ProcessTrace trace : traces) {
+				trace.record(ProcessTrace.Phase.SPAWNED, spawned);
+			}
+			try {
+				for (int i = 0; i <= last; i++) {
+					FinalizedProcessBuilder processBuilder = processBuilders.get(i);
+					boolean gobbleOutput = i == last && processBuilder.gobbleInputStream();
+					stages.add(processBuilder.wrap(traces.get(i), processes.get(i), spawnNanoseconds[i], gobbleOutput,
+							false, i == 0 ? input : null));
+				}
+			} finally {
+				for (int i = stages.size(); i <= last; i++) {
+					processes.get(i).destroy();
+				}
+			}
+
+			if (!ProcessCompat.supportsPipelines()) {
+				for (int i = 0; i < last; i++) {
+					InputStream upstream = stages.get(i).getInputStream();
+					OutputStream downstream = stages.get(i + 1).getOutputStream();
+					processBuilders.get(i).gobblerExecutor().execute(new StreamPump(upstream, downstream));
+				}
+			}
+
+			for (int i = 0; i <= last; i++) {
+				FinalizedProcessBuilder.holdPermit(stages.get(i), permits.get(i));
+			}
+			succeeded = true;
+		} finally {
+			if (!succeeded) {
+				close(stages);
+				for (ProcessLimiter.Permit permit : permits) {
+					FinalizedProcessBuilder.releasePermit(permit);
+				}
+				if (!launched) {
+					FinalizedProcessBuilder.unclaimInput(input);
+				}
+			}
+		}
+		return new ProcessPipeline(stages);
+	}
+
+	/**
+	 * Takes the permits of all stages, in the order of the stages. The permits of each limiter are taken at once, and
+	 * the limiters are visited in a fixed order, so pipelines that wait for permits cannot deadlock each other.
+	 */
+	private static List<ProcessLimiter.Permit> admit(List<FinalizedProcessBuilder> processBuilders) throws IOException {
+		List<ProcessLimiter> limiters = new ArrayList<ProcessLimiter>();
+		for (FinalizedProcessBuilder processBuilder : processBuilders) {
+			ProcessLimiter limiter = processBuilder.processLimiter();
+			if (limiter != null && !limiters.contains(limiter)) {
+				limiters.add(limiter);
+			}
+		}
+		Collections.sort(limiters, new Comparator<ProcessLimiter>() {
+			@Override
+			public int compare(ProcessLimiter a, ProcessLimiter b) {
+				int x = System.identityHashCode(a);
+				int y = System.identityHashCode(b);
+				return x < y ? -1 : (x == y ? 0 : 1);
+			}
+		});
+
+		List<ProcessLimiter.Permit> permits = new ArrayList<ProcessLimiter.Permit>(processBuilders.size());
+		for (int i = 0; i < processBuilders.size(); i++) {
+			permits.add(null);
+		}
+		boolean succeeded = false;
+		try {
+			for (ProcessLimiter limiter : limiters) {
+				FinalizedProcessBuilder first = null;
+				int count = 0;
+				for (FinalizedProcessBuilder processBuilder : processBuilders) {
+					if (processBuilder.processLimiter() == limiter) {
+						if (first == null) {
+							first = processBuilder;
+						}
+						count++;
+					}
+				}
+				Iterator<ProcessLimiter.Permit> acquired = first.admit(count).iterator();
+				for (int i = 0; i < processBuilders.size(); i++) {
+					if (processBuilders.get(i).processLimiter() == limiter) {
+						permits.set(i, acquired.next());
+					}
+				}
+			}
+			succeeded = true;
+		} finally {
+			if (!succeeded) {
+				for (ProcessLimiter.Permit permit : permits) {
+					FinalizedProcessBuilder.releasePermit(permit);
+				}
+			}
+		}
+		return permits;
+	}
+
+	private static List<Process> launch(List<FinalizedProcessBuilder> processBuilders, long[] spawnNanoseconds)
+			throws IOException {
+		if (ProcessCompat.supportsPipelines()) {
+			List<ProcessBuilder> builders = new ArrayList<ProcessBuilder>(processBuilders.size());
+			for (FinalizedProcessBuilder processBuilder : processBuilders) {
+				builders.add(processBuilder.getProcessBuilder());
+			}
+			long spawnStart = System.nanoTime();
+			List<Process> processes = ProcessCompat.startPipeline(builders);
+			// The stages are launched together, share the time between them
+			Arrays.fill(spawnNanoseconds, (System.nanoTime() - spawnStart) / processes.size());
+			return processes;
+		}
+
+		List<Process> processes = new ArrayList<Process>(processBuilders.size());
+		boolean succeeded = false;
+		try {
+			for (int i = 0; i < processBuilders.size(); i++) {
+				long spawnStart = System.nanoTime();
+				processes.add(processBuilders.get(i).getProcessBuilder().start());
+				spawnNanoseconds[i] = System.nanoTime() - spawnStart;
+			}
+			succeeded = true;
+			return processes;
+		} finally {
+			if (!succeeded) {
+				for (Process process : processes) {
+					process.destroy();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the output stream connected to the normal input of the first stage of the pipeline.
+	 * 
+	 * @return the output stream connected to the normal input of the first process
+	 */
+	public OutputStream getOutputStream() {
+		return getProcesses().get(0).getOutputStream();
+	}
+
+	/**
+	 * Returns the input stream connected to the normal output of the last stage of the pipeline.
+	 * 
+	 * @return the input stream connected to the normal output of the last process
+	 */
+	public InputStream getInputStream() {
+		List<FinalizedProcess> stages = getProcesses();
+		return stages.get(stages.size() - 1).getInputStream();
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Watches processes with pending {@link ExitFuture}s and completes the futures when the processes exit.
+ * 
+ * <p>
+ * A single daemon thread polls all of the registered processes, so watching many processes does not require a blocked
+ * thread per process. The polling interval starts short and backs off while nothing exits. The thread is started
+ * lazily when the first process is registered and stops once no processes have been registered for a short while.
+ * 
+ * @author John Leacox
+ * 
+ */
+final class ProcessReaper implements Runnable {
+	private static final long MIN_POLL_MILLISECONDS = 1;
+	private static final long MAX_POLL_MILLISECONDS = 50;
+	private static final long IDLE_MILLISECONDS = 1000;
+
+	private static final ProcessReaper INSTANCE = new ProcessReaper("process-warden-reaper");
+
+	private final String threadName;
+	private final Queue<ExitFuture> pending = new ConcurrentLinkedQueue<ExitFuture>();
+	private final Object lock = new Object();
+	private final AtomicInteger threadsCreated = new AtomicInteger();
+
+	private Thread thread;
+	private boolean registered = false;
+
+	ProcessReaper(String threadName) {
+		this.threadName = threadName;
+	}
+
+	static ProcessReaper getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Registers the future to be completed when its process exits.
+	 */
+	void register(ExitFuture future) {
+		pending.add(future);
+
+		synchronized (lock) {
+			registered = true;
+			if (thread == null) {
+				startThread();
+			} else {
+				lock.notifyAll();
+			}
+		}
+	}
+
+	@Override
+	public void run() {
+		long pollMilliseconds = MIN_POLL_MILLISECONDS;
+		try {
+			while (true) {
+				boolean exited = false;
+				for (Iterator<ExitFuture> it = pending.iterator(); it.hasNext();) {
+					ExitFuture future = it.next();
+					Integer exitValue;
+					try {
+						exitValue = future.getProcess().tryExitValue();
+					} catch (RuntimeException e) {
+						continue;
+					}
+
+					if (exitValue != null) {
+						it.remove();
+						future.complete(exitValue.intValue());
+						exited = true;
+					}
+				}
+
+				synchronized (lock) {
+					if (pending.isEmpty() && !registered) {
+						lock.wait(IDLE_MILLISECONDS);
+						if (pending.isEmpty() && !registered) {
+							thread = null;
+							return;
+						}
+					} else if (!registered) {
+						lock.wait(pollMilliseconds);
+					}
+
+					if (registered || exited) {
+						pollMilliseconds = MIN_POLL_MILLISECONDS;
+					} else {
+						pollMilliseconds = Math.min(pollMilliseconds * 2, MAX_POLL_MILLISECONDS);
+					}
+					registered = false;
+				}
+			}
+		} catch (InterruptedException e) {
+		} finally {
+			// Whatever stopped this thread, a replacement must take over the processes that are still pending
+			synchronized (lock) {
+				if (thread == Thread.currentThread()) {
+					thread = null;
+					if (!pending.isEmpty()) {
+						startThread();
+					}
+				}
+			}
+		}
+	}
+
+	private void startThread() {
+		threadsCreated.incrementAndGet();
+		thread = new Thread(this, threadName);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	int getThreadsCreated() {
+		return threadsCreated.get();
+	}
+}
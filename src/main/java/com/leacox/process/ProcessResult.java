@@ -0,0 +1,166 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import java.nio.charset.Charset;
+
+/**
+ * The immutable result of running a process to completion with {@link FinalizedProcessBuilder#run(long)}.
+ * 
+ * <p>
+ * The captured output is kept as raw bytes. It is only decoded to a {@code String} when one of the string accessors
+ * is called, and the decoded value is cached.
+ * 
+ * @author John Leacox
+ * @see FinalizedProcessBuilder#run(long)
+ * 
+ */
+public final class ProcessResult {
+	private final int exitValue;
+	private final byte[] output;
+	private final byte[] error;
+	private final boolean outputTruncated;
+	private final boolean errorTruncated;
+	private final boolean complete;
+
+	private volatile String outputString;
+	private volatile String errorString;
+
+	ProcessResult(int exitValue, byte[] output, boolean outputTruncated, byte[] error, boolean errorTruncated,
+			boolean complete) {
+		this.exitValue = exitValue;
+		this.output = output;
+		this.outputTruncated = outputTruncated;
+		this.error = error;
+		this.errorTruncated = errorTruncated;
+		this.complete = complete;
+	}
+
+	/**
+	 * Returns the exit value of the process. By convention, the value {@code 0} indicates normal termination.
+	 * 
+	 * @return the exit value of the process
+	 */
+	public int getExitValue() {
+		return exitValue;
+	}
+
+	/**
+	 * Returns the bytes captured from the normal output of the process.
+	 * 
+	 * @return a copy of the captured normal output
+	 */
+	public byte[] getOutput() {
+		return output.clone();
+	}
+
+	/**
+	 * Returns the captured normal output of the process decoded with the platform's default charset.
+	 * 
+	 * @return the captured normal output as a string
+	 */
+	public String getOutputString() {
+		String decoded = outputString;
+		if (decoded == null) {
+			decoded = new String(output, Charset.defaultCharset());
+			outputString = decoded;
+		}
+		return decoded;
+	}
+
+	/**
+	 * Returns the captured normal output of the process decoded with the given charset.
+	 * 
+	 * @param charset
+	 *            the charset to decode the output with
+	 * @return the captured normal output as a string
+	 */
+	public String getOutputString(Charset charset) {
+		return new String(output, charset);
+	}
+
+	/**
+	 * Tells whether the normal output of the process was longer than the maximum capture size and was cut off.
+	 * 
+	 * @return {@code true} if only the beginning of the normal output was captured
+	 * @see FinalizedProcessBuilder#maxCaptureSize(int)
+	 */
+	public boolean isOutputTruncated() {
+		return outputTruncated;
+	}
+
+	/**
+	 * Returns the bytes captured from the error output of the process. This is empty if the error stream was redirected
+	 * to the normal output.
+	 * 
+	 * @return a copy of the captured error output
+	 */
+	public byte[] getError() {
+		return error.clone();
+	}
+
+	/**
+	 * Returns the captured error output of the process decoded with the platform's default charset.
+	 * 
+	 * @return the captured error output as a string
+	 */
+	public String getErrorString() {
+		String decoded = errorString;
+		if (decoded == null) {
+			decoded = new String(error, Charset.defaultCharset());
+			errorString = decoded;
+		}
+		return decoded;
+	}
+
+	/**
+	 * Returns the captured error output of the process decoded with the given charset.
+	 * 
+	 * @param charset
+	 *            the charset to decode the error output with
+	 * @return the captured error output as a string
+	 */
+	public String getErrorString(Charset charset) {
+		return new String(error, charset);
+	}
+
+	/**
+	 * Tells whether the error output of the process was longer than the maximum capture size and was cut off.
+	 * 
+	 * @return {@code true} if only the beginning of the error output was captured
+	 * @see FinalizedProcessBuilder#maxCaptureSize(int)
+	 */
+	public boolean isErrorTruncated() {
+		return errorTruncated;
+	}
+
+	/**
+	 * Tells whether the output of the process was read to its end before the timeout elapsed. Output is left unread
+	 * when, for example, a line listener takes longer than the timeout to process it.
+	 * 
+	 * @return {@code true} if all of the output was read; {@code false} if the captured output may be missing its end
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
+	@Override
+	public String toString() {
+		return "ProcessResult[exitValue=" + exitValue + ", output=" + output.length + " bytes, error=" + error.length
+				+ " bytes" + (complete ? "" : ", incomplete") + "]";
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Thrown when a subprocess did not exit within the timeout given to {@link FinalizedProcess#waitFor(long)}.
+ * 
+ * <p>
+ * A timeout is not an interrupt, so this is not an {@link InterruptedException} and the interrupt status of the
+ * waiting thread is left alone. An {@code InterruptedException} from the same methods always means that the thread was
+ * interrupted by someone else.
+ * 
+ * @author John Leacox
+ * @see TimeoutPolicy
+ * 
+ */
+public class ProcessTimeoutException extends TimeoutException {
+	private static final long serialVersionUID = 1L;
+
+	private final long timeoutMilliseconds;
+	private final TimeoutPolicy policy;
+	private final KillReport killReport;
+
+	public ProcessTimeoutException(long timeoutMilliseconds, TimeoutPolicy policy, KillReport killReport) {
+		super("Process did not exit within " + timeoutMilliseconds + " milliseconds");
+		this.timeoutMilliseconds = timeoutMilliseconds;
+		this.policy = policy;
+		this.killReport = killReport;
+	}
+
+	/**
+	 * Returns the timeout that elapsed, in milliseconds.
+	 * 
+	 * @return the timeout in milliseconds
+	 */
+	public long getTimeoutMilliseconds() {
+		return timeoutMilliseconds;
+	}
+
+	/**
+	 * Returns what was done to the subprocess when the timeout elapsed.
+	 * 
+	 * @return the timeout policy
+	 */
+	public TimeoutPolicy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Returns what happened to the process tree if the policy is {@link TimeoutPolicy#DESTROY_TREE}.
+	 * 
+	 * @return the kill report, or {@code null} for other policies
+	 */
+	public KillReport getKillReport() {
+		return killReport;
+	}
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The timestamps of the lifecycle of a {@link FinalizedProcess}, from the request to start it until it is closed.
+ * 
+ * <p>
+ * Each phase is recorded once, the first time it is reached, with {@link System#nanoTime()}. Phases that are reached
+ * are also emitted as {@code com.leacox.process.ProcessLifecycle} events to JDK Flight Recorder when it is recording,
+ * on Java 11 and later.
+ * 
+ * <pre>
+ * {@code
+ * ProcessTrace trace = process.getTrace();
+ * long spawn = trace.getNanosecondsSinceStart(ProcessTrace.Phase.SPAWNED);
+ * long firstByte = trace.getNanosecondsSinceStart(ProcessTrace.Phase.FIRST_OUTPUT_BYTE);}
+ * </pre>
+ * 
+ * @author John Leacox
+ * @see FinalizedProcess#getTrace()
+ * 
+ */
+public final class ProcessTrace {
+	/**
+	 * The phases in the lifecycle of a process.
+	 */
+	public enum Phase {
+		/**
+		 * {@link FinalizedProcessBuilder#start()} was called, before waiting for the process limiter.
+		 */
+		START_REQUESTED,
+
+		/**
+		 * The operating system process was launched.
+		 */
+		SPAWNED,
+
+		/**
+		 * The first byte of the normal output was read by its gobbler.
+		 */
+		FIRST_OUTPUT_BYTE,
+
+		/**
+		 * The first byte of the error output was read by its gobbler.
+		 */
+		FIRST_ERROR_BYTE,
+
+		/**
+		 * The exit of the process was first observed, by waiting for it, by asking for its exit value or by an exit
+		 * future. Closing the process does not record this phase, so a process that was closed without ever being
+		 * waited for does not reach it.
+		 */
+		EXIT_OBSERVED,
+
+		/**
+		 * The gobbler of the normal output reached the end of the stream.
+		 */
+		OUTPUT_DRAINED,
+
+		/**
+		 * The gobbler of the error output reached the end of the stream.
+		 */
+		ERROR_DRAINED,
+
+		/**
+		 * The process was closed.
+		 */
+		CLOSED
+	}
+
+	private static final long NOT_REACHED = Long.MIN_VALUE;
+
+	private final String program;
+	private final AtomicLongArray nanoTimes = new AtomicLongArray(Phase.values().length);
+
+	ProcessTrace(String program) {
+		this.program = program;
+		for (int i = 0; i < nanoTimes.length(); i++) {
+			nanoTimes.set(i, NOT_REACHED);
+		}
+	}
+
+	/**
+	 * Records that the phase was reached now, unless it was reached before.
+	 */
+	void record(Phase phase) {
+		record(phase, System.nanoTime());
+	}
+
+	void record(Phase phase, long nanoTime) {
+		if (nanoTimes.compareAndSet(phase.ordinal(), NOT_REACHED, nanoTime)) {
+			FlightRecorderEvents.lifecycle(program, phase, getNanosecondsSinceStart(phase));
+		}
+	}
+
+	/**
+	 * Tells whether the phase was reached.
+	 * 
+	 * @param phase
+	 *            the phase
+	 * @return {@code true} if the phase was reached
+	 */
+	public boolean isReached(Phase phase) {
+		return nanoTimes.get(phase.ordinal()) != NOT_REACHED;
+	}
+
+	/**
+	 * Returns when the phase was reached, as a value of {@link System#nanoTime()}.
+	 * 
+	 * @param phase
+	 *            the phase
+	 * @return when the phase was reached
+	 * @throws IllegalStateException
+	 *             if the phase was not reached
+	 */
+	public long getNanoTime(Phase phase) {
+		long nanoTime = nanoTimes.get(phase.ordinal());
+		if (nanoTime == NOT_REACHED) {
+			throw new IllegalStateException(phase + " was not reached");
+		}
+		return nanoTime;
+	}
+
+	/**
+	 * Returns how long after the start was requested the phase was reached, in nanoseconds.
+	 * 
+	 * @param phase
+	 *            the phase
+	 * @return the nanoseconds since the start was requested, or {@code -1} if either phase was not reached
+	 */
+	public long getNanosecondsSinceStart(Phase phase) {
+		long start = nanoTimes.get(Phase.START_REQUESTED.ordinal());
+		long nanoTime = nanoTimes.get(phase.ordinal());
+		if (start == NOT_REACHED || nanoTime == NOT_REACHED) {
+			return -1;
+		}
+		return nanoTime - start;
+	}
+
+	/**
+	 * Returns the reached phases with the microseconds since the start was requested, for example
+	 * {@code [START_REQUESTED=0us, SPAWNED=812us, FIRST_OUTPUT_BYTE=2210us]}.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("[");
+		for (Phase phase : Phase.values()) {
+			if (isReached(phase)) {
+				if (builder.length() > 1) {
+					builder.append(", ");
+				}
+				builder.append(phase).append('=');
+				long sinceStart = getNanosecondsSinceStart(phase);
+				builder.append(sinceStart < 0 ? "?" : String.valueOf(sinceStart / 1000)).append("us");
+			}
+		}
+		return builder.append(']').toString();
+	}
+}
@@ -0,0 +1,326 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Access to the operating system processes below a process, so that a whole process tree can be signalled.
+ * 
+ * <p>
+ * On Java 9 and later {@code ProcessHandle} is used, looked up reflectively so that this library can still be built
+ * and run on Java 6. On older versions of Java the tree is read from {@code /proc} and processes are signalled with
+ * the {@code kill} command, which works on Linux. Where neither is available, no descendants are found.
+ * 
+ * <p>
+ * Processes are represented by opaque handles, which are {@code ProcessHandle} objects or process ids.
+ * 
+ * @author John Leacox
+ * 
+ */
+abstract class ProcessTree {
+	private static final ProcessTree INSTANCE = create();
+
+	static ProcessTree getInstance() {
+		return INSTANCE;
+	}
+
+	private static ProcessTree create() {
+		ProcFsProcessTree procFs = new ProcFsProcessTree(new File("/proc"));
+		ProcessTree handles = HandleProcessTree.create(procFs);
+		if (handles != null) {
+			return handles;
+		}
+		return procFs;
+	}
+
+	/**
+	 * Returns the handle of the process with the given id, or {@code null} if there is no such process.
+	 */
+	abstract Object handle(long pid);
+
+	/**
+	 * Returns the handles of all descendants of the process, children before their own children.
+	 */
+	abstract List<Object> descendants(Object handle);
+
+	abstract long pid(Object handle);
+
+	abstract boolean isAlive(Object handle);
+
+	/**
+	 * Returns the name of the command the process is running, or {@code null} if it is not known.
+	 */
+	abstract String command(Object handle);
+
+	/**
+	 * Asks the processes to terminate, or kills them if {@code force} is {@code true}.
+	 */
+	abstract void signal(List<Object> handles, boolean force);
+
+	/**
+	 * Uses {@code ProcessHandle} on Java 9 and later.
+	 */
+	static final class HandleProcessTree extends ProcessTree {
+		private final Method of;
+		private final Method orElse;
+		private final Method descendants;
+		private final Method iterator;
+		private final Method pid;
+		private final Method isAlive;
+		private final Method info;
+		private final Method infoCommand;
+		private final Method destroy;
+		private final Method destroyForcibly;
+		private final ProcFsProcessTree procFs;
+
+		private HandleProcessTree(Class<?> processHandle, ProcFsProcessTree procFs) throws Exception {
+			this.procFs = procFs;
+			Class<?> optional = Class.forName("java.util.Optional");
+			this.of = processHandle.getMethod("of", long.class);
+			this.orElse = optional.getMethod("orElse", Object.class);
+			this.descendants = processHandle.getMethod("descendants");
+			this.iterator = Class.forName("java.util.stream.BaseStream").getMethod("iterator");
+			this.pid = processHandle.getMethod("pid");
+			this.isAlive = processHandle.getMethod("isAlive");
+			this.info = processHandle.getMethod("info");
+			this.infoCommand = Class.forName("java.lang.ProcessHandle$Info").getMethod("command");
+			this.destroy = processHandle.getMethod("destroy");
+			this.destroyForcibly = processHandle.getMethod("destroyForcibly");
+		}
+
+		static HandleProcessTree create(ProcFsProcessTree procFs) {
+			Class<?> processHandle = ProcessCompat.findClass("java.lang.ProcessHandle");
+			if (processHandle == null) {
+				return null;
+			}
+			try {
+				return new HandleProcessTree(processHandle, procFs);
+			} catch (Exception e) {
+				return null;
+			}
+		}
+
+		@Override
+		Object handle(long pid) {
+			return ProcessCompat.invoke(orElse, ProcessCompat.invoke(of, null, Long.valueOf(pid)), (Object) null);
+		}
+
+		@Override
+		List<Object> descendants(Object handle) {
+			List<Object> handles = new ArrayList<Object>();
+			Iterator<?> descendantHandles = (Iterator<?>) ProcessCompat.invoke(iterator,
+					ProcessCompat.invoke(descendants, handle));
+			while (descendantHandles.hasNext()) {
+				handles.add(descendantHandles.next());
+			}
+			return handles;
+		}
+
+		@Override
+		long pid(Object handle) {
+			return ((Long) ProcessCompat.invoke(pid, handle)).longValue();
+		}
+
+		@Override
+		boolean isAlive(Object handle) {
+			if (!((Boolean) ProcessCompat.invoke(isAlive, handle)).booleanValue()) {
+				return false;
+			}
+			// Orphans that exited may stay zombies for good if nothing reaps them, for example in a container
+			return !procFs.isZombie(pid(handle));
+		}
+
+		@Override
+		String command(Object handle) {
+			Object command = ProcessCompat.invoke(infoCommand, ProcessCompat.invoke(info, handle));
+			String path = (String) ProcessCompat.invoke(orElse, command, (Object) null);
+			return path == null ? null : new File(path).getName();
+		}
+
+		@Override
+		void signal(List<Object> handles, boolean force) {
+			for (Object handle : handles) {
+				ProcessCompat.invoke(force ? destroyForcibly : destroy, handle);
+			}
+		}
+	}
+
+	/**
+	 * Reads the process tree from {@code /proc} and signals processes with the {@code kill} command.
+	 */
+	static final class ProcFsProcessTree extends ProcessTree {
+		private static final long KILL_TIMEOUT_MILLISECONDS = 1000;
+
+		private final File proc;
+
+		ProcFsProcessTree(File proc) {
+			this.proc = proc;
+		}
+
+		@Override
+		Object handle(long pid) {
+			return isAlive(Long.valueOf(pid)) ? Long.valueOf(pid) : null;
+		}
+
+		@Override
+		List<Object> descendants(Object handle) {
+			Map<Long, List<Long>> children = new HashMap<Long, List<Long>>();
+			String[] names = proc.list();
+			if (names != null) {
+				for (String name : names) {
+					if (!isPid(name)) {
+						continue;
+					}
+					String[] stat = readStat(Long.parseLong(name));
+					if (stat == null) {
+						continue;
+					}
+					Long parent = Long.valueOf(stat[2]);
+					List<Long> siblings = children.get(parent);
+					if (siblings == null) {
+						siblings = new ArrayList<Long>();
+						children.put(parent, siblings);
+					}
+					siblings.add(Long.valueOf(name));
+				}
+			}
+
+			List<Object> descendants = new ArrayList<Object>();
+			List<Long> parents = new ArrayList<Long>();
+			parents.add((Long) handle);
+			for (int i = 0; i < parents.size(); i++) {
+				List<Long> parentChildren = children.get(parents.get(i));
+				if (parentChildren != null) {
+					descendants.addAll(parentChildren);
+					parents.addAll(parentChildren);
+				}
+			}
+			return descendants;
+		}
+
+		@Override
+		long pid(Object handle) {
+			return ((Long) handle).longValue();
+		}
+
+		@Override
+		boolean isAlive(Object handle) {
+			String[] stat = readStat(((Long) handle).longValue());
+			return stat != null && !isZombie(stat);
+		}
+
+		/**
+		 * Tells whether the process has exited and only waits for its parent to reap it.
+		 */
+		boolean isZombie(long pid) {
+			String[] stat = readStat(pid);
+			return stat != null && isZombie(stat);
+		}
+
+		private static boolean isZombie(String[] stat) {
+			return "Z".equals(stat[1]) || "X".equals(stat[1]);
+		}
+
+		@Override
+		String command(Object handle) {
+			String[] stat = readStat(((Long) handle).longValue());
+			return stat == null ? null : stat[0];
+		}
+
+		@Override
+		void signal(List<Object> handles, boolean force) {
+			if (handles.isEmpty()) {
+				return;
+			}
+			List<String> command = new ArrayList<String>();
+			command.add("kill");
+			command.add(force ? "-KILL" : "-TERM");
+			for (Object handle : handles) {
+				command.add(String.valueOf(handle));
+			}
+			try {
+				// Some processes may have exited already, which makes kill fail for them only
+				new FinalizedProcessBuilder(command).timeoutPolicy(TimeoutPolicy.DESTROY)
+						.run(KILL_TIMEOUT_MILLISECONDS);
+			} catch (IOException e) {
+			} catch (ProcessTimeoutException e) {
+				// The caller polls for the processes that are still alive, so a hung kill only shows up as survivors
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		private static boolean isPid(String name) {
+			for (int i = 0; i < name.length(); i++) {
+				if (!Character.isDigit(name.charAt(i))) {
+					return false;
+				}
+			}
+			return name.length() > 0;
+		}
+
+		/**
+		 * Returns the command, state and parent id of the process, or {@code null} if it does not exist.
+		 */
+		private String[] readStat(long pid) {
+			String line;
+			try {
+				BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(new File(proc,
+						pid + File.separator + "stat")), "UTF-8"));
+				try {
+					line = reader.readLine();
+				} finally {
+					reader.close();
+				}
+			} catch (IOException e) {
+				return null;
+			}
+			return parseStat(line);
+		}
+
+		/**
+		 * Parses a line like {@code 1234 (my command) S 1 ...}. The command may contain spaces and parentheses, so the
+		 * fields after it are found from the last closing parenthesis.
+		 */
+		static String[] parseStat(String line) {
+			if (line == null) {
+				return null;
+			}
+			int open = line.indexOf('(');
+			int close = line.lastIndexOf(')');
+			if (open < 0 || close < open) {
+				return null;
+			}
+			String[] fields = line.substring(close + 1).trim().split(" ");
+			if (fields.length < 2) {
+				return null;
+			}
+			return new String[] { line.substring(open + 1, close), fields[0], fields[1] };
+		}
+	}
+}
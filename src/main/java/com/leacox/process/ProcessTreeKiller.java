@@ -0,0 +1,163 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Destroys a subprocess together with all of its descendants.
+ * 
+ * <p>
+ * The descendants are found before the subprocess is signalled, since they can no longer be traced back to it once it
+ * exits. Every process of the tree is first asked to terminate, which sends {@code SIGTERM} on Unix. Processes that
+ * are still running after the grace period are killed forcibly. The whole operation never takes much longer than the
+ * given timeout; processes that are still running by then are reported as survivors.
+ * 
+ * @author John Leacox
+ * 
+ */
+final class ProcessTreeKiller {
+	private static final long POLL_INTERVAL_MILLISECONDS = 10;
+
+	private final ProcessTree tree;
+
+	ProcessTreeKiller(ProcessTree tree) {
+		this.tree = tree;
+	}
+
+	KillReport kill(Process process, long gracePeriodMilliseconds, long timeoutMilliseconds) {
+		long start = System.nanoTime();
+		long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMilliseconds);
+		long graceDeadline = Math.min(deadline, start + TimeUnit.MILLISECONDS.toNanos(gracePeriodMilliseconds));
+
+		long rootPid = ProcessCompat.pid(process);
+		Object root = rootPid < 0 ? null : tree.handle(rootPid);
+		Map<Long, String> commands = new LinkedHashMap<Long, String>();
+		List<Object> descendants = findDescendants(root, new ArrayList<Object>(), commands);
+		if (root != null) {
+			commands.put(Long.valueOf(rootPid), tree.command(root));
+		}
+
+		List<Long> terminated = new ArrayList<Long>();
+		List<Long> killed = new ArrayList<Long>();
+		boolean rootRunning = isRunning(process);
+		if (gracePeriodMilliseconds > 0) {
+			if (rootRunning) {
+				process.destroy();
+			}
+			tree.signal(descendants, false);
+			awaitExit(process, descendants, graceDeadline);
+			if (isRunning(process)) {
+				// The subprocess may have started more processes while it was shutting down
+				findDescendants(root, descendants, commands);
+			}
+			rootRunning = collectExited(process, rootRunning, rootPid, descendants, terminated);
+		}
+
+		if (rootRunning || !descendants.isEmpty()) {
+			if (rootRunning) {
+				destroyForcibly(process, root);
+			}
+			tree.signal(descendants, true);
+			awaitExit(process, descendants, deadline);
+			rootRunning = collectExited(process, rootRunning, rootPid, descendants, killed);
+		}
+
+		List<Long> survivors = new ArrayList<Long>();
+		if (rootRunning) {
+			survivors.add(Long.valueOf(rootPid));
+		}
+		for (Object descendant : descendants) {
+			survivors.add(Long.valueOf(tree.pid(descendant)));
+		}
+		return new KillReport(terminated, killed, survivors, commands, TimeUnit.NANOSECONDS.toMillis(System
+				.nanoTime() - start));
+	}
+
+	private List<Object> findDescendants(Object root, List<Object> found, Map<Long, String> commands) {
+		if (root == null) {
+			return found;
+		}
+		for (Object descendant : tree.descendants(root)) {
+			Long pid = Long.valueOf(tree.pid(descendant));
+			if (!commands.containsKey(pid) && tree.isAlive(descendant)) {
+				commands.put(pid, tree.command(descendant));
+				found.add(descendant);
+			}
+		}
+		return found;
+	}
+
+	private void destroyForcibly(Process process, Object root) {
+		if (ProcessCompat.pid(process) >= 0 && root != null && !ProcessCompat.supportsDestroyForcibly()) {
+			// Process.destroy() only sends SIGTERM before Java 8
+			List<Object> roots = new ArrayList<Object>(1);
+			roots.add(root);
+			tree.signal(roots, true);
+		} else {
+			ProcessCompat.destroyForcibly(process);
+		}
+	}
+
+	private void awaitExit(Process process, List<Object> descendants, long deadline) {
+		while (System.nanoTime() < deadline && (isRunning(process) || anyAlive(descendants))) {
+			try {
+				Thread.sleep(POLL_INTERVAL_MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	private boolean anyAlive(List<Object> descendants) {
+		for (Object descendant : descendants) {
+			if (tree.isAlive(descendant)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Moves the processes that exited to {@code exited} and returns whether the subprocess is still running.
+	 */
+	private boolean collectExited(Process process, boolean rootRunning, long rootPid, List<Object> descendants,
+			List<Long> exited) {
+		boolean stillRunning = rootRunning && isRunning(process);
+		if (rootRunning && !stillRunning) {
+			exited.add(Long.valueOf(rootPid));
+		}
+		for (Iterator<Object> iterator = descendants.iterator(); iterator.hasNext();) {
+			Object descendant = iterator.next();
+			if (!tree.isAlive(descendant)) {
+				exited.add(Long.valueOf(tree.pid(descendant)));
+				iterator.remove();
+			}
+		}
+		return stillRunning;
+	}
+
+	private static boolean isRunning(Process process) {
+		return ProcessCompat.tryExitValue(process) == null;
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link ProcessInput} that writes buffers as they are produced.
+ * 
+ * <p>
+ * The queue of buffers waiting to be written is bounded, so producers are held back when the process does not read
+ * its input fast enough. Call {@link #finish()} after the last buffer, which closes the normal input of the process
+ * once everything before it has been written.
+ * 
+ * <pre>
+ * {@code
+ * QueuedProcessInput input = ProcessInput.queue(16);
+ * FinalizedProcess process = new FinalizedProcessBuilder("myCommand").input(input).gobbleStreams(true).start();
+ * for (ByteBuffer chunk : chunks) {
+ *   input.put(chunk);
+ * }
+ * input.finish();}
+ * </pre>
+ * 
+ * @author John Leacox
+ * @see ProcessInput#queue(int)
+ * 
+ */
+public final class QueuedProcessInput extends ProcessInput {
+	private static final ByteBuffer END = ByteBuffer.allocate(0);
+	private static final long ABORT_CHECK_MILLISECONDS = 50;
+
+	private final BlockingQueue<ByteBuffer> queue;
+	private volatile boolean aborted = false;
+
+	QueuedProcessInput(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity: <= 0");
+		}
+		this.queue = new ArrayBlockingQueue<ByteBuffer>(capacity);
+	}
+
+	/**
+	 * Adds a buffer to write, waiting for space in the queue if necessary.
+	 * 
+	 * @param buffer
+	 *            the buffer to write, which must not be modified until it has been written
+	 * @throws NullPointerException
+	 *             if buffer is null
+	 * @throws IOException
+	 *             if the process stopped reading its input
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted while it is waiting
+	 */
+	public void put(ByteBuffer buffer) throws IOException, InterruptedException {
+		if (buffer == null) {
+			throw new NullPointerException("buffer: null");
+		}
+		checkNotAborted();
+		// Nothing takes from the queue once the input is aborted, so waiting for space must not block forever
+		while (!queue.offer(buffer, ABORT_CHECK_MILLISECONDS, TimeUnit.MILLISECONDS)) {
+			checkNotAborted();
+		}
+	}
+
+	/**
+	 * Adds a buffer to write, waiting up to the given time for space in the queue.
+	 * 
+	 * @param buffer
+	 *            the buffer to write, which must not be modified until it has been written
+	 * @param timeoutMilliseconds
+	 *            time, in milliseconds, to wait for space in the queue
+	 * @return {@code true} if the buffer was added, or {@code false} if the queue stayed full
+	 * @throws NullPointerException
+	 *             if buffer is null
+	 * @throws IOException
+	 *             if the process stopped reading its input
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted while it is waiting
+	 */
+	public boolean offer(ByteBuffer buffer, long timeoutMilliseconds) throws IOException, InterruptedException {
+		if (buffer == null) {
+			throw new NullPointerException("buffer: null");
+		}
+		checkNotAborted();
+		return queue.offer(buffer, timeoutMilliseconds, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Marks the end of the input, waiting for space in the queue if necessary. The normal input of the process is
+	 * closed once the buffers added before have been written.
+	 * 
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted while it is waiting
+	 */
+	public void finish() throws InterruptedException {
+		while (!aborted) {
+			if (queue.offer(END, ABORT_CHECK_MILLISECONDS, TimeUnit.MILLISECONDS)) {
+				return;
+			}
+		}
+	}
+
+	private void checkNotAborted() throws IOException {
+		if (aborted) {
+			IOException failure = getFailure();
+			throw failure != null ? failure : new IOException("Process stopped reading its input");
+		}
+	}
+
+	@Override
+	ByteBuffer next() throws IOException, InterruptedException {
+		ByteBuffer buffer = queue.take();
+		if (aborted) {
+			throw new IOException("Process input was aborted");
+		}
+		return buffer == END ? null : buffer;
+	}
+
+	@Override
+	void abort() {
+		aborted = true;
+		// Wake up producers that are waiting for space, their buffers are thrown away
+		queue.clear();
+		// Wake up the feeder if it is waiting for a buffer that will never come
+		queue.offer(END);
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import java.io.File;
+
+/**
+ * Where a standard stream of a subprocess comes from or goes to.
+ * 
+ * <p>
+ * This mirrors {@code ProcessBuilder.Redirect}, which was added in Java 7, so that it can be used from this library
+ * while it still supports Java 6. A stream that is not {@link #PIPE piped} is connected directly to a file or to the
+ * stream of the JVM by the operating system, so its bytes never go through the JVM.
+ * 
+ * @author John Leacox
+ * @see FinalizedProcessBuilder#redirectInput(Redirect)
+ * @see FinalizedProcessBuilder#redirectOutput(Redirect)
+ * @see FinalizedProcessBuilder#redirectError(Redirect)
+ * 
+ */
+public final class Redirect {
+	/**
+	 * The kind of a redirect.
+	 */
+	public enum Type {
+		PIPE, INHERIT, DISCARD, READ, WRITE, APPEND
+	}
+
+	/**
+	 * The stream is connected to the JVM with a pipe. This is the default.
+	 */
+	public static final Redirect PIPE = new Redirect(Type.PIPE, null);
+
+	/**
+	 * The stream is connected to the same stream of the JVM.
+	 */
+	public static final Redirect INHERIT = new Redirect(Type.INHERIT, null);
+
+	/**
+	 * The output of the stream is thrown away. Only valid for the normal and error output.
+	 */
+	public static final Redirect DISCARD = new Redirect(Type.DISCARD, null);
+
+	private final Type type;
+	private final File file;
+
+	private Redirect(Type type, File file) {
+		this.type = type;
+		this.file = file;
+	}
+
+	/**
+	 * Returns a redirect that reads the normal input of the subprocess from the given file.
+	 * 
+	 * @param file
+	 *            the file to read from
+	 * @return a redirect that reads from the file
+	 * @throws NullPointerException
+	 *             if file is null
+	 */
+	public static Redirect from(File file) {
+		return new Redirect(Type.READ, checkFile(file));
+	}
+
+	/**
+	 * Returns a redirect that writes the output of the subprocess to the given file, replacing its contents.
+	 * 
+	 * @param file
+	 *            the file to write to
+	 * @return a redirect that writes to the file
+	 * @throws NullPointerException
+	 *             if file is null
+	 */
+	public static Redirect to(File file) {
+		return new Redirect(Type.WRITE, checkFile(file));
+	}
+
+	/**
+	 * Returns a redirect that appends the output of the subprocess to the given file.
+	 * 
+	 * @param file
+	 *            the file to append to
+	 * @return a redirect that appends to the file
+	 * @throws NullPointerException
+	 *             if file is null
+	 */
+	public static Redirect appendTo(File file) {
+		return new Redirect(Type.APPEND, checkFile(file));
+	}
+
+	private static File checkFile(File file) {
+		if (file == null) {
+			throw new NullPointerException("file: null");
+		}
+		return file;
+	}
+
+	/**
+	 * Returns the kind of this redirect.
+	 */
+	public Type type() {
+		return type;
+	}
+
+	/**
+	 * Returns the file of this redirect, or {@code null} if it does not have one.
+	 */
+	public File file() {
+		return file;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof Redirect)) {
+			return false;
+		}
+		Redirect other = (Redirect) obj;
+		return type == other.type && (file == null ? other.file == null : file.equals(other.file));
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * type.hashCode() + (file == null ? 0 : file.hashCode());
+	}
+
+	@Override
+	public String toString() {
+		return file == null ? type.toString() : type + " " + file;
+	}
+}
@@ -16,21 +16,32 @@
 
 package com.leacox.process;
 
-import java.io.BufferedReader;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * An object that consumes an {@link InputStream} on a daemon thread to prevent the stream from blocking.
+ * An object that consumes an {@link InputStream} on a separate thread to prevent the stream from blocking.
  * 
  * <p>
- * The stream can optionally be output to a logger at an INFO level. The gobbler thread will run until the stream is
- * empty or until this {@code StreamGobbler} is closed.
+ * The stream can optionally be output to a logger at an INFO level. The gobbler will run until the stream is empty or
+ * until this {@code StreamGobbler} is closed.
+ * 
+ * <p>
+ * The stream is consumed by a task submitted to an {@link Executor}. By default a shared pool of daemon threads is
+ * used, which reuses idle threads instead of starting a new thread for every stream. Since a gobbler occupies its
+ * thread until the stream ends, a custom executor must be able to run a task for every stream being gobbled at the same
+ * time.
  * 
  * @author John Leacox
  * 
@@ -38,10 +49,15 @@ import org.slf4j.LoggerFactory;
 public class StreamGobbler implements Closeable {
 	private static final Logger logger = LoggerFactory.getLogger(StreamGobbler.class);
 
-	private final GobblerThread gobblerThread;
+	private static final long SHARED_KEEP_ALIVE_SECONDS = 60;
+	private static final Executor SHARED_EXECUTOR = newSharedExecutor();
+
+	private final Gobbler gobbler;
 	private final InputStream inputStream;
+	private final Executor executor;
 
 	/**
+	 * Creates a gobbler that runs on the shared gobbler thread pool.
 	 * 
 	 * @param inputStream
 	 *            The {@link InputStream} to gobble (cannot be null)
@@ -51,54 +67,539 @@ public class StreamGobbler implements Closeable {
 	 *             if inputStream is null
 	 */
 	public StreamGobbler(InputStream inputStream, boolean enableLogging) {
+		this(inputStream, enableLogging, SHARED_EXECUTOR);
+	}
+
+	/**
+	 * Creates a gobbler that runs on the given executor.
+	 * 
+	 * @param inputStream
+	 *            The {@link InputStream} to gobble (cannot be null)
+	 * @param enableLogging
+	 *            Whether to log the stream or not
+	 * @param executor
+	 *            The {@link Executor} to run the gobbler on (cannot be null)
+	 * @throws NullPointerException
+	 *             if inputStream or executor is null
+	 */
+	public StreamGobbler(InputStream inputStream, boolean enableLogging, Executor executor) {
 		if (inputStream == null) {
 			throw new NullPointerException("inputStream: null");
 		}
+		if (executor == null) {
+			throw new NullPointerException("executor: null");
+		}
 
 		this.inputStream = inputStream;
-		this.gobblerThread = new GobblerThread(inputStream, enableLogging);
+		this.executor = executor;
+		this.gobbler = new Gobbler(inputStream, enableLogging);
+	}
+
+	/**
+	 * Returns the executor shared by all gobblers that are not given an executor of their own. The shared executor
+	 * starts daemon threads named {@code StreamGobbler-<n>} on demand and lets them die after being idle for a minute.
+	 * 
+	 * @return the shared gobbler executor
+	 */
+	public static Executor sharedExecutor() {
+		return SHARED_EXECUTOR;
+	}
+
+	private static Executor newSharedExecutor() {
+		return new ThreadPoolExecutor(0, Integer.MAX_VALUE, SHARED_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(), new ThreadFactory() {
+					private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "StreamGobbler-" + threadNumber.getAndIncrement());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
 	}
 
 	/**
 	 * Starts gobbling the input stream.
 	 */
 	public void gobble() {
-		gobblerThread.start();
+		if (gobbler.handoff != null) {
+			if (gobbler.hasLineProcessing()) {
+				executor.execute(gobbler.new Consumer());
+			} else {
+				gobbler.handoff = null;
+			}
+		}
+		executor.execute(gobbler);
+	}
+
+	/**
+	 * Keeps the most recent bytes of the stream in a ring buffer of the given capacity, so that they can be retrieved
+	 * with {@link #getTail()}. Memory use is bounded by the capacity no matter how much the stream produces.
+	 * 
+	 * <p>
+	 * This must be called before {@link #gobble()}.
+	 * 
+	 * @param capacity
+	 *            the number of bytes to keep (must be greater than 0)
+	 * @return this stream gobbler
+	 * @throws IllegalArgumentException
+	 *             if capacity is negative or zero
+	 */
+	public StreamGobbler captureTail(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity: <= 0");
+		}
+		gobbler.tail = new TailBuffer(capacity);
+		return this;
+	}
+
+	/**
+	 * Returns the most recent bytes read from the stream, oldest first. If the tail is not being captured, an empty
+	 * array is returned.
+	 * 
+	 * @return a copy of the captured tail of the stream
+	 * @see #captureTail(int)
+	 */
+	public byte[] getTail() {
+		TailBuffer tail = gobbler.tail;
+		return tail == null ? new byte[0] : tail.toByteArray();
+	}
+
+	/**
+	 * Keeps all bytes read from the stream, up to {@code maxBytes}, so that they can be retrieved with
+	 * {@link #getCaptured()}. The buffer grows as needed. Bytes beyond the limit are still read from the stream, so the
+	 * process does not block, but are not kept.
+	 * 
+	 * <p>
+	 * This must be called before {@link #gobble()}.
+	 * 
+	 * @param maxBytes
+	 *            the maximum number of bytes to keep (cannot be negative)
+	 * @return this stream gobbler
+	 * @throws IllegalArgumentException
+	 *             if maxBytes is negative
+	 */
+	public StreamGobbler capture(int maxBytes) {
+		gobbler.capture = new CaptureBuffer(maxBytes);
+		return this;
+	}
+
+	/**
+	 * Returns the bytes captured from the stream so far. If the stream is not being captured, an empty array is
+	 * returned.
+	 * 
+	 * @return a copy of the captured bytes
+	 * @see #capture(int)
+	 */
+	public byte[] getCaptured() {
+		CaptureBuffer capture = gobbler.capture;
+		return capture == null ? new byte[0] : capture.toByteArray();
+	}
+
+	/**
+	 * Tells whether the stream produced more bytes than the capture limit allowed to keep.
+	 * 
+	 * @return {@code true} if bytes were dropped from the capture
+	 * @see #capture(int)
+	 */
+	public boolean isCaptureTruncated() {
+		CaptureBuffer capture = gobbler.capture;
+		return capture != null && capture.isTruncated();
+	}
+
+	/**
+	 * Calls the listener for every line read from the stream. Lines are passed as a view of a reused buffer, so no
+	 * {@code String} or other garbage is created per line.
+	 * 
+	 * <p>
+	 * This must be called before {@link #gobble()}.
+	 * 
+	 * @param listener
+	 *            the listener to call for each line (cannot be null)
+	 * @return this stream gobbler
+	 * @throws NullPointerException
+	 *             if listener is null
+	 */
+	public StreamGobbler lineListener(LineListener listener) {
+		if (listener == null) {
+			throw new NullPointerException("listener: null");
+		}
+		gobbler.listener = listener;
+		return this;
+	}
+
+	/**
+	 * Limits how many lines and bytes of the stream are logged per second. Lines over the limit are skipped before
+	 * being decoded, and the number of skipped lines is logged once the limit resets and at the end of the stream.
+	 * 
+	 * <p>
+	 * This must be called before {@link #gobble()}.
+	 * 
+	 * @param maxLinesPerSecond
+	 *            the maximum number of lines to log per second, or {@code 0} for no limit (cannot be negative)
+	 * @param maxBytesPerSecond
+	 *            the maximum number of bytes to log per second, or {@code 0} for no limit (cannot be negative)
+	 * @return this stream gobbler
+	 * @throws IllegalArgumentException
+	 *             if maxLinesPerSecond or maxBytesPerSecond is negative
+	 */
+	public StreamGobbler logRateLimit(int maxLinesPerSecond, long maxBytesPerSecond) {
+		if (maxLinesPerSecond < 0) {
+			throw new IllegalArgumentException("maxLinesPerSecond: < 0");
+		}
+		if (maxBytesPerSecond < 0) {
+			throw new IllegalArgumentException("maxBytesPerSecond: < 0");
+		}
+		gobbler.maxLogLinesPerSecond = maxLinesPerSecond;
+		gobbler.maxLogBytesPerSecond = maxBytesPerSecond;
+		return this;
+	}
+
+	/**
+	 * Logs only every n-th line of the stream. Lines that are not sampled are skipped before being decoded, and the
+	 * number of skipped lines is logged at the end of the stream.
+	 * 
+	 * <p>
+	 * This must be called before {@link #gobble()}.
+	 * 
+	 * @param sampleRate
+	 *            log one out of this many lines, or {@code 1} to log every line (must be greater than 0)
+	 * @return this stream gobbler
+	 * @throws IllegalArgumentException
+	 *             if sampleRate is negative or zero
+	 */
+	public StreamGobbler logSampleRate(int sampleRate) {
+		if (sampleRate <= 0) {
+			throw new IllegalArgumentException("sampleRate: <= 0");
+		}
+		gobbler.logSampleRate = sampleRate;
+		return this;
+	}
+
+	/**
+	 * Collapses consecutive identical lines in the log. Lines are compared by their bytes, and instead of logging a
+	 * repeat of the previous line, a single "last line repeated N times" message is logged once a different line
+	 * arrives or the stream ends.
+	 * 
+	 * <p>
+	 * This must be called before {@link #gobble()}.
+	 * 
+	 * @param collapseRepeatedLines
+	 *            whether to collapse repeated lines
+	 * @return this stream gobbler
+	 */
+	public StreamGobbler collapseRepeatedLines(boolean collapseRepeatedLines) {
+		gobbler.collapseRepeatedLines = collapseRepeatedLines;
+		return this;
+	}
+
+	/**
+	 * Reports the tasks and the bytes and lines read by this gobbler to the given metrics.
+	 * 
+	 * <p>
+	 * This must be called before {@link #gobble()}.
+	 * 
+	 * @param metrics
+	 *            the metrics to report to (cannot be null)
+	 * @param stream
+	 *            the stream of the process that is gobbled (cannot be null)
+	 * @return this stream gobbler
+	 * @throws NullPointerException
+	 *             if metrics or stream is null
+	 */
+	public StreamGobbler metrics(ProcessMetrics metrics, ProcessMetrics.Stream stream) {
+		if (metrics == null) {
+			throw new NullPointerException("metrics: null");
+		}
+		if (stream == null) {
+			throw new NullPointerException("stream: null");
+		}
+		gobbler.metrics = metrics;
+		gobbler.stream = stream;
+		return this;
+	}
+
+	/**
+	 * Records when the first byte was read and when the end of the stream was reached in the trace of a process. This
+	 * must be called before {@link #gobble()}.
+	 */
+	StreamGobbler trace(ProcessTrace trace, ProcessTrace.Phase firstByte, ProcessTrace.Phase drained) {
+		gobbler.trace = trace;
+		gobbler.firstByte = firstByte;
+		gobbler.drained = drained;
+		return this;
+	}
+
+	/**
+	 * Processes lines on a separate task from the one reading the stream. The reader only copies bytes into a buffer of
+	 * the given capacity, and a second task submitted to the executor splits them into lines, calls the line listener,
+	 * and logs them. A slow listener or log appender then no longer stalls the reader and, in turn, the process writing
+	 * the stream.
+	 * 
+	 * <p>
+	 * When the buffer is full, the reader waits or drops bytes according to the overflow policy. Dropped bytes are
+	 * counted by {@link #getDroppedBytes()}. This has no effect if neither logging nor a line listener is enabled.
+	 * 
+	 * <p>
+	 * This must be called before {@link #gobble()}. The executor must be able to run both tasks at the same time.
+	 * 
+	 * @param capacity
+	 *            the size of the buffer between the reader and the line processing, in bytes (must be greater than 0)
+	 * @param policy
+	 *            what to do when the buffer is full (cannot be null)
+	 * @return this stream gobbler
+	 * @throws IllegalArgumentException
+	 *             if capacity is negative or zero
+	 * @throws NullPointerException
+	 *             if policy is null
+	 */
+	public StreamGobbler handoff(int capacity, OverflowPolicy policy) {
+		gobbler.handoff = new HandoffBuffer(capacity, policy);
+		return this;
+	}
+
+	/**
+	 * Returns the number of bytes that were dropped because the line processing could not keep up with the reader.
+	 * This is always {@code 0} unless a dropping {@link OverflowPolicy} was given to
+	 * {@link #handoff(int, OverflowPolicy)}.
+	 * 
+	 * @return the number of dropped bytes
+	 */
+	public long getDroppedBytes() {
+		HandoffBuffer handoff = gobbler.handoff;
+		return handoff == null ? 0 : handoff.getDroppedBytes();
+	}
+
+	/**
+	 * Waits for the gobbler to reach the end of the stream, or to stop after being closed.
+	 * 
+	 * @param timeoutMilliseconds
+	 *            the maximum time to wait, in milliseconds
+	 * @return {@code true} if the gobbler finished; {@code false} if the timeout elapsed first
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted while waiting
+	 */
+	public boolean awaitCompletion(long timeoutMilliseconds) throws InterruptedException {
+		return gobbler.finished.await(timeoutMilliseconds, TimeUnit.MILLISECONDS);
 	}
 
-	static class GobblerThread extends Thread {
+	static class Gobbler implements Runnable {
+		static final int BUFFER_SIZE = 8192;
+
 		private final InputStream inputStream;
 		private final boolean isLoggingEnabled;
+		private final CountDownLatch finished = new CountDownLatch(1);
+
+		private TailBuffer tail;
+		private CaptureBuffer capture;
+		private LineListener listener;
+		private int maxLogLinesPerSecond = 0;
+		private long maxLogBytesPerSecond = 0;
+		private int logSampleRate = 1;
+		private boolean collapseRepeatedLines = false;
+		private ProcessMetrics metrics;
+		private ProcessMetrics.Stream stream;
+		private ProcessTrace trace;
+		private ProcessTrace.Phase firstByte;
+		private ProcessTrace.Phase drained;
+		private volatile HandoffBuffer handoff;
+		private volatile boolean closed = false;
 
-		GobblerThread(InputStream inputStream, boolean enableLogging) {
+		Gobbler(InputStream inputStream, boolean enableLogging) {
 			this.inputStream = inputStream;
 			this.isLoggingEnabled = enableLogging;
-
-			setName("StreamGobbler");
-			setDaemon(true);
 		}
 
 		@Override
 		public void run() {
-			BufferedReader br = new BufferedReader(new InputStreamReader(inputStream));
-			String line = null;
+			if (metrics != null) {
+				metrics.gobblerStarted(stream);
+			}
 			try {
-				while (!Thread.currentThread().isInterrupted() && (line = br.readLine()) != null) {
-					if (isLoggingEnabled) {
-						logger.info(line);
-					}
+				if (hasLineProcessing() || tail != null || capture != null) {
+					gobble(handoff == null ? newLineDispatcher() : null);
+				} else {
+					discard();
 				}
 			} catch (IOException e) {
-				if (isLoggingEnabled) {
+				if (isLoggingEnabled && !closed) {
 					logger.error("Failed to gobble stream", e);
 				}
+			} finally {
+				if (trace != null && !closed) {
+					trace.record(drained);
+				}
+				if (metrics != null) {
+					metrics.gobblerFinished(stream);
+				}
+				if (handoff != null) {
+					// The consumer signals completion once it has processed the rest of the buffer
+					handoff.finish();
+				} else {
+					finished.countDown();
+				}
+			}
+		}
+
+		boolean hasLineProcessing() {
+			return isLoggingEnabled || listener != null;
+		}
+
+		private LineDispatcher newLineDispatcher() {
+			if (!hasLineProcessing()) {
+				return null;
+			}
+			LineLogger lineLogger = null;
+			if (isLoggingEnabled) {
+				lineLogger = new LineLogger(maxLogLinesPerSecond, maxLogBytesPerSecond, logSampleRate,
+						collapseRepeatedLines);
+			}
+			return new LineDispatcher(listener, lineLogger);
+		}
+
+		private void gobble(LineDispatcher dispatcher) throws IOException {
+			LineSplitter lines = dispatcher == null ? null : new LineSplitter(dispatcher);
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+			while (!closed && (read = inputStream.read(buffer)) != -1) {
+				readCompleted(buffer, read);
+				if (tail != null) {
+					tail.write(buffer, 0, read);
+				}
+				if (capture != null) {
+					capture.write(buffer, 0, read);
+				}
+				if (lines != null) {
+					lines.write(buffer, 0, read);
+				}
+				if (handoff != null) {
+					try {
+						handoff.write(buffer, 0, read);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+				}
+			}
+			if (lines != null) {
+				lines.flush();
+				dispatcher.endOfStream();
+			}
+		}
+
+		/**
+		 * Reads and drops the raw bytes of the stream. Nothing is decoded or split into lines, and the buffer is reused
+		 * for every read, so no garbage is created no matter how much the stream produces.
+		 */
+		private void discard() throws IOException {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+			while (!closed && (read = inputStream.read(buffer)) != -1) {
+				readCompleted(buffer, read);
+			}
+		}
+
+		private void readCompleted(byte[] buffer, int read) {
+			if (firstByte != null) {
+				trace.record(firstByte);
+				firstByte = null;
+			}
+			if (metrics != null) {
+				metrics.bytesGobbled(stream, read, countLines(buffer, read));
+			}
+		}
+
+		private static int countLines(byte[] buffer, int length) {
+			int lines = 0;
+			for (int i = 0; i < length; i++) {
+				if (buffer[i] == '\n') {
+					lines++;
+				}
+			}
+			return lines;
+		}
+
+		void close() {
+			closed = true;
+			if (handoff != null) {
+				handoff.abort();
+			}
+		}
+
+		/**
+		 * Processes the lines handed over by the reader.
+		 */
+		class Consumer implements Runnable {
+			@Override
+			public void run() {
+				if (metrics != null) {
+					metrics.gobblerStarted(stream);
+				}
+				try {
+					LineDispatcher dispatcher = newLineDispatcher();
+					LineSplitter lines = new LineSplitter(dispatcher);
+					byte[] buffer = new byte[BUFFER_SIZE];
+					int read;
+					while ((read = handoff.read(buffer)) != -1) {
+						lines.write(buffer, 0, read);
+					}
+					lines.flush();
+					dispatcher.endOfStream();
+
+					long dropped = handoff.getDroppedBytes();
+					if (dropped > 0 && isLoggingEnabled) {
+						logger.warn("Dropped {} bytes of output that could not be processed in time", dropped);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					if (metrics != null) {
+						metrics.gobblerFinished(stream);
+					}
+					finished.countDown();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Passes each line to the listener and then to the logger, if any. A failing listener is logged and does not stop
+	 * the stream from being gobbled.
+	 */
+	private static class LineDispatcher implements LineListener {
+		private final LineListener listener;
+		private final LineLogger lineLogger;
+
+		LineDispatcher(LineListener listener, LineLogger lineLogger) {
+			this.listener = listener;
+			this.lineLogger = lineLogger;
+		}
+
+		@Override
+		public void onLine(byte[] buffer, int offset, int length) {
+			if (listener != null) {
+				try {
+					listener.onLine(buffer, offset, length);
+				} catch (RuntimeException e) {
+					logger.error("Line listener failed", e);
+				}
+			}
+			if (lineLogger != null) {
+				lineLogger.onLine(buffer, offset, length);
+			}
+		}
+
+		void endOfStream() {
+			if (lineLogger != null) {
+				lineLogger.endOfStream();
 			}
 		}
 	}
 
 	@Override
 	public void close() throws IOException {
-		gobblerThread.interrupt();
+		gobbler.close();
 		inputStream.close();
 	}
 }
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Copies the normal output of one stage of a {@link ProcessPipeline} to the normal input of the next stage, on Java
+ * versions that cannot connect the processes directly.
+ * 
+ * <p>
+ * Both streams are closed when the copy ends, so the downstream process sees the end of its input when the upstream
+ * process exits, and the upstream process gets a broken pipe if the downstream process exits first, just like in a
+ * shell pipeline.
+ * 
+ * @author John Leacox
+ * 
+ */
+final class StreamPump implements Runnable {
+	private static final Logger logger = LoggerFactory.getLogger(StreamPump.class);
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final InputStream inputStream;
+	private final OutputStream outputStream;
+
+	StreamPump(InputStream inputStream, OutputStream outputStream) {
+		this.inputStream = inputStream;
+		this.outputStream = outputStream;
+	}
+
+	@Override
+	public void run() {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		try {
+			int read;
+			while ((read = inputStream.read(buffer)) != -1) {
+				outputStream.write(buffer, 0, read);
+				outputStream.flush();
+			}
+		} catch (IOException e) {
+			// One of the stages exited or the pipeline was closed
+			logger.debug("Stopped copying between pipeline stages", e);
+		} finally {
+			try {
+				outputStream.close();
+			} catch (IOException e) {
+			}
+			try {
+				inputStream.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+}
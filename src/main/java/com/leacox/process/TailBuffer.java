@@ -0,0 +1,77 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+/**
+ * A fixed size ring buffer that keeps the most recent bytes written to it.
+ * 
+ * <p>
+ * Writes never block and never grow the buffer. Once the buffer is full, each write overwrites the oldest bytes.
+ * 
+ * @author John Leacox
+ * 
+ */
+final class TailBuffer {
+	private final byte[] buffer;
+
+	private int position = 0;
+	private boolean wrapped = false;
+
+	TailBuffer(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity: <= 0");
+		}
+		this.buffer = new byte[capacity];
+	}
+
+	synchronized void write(byte[] bytes, int offset, int length) {
+		if (length >= buffer.length) {
+			System.arraycopy(bytes, offset + length - buffer.length, buffer, 0, buffer.length);
+			position = 0;
+			wrapped = true;
+			return;
+		}
+
+		int first = Math.min(length, buffer.length - position);
+		System.arraycopy(bytes, offset, buffer, position, first);
+		System.arraycopy(bytes, offset + first, buffer, 0, length - first);
+		if (position + length >= buffer.length) {
+			wrapped = true;
+		}
+		position = (position + length) % buffer.length;
+	}
+
+	/**
+	 * Returns a copy of the buffered bytes, oldest first.
+	 */
+	synchronized byte[] toByteArray() {
+		if (!wrapped) {
+			byte[] copy = new byte[position];
+			System.arraycopy(buffer, 0, copy, 0, position);
+			return copy;
+		}
+
+		byte[] copy = new byte[buffer.length];
+		System.arraycopy(buffer, position, copy, 0, buffer.length - position);
+		System.arraycopy(buffer, 0, copy, buffer.length - position, position);
+		return copy;
+	}
+
+	int capacity() {
+		return buffer.length;
+	}
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+/**
+ * What {@link FinalizedProcess#waitFor(long)} does to the subprocess when the timeout elapses before it exits. In all
+ * cases the waiting thread gets a {@link ProcessTimeoutException}.
+ * 
+ * @author John Leacox
+ * @see FinalizedProcessBuilder#timeoutPolicy(TimeoutPolicy)
+ * 
+ */
+public enum TimeoutPolicy {
+	/**
+	 * The subprocess is left running, so that the caller can decide what to do with it.
+	 */
+	LEAVE_RUNNING,
+
+	/**
+	 * The subprocess is destroyed with {@link FinalizedProcess#destroy()}.
+	 */
+	DESTROY,
+
+	/**
+	 * The subprocess and all of its descendants are destroyed with {@link FinalizedProcess#destroyTree()}, before the
+	 * exception is thrown.
+	 */
+	DESTROY_TREE
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A shared scheduler for the timeouts used by {@link FinalizedProcess}.
+ * 
+ * <p>
+ * All pending deadlines are handled by a single daemon thread. The thread is started lazily when the first task is
+ * scheduled and is allowed to die once no tasks have been pending for the keep alive period, so an idle scheduler does
+ * not hold on to any threads.
+ * 
+ * @author John Leacox
+ * 
+ */
+final class TimeoutScheduler {
+	private static final long DEFAULT_KEEP_ALIVE_MILLISECONDS = 1000;
+
+	private static final TimeoutScheduler INSTANCE = new TimeoutScheduler("process-warden-timeout",
+			DEFAULT_KEEP_ALIVE_MILLISECONDS);
+
+	private final ScheduledThreadPoolExecutor executor;
+	private final AtomicInteger threadsCreated = new AtomicInteger();
+
+	TimeoutScheduler(final String threadName, long keepAliveMilliseconds) {
+		this.executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				threadsCreated.incrementAndGet();
+				Thread thread = new Thread(runnable, threadName);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.executor.setKeepAliveTime(keepAliveMilliseconds, TimeUnit.MILLISECONDS);
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Returns the scheduler shared by all processes.
+	 */
+	static TimeoutScheduler getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Schedules the task to run once after the given delay.
+	 */
+	ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+		return executor.schedule(task, delay, unit);
+	}
+
+	/**
+	 * Cancels a task returned by {@link #schedule(Runnable, long, TimeUnit)} and removes it from the queue right away,
+	 * so that cancelled deadlines do not keep the scheduler thread alive until they would have expired.
+	 */
+	void cancel(ScheduledFuture<?> future) {
+		future.cancel(false);
+		if (future instanceof Runnable) {
+			executor.remove((Runnable) future);
+		}
+	}
+
+	int getPoolSize() {
+		return executor.getPoolSize();
+	}
+
+	int getThreadsCreated() {
+		return threadsCreated.get();
+	}
+}
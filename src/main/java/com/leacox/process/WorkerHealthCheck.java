@@ -0,0 +1,45 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import java.io.IOException;
+
+/**
+ * Checks whether a pooled worker process can still serve requests before it is handed out by
+ * {@link FinalizedProcessPool#borrow(long)}.
+ * 
+ * <p>
+ * The pool already replaces workers that have exited, so a health check is only needed to detect workers that are
+ * running but stuck or otherwise broken, for example by sending a cheap request with
+ * {@link PooledWorker#request(byte[])} and checking the response. The health check must not close the worker.
+ * 
+ * @author John Leacox
+ * @see FinalizedProcessPool#healthCheck(WorkerHealthCheck)
+ * 
+ */
+public interface WorkerHealthCheck {
+	/**
+	 * Checks the worker. A worker that is not healthy is closed and replaced by a new one.
+	 * 
+	 * @param worker
+	 *            the worker to check
+	 * @return {@code true} if the worker is healthy
+	 * @throws IOException
+	 *             if the check could not talk to the worker, which counts as unhealthy
+	 */
+	boolean isHealthy(PooledWorker worker) throws IOException;
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link AdaptiveProcessLimiter}.
+ * 
+ * @author John Leacox
+ * 
+ */
+public class AdaptiveProcessLimiterTest {
+	private static final long MILLISECOND = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private double load = 0;
+
+	private AdaptiveProcessLimiter newLimiter(int minLimit, int maxLimit, long decreaseIntervalNanoseconds) {
+		return new AdaptiveProcessLimiter(minLimit, maxLimit, decreaseIntervalNanoseconds) {
+			@Override
+			double systemLoadAverage() {
+				return load;
+			}
+		};
+	}
+
+	private static void runProcess(ProcessLimiter limiter, long spawnNanoseconds) throws InterruptedException {
+		ProcessLimiter.Permit permit = limiter.acquire(0);
+		permit.started(spawnNanoseconds);
+		permit.release();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testConstructorThrowsIllegalArgumentExceptionForMaxBelowMin() {
+		new AdaptiveProcessLimiter(4, 2);
+	}
+
+	@Test
+	public void testStartsAtMinLimit() {
+		AdaptiveProcessLimiter limiter = new AdaptiveProcessLimiter(2, 10);
+
+		assertEquals(2, limiter.getMaxProcesses());
+		assertEquals(-1, limiter.getSpawnAverageNanoseconds());
+		assertEquals(-1, limiter.getLifetimeAverageNanoseconds());
+	}
+
+	@Test
+	public void testIncreasesAdditivelyWhileSaturated() throws InterruptedException {
+		AdaptiveProcessLimiter limiter = newLimiter(1, 3, 0);
+
+		runProcess(limiter, MILLISECOND);
+		assertEquals(2, limiter.getMaxProcesses());
+
+		ProcessLimiter.Permit first = limiter.acquire(0);
+		first.started(MILLISECOND);
+		runProcess(limiter, MILLISECOND);
+		assertEquals(2, limiter.getMaxProcesses());
+		runProcess(limiter, MILLISECOND);
+		assertEquals(3, limiter.getMaxProcesses());
+
+		first.release();
+		runProcess(limiter, MILLISECOND);
+		runProcess(limiter, MILLISECOND);
+		runProcess(limiter, MILLISECOND);
+		assertEquals(3, limiter.getMaxProcesses());
+	}
+
+	@Test
+	public void testDoesNotIncreaseWhenLimitIsNotReached() throws InterruptedException {
+		AdaptiveProcessLimiter limiter = newLimiter(4, 10, 0);
+
+		for (int i = 0; i < 20; i++) {
+			runProcess(limiter, MILLISECOND);
+		}
+
+		assertEquals(4, limiter.getMaxProcesses());
+	}
+
+	@Test
+	public void testDecreasesWhenLoadIsHigh() throws InterruptedException {
+		AdaptiveProcessLimiter limiter = newLimiter(1, 10, 0);
+		limiter.setMaxProcesses(8);
+		load = Runtime.getRuntime().availableProcessors() * 2;
+
+		runProcess(limiter, MILLISECOND);
+		assertEquals(6, limiter.getMaxProcesses());
+		runProcess(limiter, MILLISECOND);
+		assertEquals(4, limiter.getMaxProcesses());
+	}
+
+	@Test
+	public void testDecreasesWhenSpawnLatencyGrows() throws InterruptedException {
+		AdaptiveProcessLimiter limiter = newLimiter(1, 10, 0);
+		limiter.setMaxProcesses(8);
+		runProcess(limiter, MILLISECOND);
+		assertEquals(8, limiter.getMaxProcesses());
+
+		ProcessLimiter.Permit permit = limiter.acquire(0);
+		permit.started(20 * MILLISECOND);
+
+		assertEquals(6, limiter.getMaxProcesses());
+		permit.release();
+	}
+
+	@Test
+	public void testRecoversAfterTemporaryFastPhase() throws InterruptedException {
+		AdaptiveProcessLimiter limiter = newLimiter(1, 10, 0);
+		limiter.setMaxProcesses(8);
+		for (int i = 0; i < 10; i++) {
+			runProcess(limiter, MILLISECOND);
+		}
+		for (int i = 0; i < 10; i++) {
+			runProcess(limiter, 20 * MILLISECOND);
+		}
+		assertEquals(1, limiter.getMaxProcesses());
+
+		for (int i = 0; i < 200; i++) {
+			runProcess(limiter, 20 * MILLISECOND);
+		}
+
+		assertTrue(limiter.getMaxProcesses() > 1);
+	}
+
+	@Test
+	public void testDecreasesWhenLifetimeGrows() throws InterruptedException {
+		AdaptiveProcessLimiter limiter = newLimiter(1, 10, 0);
+		limiter.setMaxProcesses(8);
+		limiter.processFinished(MILLISECOND);
+
+		limiter.processFinished(20 * MILLISECOND);
+
+		assertEquals(6, limiter.getMaxProcesses());
+	}
+
+	@Test
+	public void testDoesNotDecreaseBelowMinLimit() throws InterruptedException {
+		AdaptiveProcessLimiter limiter = newLimiter(3, 10, 0);
+		load = Runtime.getRuntime().availableProcessors() * 2;
+
+		runProcess(limiter, MILLISECOND);
+
+		assertEquals(3, limiter.getMaxProcesses());
+	}
+
+	@Test
+	public void testDecreasesAtMostOncePerInterval() throws InterruptedException {
+		AdaptiveProcessLimiter limiter = newLimiter(1, 10, TimeUnit.HOURS.toNanos(1));
+		limiter.setMaxProcesses(8);
+		load = Runtime.getRuntime().availableProcessors() * 2;
+
+		runProcess(limiter, MILLISECOND);
+		runProcess(limiter, MILLISECOND);
+
+		assertEquals(6, limiter.getMaxProcesses());
+	}
+}
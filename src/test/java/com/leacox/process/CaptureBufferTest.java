@@ -0,0 +1,63 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link CaptureBuffer}.
+ * 
+ * @author John Leacox
+ * 
+ */
+public class CaptureBufferTest {
+	@Test(expected = IllegalArgumentException.class)
+	public void testConstructorThrowsIllegalArgumentExceptionForNegativeLimit() {
+		new CaptureBuffer(-1);
+	}
+
+	@Test
+	public void testGrowsAsNeeded() {
+		CaptureBuffer capture = new CaptureBuffer(1024 * 1024);
+		byte[] chunk = new byte[1000];
+		for (int i = 0; i < 100; i++) {
+			chunk[0] = (byte) i;
+			capture.write(chunk, 0, chunk.length);
+		}
+
+		byte[] captured = capture.toByteArray();
+		assertEquals(100000, captured.length);
+		assertEquals(99, captured[99000]);
+		assertFalse(capture.isTruncated());
+	}
+
+	@Test
+	public void testTruncatesAtLimit() {
+		CaptureBuffer capture = new CaptureBuffer(5);
+		capture.write("abc".getBytes(), 0, 3);
+		capture.write("defg".getBytes(), 0, 4);
+		capture.write("h".getBytes(), 0, 1);
+
+		assertArrayEquals("abcde".getBytes(), capture.toByteArray());
+		assertTrue(capture.isTruncated());
+	}
+}
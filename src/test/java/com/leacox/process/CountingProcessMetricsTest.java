@@ -0,0 +1,115 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.leacox.process.ProcessMetrics.Stream;
+
+/**
+ * Unit tests for {@link CountingProcessMetrics}.
+ * 
+ * @author John Leacox
+ * 
+ */
+public class CountingProcessMetricsTest {
+	@Test
+	public void testProcessCounters() {
+		CountingProcessMetrics metrics = new CountingProcessMetrics();
+		metrics.processStarted(100);
+		metrics.processStarted(300);
+		metrics.processStarted(200);
+		metrics.processExited(0, 1000);
+		metrics.processExited(3, 5000);
+
+		assertEquals(3, metrics.getProcessesStarted());
+		assertEquals(600, metrics.getTotalSpawnNanoseconds());
+		assertEquals(300, metrics.getMaxSpawnNanoseconds());
+		assertEquals(2, metrics.getProcessesExited());
+		assertEquals(1, metrics.getLiveProcesses());
+		assertEquals(1, metrics.getFailedProcesses());
+		assertEquals(1, metrics.getExitValueCount(0));
+		assertEquals(1, metrics.getExitValueCount(3));
+		assertEquals(0, metrics.getExitValueCount(4));
+		assertEquals(6000, metrics.getTotalLifetimeNanoseconds());
+		assertEquals(5000, metrics.getMaxLifetimeNanoseconds());
+	}
+
+	@Test
+	public void testExitValuesOutOfRangeAreOnlyCountedAsFailures() {
+		CountingProcessMetrics metrics = new CountingProcessMetrics();
+		metrics.processExited(-1, 0);
+		metrics.processExited(1000, 0);
+
+		assertEquals(2, metrics.getFailedProcesses());
+		assertEquals(0, metrics.getExitValueCount(-1));
+		assertEquals(0, metrics.getExitValueCount(1000));
+	}
+
+	@Test
+	public void testGobblerCounters() {
+		CountingProcessMetrics metrics = new CountingProcessMetrics();
+		metrics.gobblerStarted(Stream.OUTPUT);
+		metrics.gobblerStarted(Stream.ERROR);
+		metrics.bytesGobbled(Stream.OUTPUT, 10, 2);
+		metrics.bytesGobbled(Stream.OUTPUT, 5, 0);
+		metrics.bytesGobbled(Stream.ERROR, 7, 1);
+		metrics.gobblerFinished(Stream.ERROR);
+
+		assertEquals(1, metrics.getLiveGobblers());
+		assertEquals(15, metrics.getBytesGobbled(Stream.OUTPUT));
+		assertEquals(2, metrics.getLinesGobbled(Stream.OUTPUT));
+		assertEquals(7, metrics.getBytesGobbled(Stream.ERROR));
+		assertEquals(1, metrics.getLinesGobbled(Stream.ERROR));
+	}
+
+	@Test
+	public void testWaitTimeouts() {
+		CountingProcessMetrics metrics = new CountingProcessMetrics();
+		metrics.waitTimedOut();
+
+		assertEquals(1, metrics.getWaitTimeouts());
+	}
+
+	@Test
+	public void testConcurrentUpdates() throws Exception {
+		final CountingProcessMetrics metrics = new CountingProcessMetrics();
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			final int spawn = i;
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 10000; j++) {
+						metrics.processStarted(spawn);
+						metrics.bytesGobbled(Stream.OUTPUT, 1, 1);
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(40000, metrics.getProcessesStarted());
+		assertEquals(3, metrics.getMaxSpawnNanoseconds());
+		assertEquals(40000, metrics.getBytesGobbled(Stream.OUTPUT));
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ExitFuture}.
+ * 
+ * @author John Leacox
+ * 
+ */
+public class ExitFutureTest {
+	private ExitFuture newFuture() {
+		return new ExitFuture(new FinalizedProcess(mock(Process.class), true, Collections.<StreamGobbler> emptySet()));
+	}
+
+	@Test
+	public void testComplete() throws Exception {
+		ExitFuture future = newFuture();
+		assertFalse(future.isDone());
+
+		assertTrue(future.complete(7));
+		assertFalse(future.complete(8));
+
+		assertTrue(future.isDone());
+		assertEquals(Integer.valueOf(7), future.get());
+	}
+
+	@Test
+	public void testGetTimesOut() throws Exception {
+		ExitFuture future = newFuture();
+		try {
+			future.get(10, TimeUnit.MILLISECONDS);
+			fail("Expected TimeoutException");
+		} catch (TimeoutException e) {
+		}
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		ExitFuture future = newFuture();
+		future.timeout(new TimeoutException());
+		assertFalse(future.complete(0));
+
+		try {
+			future.get();
+			fail("Expected ExecutionException");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+		}
+	}
+
+	@Test
+	public void testCancelHasNoEffect() {
+		ExitFuture future = newFuture();
+
+		assertFalse(future.cancel(true));
+		assertFalse(future.isCancelled());
+		assertFalse(future.isDone());
+	}
+
+	@Test
+	public void testListenersNotifiedOnComplete() {
+		ExitFuture future = newFuture();
+		RecordingListener listener = new RecordingListener();
+		future.addListener(listener);
+		assertEquals(0, listener.exits.get());
+
+		future.complete(0);
+		assertEquals(1, listener.exits.get());
+	}
+
+	@Test
+	public void testListenerAddedAfterCompletionNotifiedImmediately() {
+		ExitFuture future = newFuture();
+		future.timeout(new TimeoutException());
+
+		RecordingListener listener = new RecordingListener();
+		future.addListener(listener);
+		assertEquals(1, listener.timeouts.get());
+		assertEquals(0, listener.exits.get());
+	}
+
+	@Test
+	public void testThrowingListenerDoesNotSkipOtherListeners() {
+		ExitFuture future = newFuture();
+		future.addListener(new ThrowingListener());
+		RecordingListener listener = new RecordingListener();
+		future.addListener(listener);
+
+		assertTrue(future.complete(0));
+		assertEquals(1, listener.exits.get());
+	}
+
+	private static class ThrowingListener implements ExitListener {
+		@Override
+		public void onExit(FinalizedProcess process, int exitValue) {
+			throw new IllegalStateException("listener failure");
+		}
+
+		@Override
+		public void onTimeout(FinalizedProcess process) {
+			throw new IllegalStateException("listener failure");
+		}
+	}
+
+	private static class RecordingListener implements ExitListener {
+		private final AtomicInteger exits = new AtomicInteger();
+		private final AtomicInteger timeouts = new AtomicInteger();
+
+		@Override
+		public void onExit(FinalizedProcess process, int exitValue) {
+			exits.incrementAndGet();
+		}
+
+		@Override
+		public void onTimeout(FinalizedProcess process) {
+			timeouts.incrementAndGet();
+		}
+	}
+}
@@ -16,20 +16,32 @@
 
 package com.leacox.process;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -246,6 +258,628 @@ public class FinalizedProcessBuilderTest {
 		assertTrue(pb.gobbleStreamsWithLogging());
 	}
 
+	@Test
+	public void testGobblerExecutorDefaultIsShared() {
+		FinalizedProcessBuilder pb = new FinalizedProcessBuilder();
+
+		assertSame(StreamGobbler.sharedExecutor(), pb.gobblerExecutor());
+	}
+
+	@Test
+	public void testGobblerExecutor() {
+		FinalizedProcessBuilder pb = new FinalizedProcessBuilder();
+		Executor executor = Executors.newCachedThreadPool();
+		pb.gobblerExecutor(executor);
+
+		assertSame(executor, pb.gobblerExecutor());
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testGobblerExecutorThrowsNullPointerExceptionForNull() {
+		new FinalizedProcessBuilder().gobblerExecutor(null);
+	}
+
+	@Test
+	public void testStartWithCustomGobblerExecutor() throws Exception {
+		InputStream inputStream = mock(InputStream.class);
+
+		Process mockProcess = mock(Process.class);
+		when(mockProcess.getInputStream()).thenReturn(inputStream);
+
+		ProcessBuilder mockProcessBuilder = PowerMockito.mock(ProcessBuilder.class);
+		when(mockProcessBuilder.start()).thenReturn(mockProcess);
+
+		PowerMockito.whenNew(ProcessBuilder.class).withArguments("myCommand").thenReturn(mockProcessBuilder);
+
+		Executor executor = mock(Executor.class);
+		StreamGobbler inputGobbler = mock(StreamGobbler.class);
+		PowerMockito.whenNew(StreamGobbler.class).withArguments(inputStream, false, executor).thenReturn(inputGobbler);
+
+		FinalizedProcessBuilder pb = new FinalizedProcessBuilder("myCommand");
+		pb.gobbleInputStream(true);
+		pb.gobblerExecutor(executor);
+		FinalizedProcess process = pb.start();
+		process.close();
+
+		verify(inputGobbler).gobble();
+	}
+
+	@Test
+	public void testTailCapacityDefaultIsZero() {
+		FinalizedProcessBuilder pb = new FinalizedProcessBuilder();
+
+		assertEquals(0, pb.tailCapacity());
+	}
+
+	@Test
+	public void testTailCapacity() {
+		FinalizedProcessBuilder pb = new FinalizedProcessBuilder();
+		pb.tailCapacity(4096);
+
+		assertEquals(4096, pb.tailCapacity());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTailCapacityThrowsIllegalArgumentExceptionForNegative() {
+		new FinalizedProcessBuilder().tailCapacity(-1);
+	}
+
+	@Test
+	public void testLineListenersDefaultAreNull() {
+		FinalizedProcessBuilder pb = new FinalizedProcessBuilder();
+
+		assertNull(pb.inputLineListener());
+		assertNull(pb.errorLineListener());
+	}
+
+	@Test
+	public void testLineListeners() {
+		FinalizedProcessBuilder pb = new FinalizedProcessBuilder();
+		LineListener inputListener = mock(LineListener.class);
+		LineListener errorListener = mock(LineListener.class);
+		pb.inputLineListener(inputListener);
+		pb.errorLineListener(errorListener);
+
+		assertSame(inputListener, pb.inputLineListener());
+		assertSame(errorListener, pb.errorLineListener());
+	}
+
+	@Test
+	public void testStartWithLineListener() throws Exception {
+		final List<String> lines = Collections.synchronizedList(new ArrayList<String>());
+		FinalizedProcessBuilder pb = new FinalizedProcessBuilder("/bin/sh", "-c", "echo one; echo two");
+		pb.gobbleInputStream(true);
+		pb.inputLineListener(new LineListener() {
+			@Override
+			public void onLine(byte[] buffer, int offset, int length) {
+				lines.add(new String(buffer, offset, length));
+			}
+		});
+
+		FinalizedProcess process = pb.start();
+		try {
+			assertEquals(0, process.waitFor(5000));
+			assertTrue(process.awaitStreamsDrained(5000));
+		} finally {
+			process.close();
+		}
+
+		assertEquals(Arrays.asList("one", "two"), lines);
+	}
+
+	@Test
+	public void testHandoffCapacityDefaultIsZero() {
+		FinalizedProcessBuilder pb = new FinalizedProcessBuilder();
+
+		assertEquals(0, pb.handoffCapacity());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testHandoffCapacityThrowsIllegalArgumentExceptionForNegative() {
+		new FinalizedProcessBuilder().handoffCapacity(-1);
+	}
+
+	@Test
+	public void testOverflowPolicyDefaultIsBlock() {
+		FinalizedProcessBuilder pb = new FinalizedProcessBuilder();
+
+		assertEquals(OverflowPolicy.BLOCK, pb.overflowPolicy());
+	}
+
+	@Test
+	public void testOverflowPolicy() {
+		FinalizedProcessBuilder pb = new FinalizedProcessBuilder();
+		pb.overflowPolicy(OverflowPolicy.DROP_OLDEST);
+
+		assertEquals(OverflowPolicy.DROP_OLDEST, pb.overflowPolicy());
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testOverflowPolicyThrowsNullPointerExceptionForNull() {
+		new FinalizedProcessBuilder().overflowPolicy(null);
+	}
+
+	@Test
+	public void testLogRateLimitDefaultsAreUnlimited() {
+		FinalizedProcessBuilder pb = new FinalizedProcessBuilder();
+
+		assertEquals(0, pb.maxLogLinesPerSecond());
+		assertEquals(0, pb.maxLogBytesPerSecond());
+		assertEquals(1, pb.logSampleRate());
+	}
+
+	@Test
+	public void testLogRateLimit() {
+		FinalizedProcessBuilder pb = new FinalizedProcessBuilder();
+		pb.maxLogLinesPerSecond(100).maxLogBytesPerSecond(4096).logSampleRate(10);
+
+		assertEquals(100, pb.maxLogLinesPerSecond());
+		assertEquals(4096, pb.maxLogBytesPerSecond());
+		assertEquals(10, pb.logSampleRate());
+	}
+
+	@Test
+	public void testProcessLimiter() {
+		FinalizedProcessBuilder pb = new FinalizedProcessBuilder();
+		assertNull(pb.processLimiter());
+		assertEquals(-1, pb.admissionTimeoutMilliseconds());
+
+		ProcessLimiter limiter = new ProcessLimiter(4);
+		pb.processLimiter(limiter).admissionTimeoutMilliseconds(100);
+
+		assertSame(limiter, pb.processLimiter());
+		assertEquals(100, pb.admissionTimeoutMilliseconds());
+	}
+
+	@Test
+	public void testLaunchMechanism() {
+		FinalizedProcessBuilder pb = new FinalizedProcessBuilder();
+		assertNull(pb.launchMechanism());
+
+		pb.launchMechanism(LaunchMechanism.VFORK);
+
+		assertEquals(LaunchMechanism.VFORK, pb.launchMechanism());
+	}
+
+	@Test
+	public void testCollapseRepeatedLines() {
+		FinalizedProcessBuilder pb = new FinalizedProcessBuilder();
+		assertFalse(pb.collapseRepeatedLines());
+
+		pb.collapseRepeatedLines(true);
+
+		assertTrue(pb.collapseRepeatedLines());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMaxLogLinesPerSecondThrowsIllegalArgumentExceptionForNegative() {
+		new FinalizedProcessBuilder().maxLogLinesPerSecond(-1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMaxLogBytesPerSecondThrowsIllegalArgumentExceptionForNegative() {
+		new FinalizedProcessBuilder().maxLogBytesPerSecond(-1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testLogSampleRateThrowsIllegalArgumentExceptionForZero() {
+		new FinalizedProcessBuilder().logSampleRate(0);
+	}
+
+	@Test
+	public void testMaxCaptureSizeDefault() {
+		FinalizedProcessBuilder pb = new FinalizedProcessBuilder();
+
+		assertEquals(16 * 1024 * 1024, pb.maxCaptureSize());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMaxCaptureSizeThrowsIllegalArgumentExceptionForNegative() {
+		new FinalizedProcessBuilder().maxCaptureSize(-1);
+	}
+
+	@Test
+	public void testRun() throws Exception {
+		FinalizedProcessBuilder pb = new FinalizedProcessBuilder("/bin/sh", "-c", "echo out; echo err >&2; exit 3");
+		ProcessResult result = pb.run(5000);
+
+		assertEquals(3, result.getExitValue());
+		assertEquals("out\n", result.getOutputString());
+		assertEquals("err\n", result.getErrorString());
+		assertFalse(result.isOutputTruncated());
+		assertFalse(result.isErrorTruncated());
+		assertTrue(result.isComplete());
+	}
+
+	@Test
+	public void testRunMarksResultIncompleteWhenStreamsAreNotDrainedInTime() throws Exception {
+		FinalizedProcessBuilder pb = new FinalizedProcessBuilder("/bin/sh", "-c", "echo out; exit 0");
+		pb.inputLineListener(new LineListener() {
+			@Override
+			public void onLine(byte[] buffer, int offset, int length) {
+				try {
+					Thread.sleep(1000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		ProcessResult result = pb.run(300);
+
+		assertEquals(0, result.getExitValue());
+		assertFalse(result.isComplete());
+	}
+
+	@Test
+	public void testRunDrainsBothStreamsConcurrently() throws Exception {
+		// Each stream is far larger than a pipe buffer, so draining them one after the other would deadlock
+		FinalizedProcessBuilder pb = new FinalizedProcessBuilder("/bin/sh", "-c",
+				"head -c 1000000 /dev/zero >&2; head -c 1000000 /dev/zero");
+		ProcessResult result = pb.run(10000);
+
+		assertEquals(0, result.getExitValue());
+		assertEquals(1000000, result.getOutput().length);
+		assertEquals(1000000, result.getError().length);
+	}
+
+	private static File tempFile(String contents) throws IOException {
+		File file = File.createTempFile("process-warden", ".txt");
+		file.deleteOnExit();
+		FileOutputStream output = new FileOutputStream(file);
+		try {
+			output.write(contents.getBytes());
+		} finally {
+			output.close();
+		}
+		return file;
+	}
+
+	private static String readFile(File file) throws IOException {
+		FileInputStream input = new FileInputStream(file);
+		try {
+			ByteArrayOutputStream contents = new ByteArrayOutputStream();
+			byte[] buffer = new byte[1024];
+			int read;
+			while ((read = input.read(buffer)) != -1) {
+				contents.write(buffer, 0, read);
+			}
+			return contents.toString();
+		} finally {
+			input.close();
+		}
+	}
+
+	@Test
+	public void testRedirectDefaultsToPipe() {
+		FinalizedProcessBuilder pb = new FinalizedProcessBuilder();
+
+		assertEquals(Redirect.PIPE, pb.redirectInput());
+		assertEquals(Redirect.PIPE, pb.redirectOutput());
+		assertEquals(Redirect.PIPE, pb.redirectError());
+	}
+
+	@Test
+	public void testRedirectOutputToFile() throws Exception {
+		File file = tempFile("old contents");
+		FinalizedProcessBuilder pb = new FinalizedProcessBuilder("/bin/sh", "-c", "echo out; echo err >&2");
+		pb.redirectOutput(Redirect.to(file));
+		ProcessResult result = pb.run(5000);
+
+		assertEquals("out\n", readFile(file));
+		assertEquals("", result.getOutputString());
+		assertEquals("err\n", result.getErrorString());
+	}
+
+	@Test
+	public void testRedirectOutputAppendToFile() throws Exception {
+		File file = tempFile("first\n");
+		FinalizedProcessBuilder pb = new FinalizedProcessBuilder("/bin/sh", "-c", "echo second");
+		pb.redirectOutput(Redirect.appendTo(file));
+		pb.run(5000);
+
+		assertEquals("first\nsecond\n", readFile(file));
+	}
+
+	@Test
+	public void testRedirectInputFromFile() throws Exception {
+		File file = tempFile("hello\n");
+		FinalizedProcessBuilder pb = new FinalizedProcessBuilder("cat");
+		pb.redirectInput(Redirect.from(file));
+		ProcessResult result = pb.run(5000);
+
+		assertEquals("hello\n", result.getOutputString());
+	}
+
+	@Test
+	public void testRedirectErrorDiscard() throws Exception {
+		FinalizedProcessBuilder pb = new FinalizedProcessBuilder("/bin/sh", "-c", "echo out; echo err >&2");
+		pb.redirectError(Redirect.DISCARD);
+		ProcessResult result = pb.run(5000);
+
+		assertEquals("out\n", result.getOutputString());
+		assertEquals("", result.getErrorString());
+	}
+
+	@Test
+	public void testRedirectedStreamsAreNotGobbled() throws Exception {
+		FinalizedProcessBuilder pb = new FinalizedProcessBuilder("/bin/sh", "-c", "echo out; echo err >&2");
+		pb.gobbleStreams(true).redirectOutput(Redirect.DISCARD).redirectError(Redirect.DISCARD);
+		FinalizedProcess process = pb.start();
+		try {
+			assertNull(process.getInputGobbler());
+			assertNull(process.getErrorGobbler());
+			assertEquals(0, process.waitFor(5000));
+		} finally {
+			process.close();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRedirectInputThrowsIllegalArgumentExceptionForWrite() throws Exception {
+		new FinalizedProcessBuilder().redirectInput(Redirect.to(new File("out.txt")));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRedirectOutputThrowsIllegalArgumentExceptionForRead() throws Exception {
+		new FinalizedProcessBuilder().redirectOutput(Redirect.from(new File("in.txt")));
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testRedirectErrorThrowsNullPointerExceptionForNull() throws Exception {
+		new FinalizedProcessBuilder().redirectError(null);
+	}
+
+	@Test
+	public void testRunWithLargeInput() throws Exception {
+		byte[] bytes = new byte[4 * 1024 * 1024];
+		Arrays.fill(bytes, (byte) 'x');
+		ProcessInput input = ProcessInput.of(bytes);
+		FinalizedProcessBuilder pb = new FinalizedProcessBuilder("cat").input(input);
+		ProcessResult result = pb.run(10000);
+
+		assertEquals(0, result.getExitValue());
+		assertArrayEquals(bytes, result.getOutput());
+		assertTrue(input.awaitCompletion(5000));
+		assertNull(input.getFailure());
+		assertEquals(bytes.length, input.getBytesWritten());
+	}
+
+	@Test
+	public void testRunWithFileInput() throws Exception {
+		byte[] bytes = new byte[200 * 1024 + 7];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) i;
+		}
+		File file = File.createTempFile("process-input", ".bin");
+		file.deleteOnExit();
+		FileOutputStream outputStream = new FileOutputStream(file);
+		try {
+			outputStream.write(bytes);
+		} finally {
+			outputStream.close();
+		}
+
+		ProcessInput input = ProcessInput.ofFile(file);
+		ProcessResult result = new FinalizedProcessBuilder("cat").input(input).run(10000);
+
+		assertArrayEquals(bytes, result.getOutput());
+		assertTrue(input.awaitCompletion(5000));
+		assertEquals(bytes.length, input.getBytesWritten());
+	}
+
+	@Test
+	public void testQueuedInputIsWrittenAsItIsProduced() throws Exception {
+		final QueuedProcessInput input = ProcessInput.queue(1);
+		Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; i < 3; i++) {
+						input.put(ByteBuffer.wrap(("line" + i + "\n").getBytes("UTF-8")));
+					}
+					input.finish();
+				} catch (Exception e) {
+				}
+			}
+		});
+		producer.start();
+		ProcessResult result = new FinalizedProcessBuilder("cat").input(input).run(5000);
+		producer.join(5000);
+
+		assertEquals("line0\nline1\nline2\n", result.getOutputString());
+	}
+
+	@Test
+	public void testInputFailsWhenProcessStopsReading() throws Exception {
+		QueuedProcessInput input = ProcessInput.queue(1);
+		FinalizedProcessBuilder pb = new FinalizedProcessBuilder("/bin/sh", "-c", "exit 0").input(input);
+		FinalizedProcess process = pb.start();
+		try {
+			assertEquals(0, process.waitFor(5000));
+			try {
+				for (int i = 0; i < 1000; i++) {
+					input.put(ByteBuffer.allocate(64 * 1024));
+				}
+				fail("Expected IOException");
+			} catch (IOException e) {
+			}
+			assertTrue(input.awaitCompletion(5000));
+			assertNotNull(input.getFailure());
+		} finally {
+			process.close();
+		}
+	}
+
+	@Test
+	public void testStartThrowsIllegalStateExceptionForReusedInput() throws Exception {
+		CountingProcessMetrics metrics = new CountingProcessMetrics();
+		FinalizedProcessBuilder pb = new FinalizedProcessBuilder("cat").input(ProcessInput.of(new byte[0]))
+				.metrics(metrics);
+		pb.run(5000);
+		try {
+			pb.run(5000);
+			fail("Expected IllegalStateException");
+		} catch (IllegalStateException e) {
+		}
+
+		// The reused input is rejected before a second process is spawned
+		assertEquals(1, metrics.getProcessesStarted());
+	}
+
+	@Test
+	public void testInputIsNotClaimedWhenStartFails() throws Exception {
+		ProcessInput input = ProcessInput.of("x".getBytes("UTF-8"));
+		try {
+			new FinalizedProcessBuilder("/nonexistent/command").input(input).start();
+			fail("Expected IOException");
+		} catch (IOException e) {
+		}
+
+		assertEquals("x", new FinalizedProcessBuilder("cat").input(input).run(5000).getOutputString());
+	}
+
+	@Test
+	public void testUnfinishedQueuedInputIsAbortedOnClose() throws Exception {
+		QueuedProcessInput input = ProcessInput.queue(1);
+		FinalizedProcess process = new FinalizedProcessBuilder("sleep", "10").input(input).start();
+		input.put(ByteBuffer.wrap(new byte[] { 1 }));
+		process.close();
+
+		assertTrue(input.awaitCompletion(5000));
+		assertNotNull(input.getFailure());
+	}
+
+	@Test
+	public void testUnfinishedQueuedInputIsAbortedOnExit() throws Exception {
+		QueuedProcessInput input = ProcessInput.queue(1);
+		FinalizedProcess process = new FinalizedProcessBuilder("/bin/sh", "-c", "exit 0").input(input).keepProcess(true)
+				.start();
+		try {
+			assertTrue(input.awaitCompletion(5000));
+			assertNotNull(input.getFailure());
+		} finally {
+			process.close();
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testStartThrowsIllegalStateExceptionForInputWithRedirectedInput() throws Exception {
+		FinalizedProcessBuilder pb = new FinalizedProcessBuilder("cat").input(ProcessInput.of(new byte[0]));
+		pb.redirectInput(Redirect.INHERIT).start();
+	}
+
+	@Test
+	public void testRunReportsMetrics() throws Exception {
+		CountingProcessMetrics metrics = new CountingProcessMetrics();
+		FinalizedProcessBuilder pb = new FinalizedProcessBuilder("/bin/sh", "-c", "echo out; echo err >&2; exit 3");
+		ProcessResult result = pb.metrics(metrics).run(5000);
+
+		assertEquals(3, result.getExitValue());
+		assertEquals(1, metrics.getProcessesStarted());
+		assertTrue(metrics.getMaxSpawnNanoseconds() > 0);
+		assertEquals(4, metrics.getBytesGobbled(ProcessMetrics.Stream.OUTPUT));
+		assertEquals(1, metrics.getLinesGobbled(ProcessMetrics.Stream.OUTPUT));
+		assertEquals(4, metrics.getBytesGobbled(ProcessMetrics.Stream.ERROR));
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while (metrics.getProcessesExited() == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(1, metrics.getExitValueCount(3));
+		assertEquals(0, metrics.getLiveProcesses());
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testMetricsThrowsNullPointerExceptionForNull() {
+		new FinalizedProcessBuilder().metrics(null);
+	}
+
+	@Test
+	public void testStartRecordsTrace() throws Exception {
+		FinalizedProcessBuilder pb = new FinalizedProcessBuilder("/bin/sh", "-c", "echo out").gobbleStreams(true);
+		FinalizedProcess process = pb.start();
+		ProcessTrace trace = process.getTrace();
+		try {
+			assertEquals(0, process.waitFor(5000));
+			assertTrue(process.awaitStreamsDrained(5000));
+		} finally {
+			process.close();
+		}
+
+		assertEquals(0, trace.getNanosecondsSinceStart(ProcessTrace.Phase.START_REQUESTED));
+		long spawned = trace.getNanosecondsSinceStart(ProcessTrace.Phase.SPAWNED);
+		assertTrue(spawned > 0);
+		assertTrue(trace.getNanosecondsSinceStart(ProcessTrace.Phase.FIRST_OUTPUT_BYTE) >= spawned);
+		assertTrue(trace.isReached(ProcessTrace.Phase.OUTPUT_DRAINED));
+		assertTrue(trace.isReached(ProcessTrace.Phase.ERROR_DRAINED));
+		assertFalse(trace.isReached(ProcessTrace.Phase.FIRST_ERROR_BYTE));
+		assertTrue(trace.getNanosecondsSinceStart(ProcessTrace.Phase.EXIT_OBSERVED) >= spawned);
+		assertTrue(trace.getNanosecondsSinceStart(ProcessTrace.Phase.CLOSED) >= trace
+				.getNanosecondsSinceStart(ProcessTrace.Phase.EXIT_OBSERVED));
+	}
+
+	@Test
+	public void testCloseDestroysTree() throws Exception {
+		FinalizedProcessBuilder pb = new FinalizedProcessBuilder("/bin/sh", "-c", "sleep 30 & sleep 30 & wait");
+		pb.destroyTree(true).gracePeriodMilliseconds(1000);
+		FinalizedProcess process = pb.start();
+		// Give the shell time to start its children
+		Thread.sleep(200);
+		process.close();
+
+		KillReport report = process.getKillReport();
+		assertNotNull(report);
+		assertTrue(report.isComplete());
+		assertEquals(report.toString(), 3, report.getTerminated().size() + report.getKilled().size());
+	}
+
+	@Test
+	public void testCloseWithoutDestroyTreeHasNoKillReport() throws Exception {
+		FinalizedProcess process = new FinalizedProcessBuilder("true").start();
+		process.close();
+
+		assertNull(process.getKillReport());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testGracePeriodMillisecondsThrowsIllegalArgumentExceptionForNegative() {
+		new FinalizedProcessBuilder().gracePeriodMilliseconds(-1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDestroyTimeoutMillisecondsThrowsIllegalArgumentExceptionForZero() {
+		new FinalizedProcessBuilder().destroyTimeoutMilliseconds(0);
+	}
+
+	@Test
+	public void testRunAppliesTimeoutPolicy() throws Exception {
+		FinalizedProcessBuilder pb = new FinalizedProcessBuilder("sleep", "10").timeoutPolicy(TimeoutPolicy.DESTROY);
+		long start = System.currentTimeMillis();
+		try {
+			pb.run(100);
+			fail("Expected ProcessTimeoutException");
+		} catch (ProcessTimeoutException e) {
+			assertEquals(TimeoutPolicy.DESTROY, e.getPolicy());
+		}
+		assertTrue(System.currentTimeMillis() - start < 5000);
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testTimeoutPolicyThrowsNullPointerExceptionForNull() {
+		new FinalizedProcessBuilder().timeoutPolicy(null);
+	}
+
+	@Test
+	public void testRunTruncatesAtMaxCaptureSize() throws Exception {
+		FinalizedProcessBuilder pb = new FinalizedProcessBuilder("/bin/sh", "-c", "head -c 100000 /dev/zero");
+		pb.maxCaptureSize(1000);
+		ProcessResult result = pb.run(5000);
+
+		assertEquals(0, result.getExitValue());
+		assertEquals(1000, result.getOutput().length);
+		assertTrue(result.isOutputTruncated());
+	}
+
 	@Test
 	public void testStartWithNoGobbling() throws Exception {
 		Process mockProcess = mock(Process.class);
@@ -276,7 +910,8 @@ public class FinalizedProcessBuilderTest {
 		PowerMockito.whenNew(ProcessBuilder.class).withArguments("myCommand").thenReturn(mockProcessBuilder);
 
 		StreamGobbler inputGobbler = mock(StreamGobbler.class);
-		PowerMockito.whenNew(StreamGobbler.class).withArguments(inputStream, false).thenReturn(inputGobbler);
+		PowerMockito.whenNew(StreamGobbler.class).withArguments(inputStream, false, StreamGobbler.sharedExecutor())
+				.thenReturn(inputGobbler);
 
 		FinalizedProcessBuilder pb = new FinalizedProcessBuilder("myCommand");
 		pb.gobbleInputStream(true);
@@ -299,7 +934,8 @@ public class FinalizedProcessBuilderTest {
 		PowerMockito.whenNew(ProcessBuilder.class).withArguments("myCommand").thenReturn(mockProcessBuilder);
 
 		StreamGobbler inputGobbler = mock(StreamGobbler.class);
-		PowerMockito.whenNew(StreamGobbler.class).withArguments(inputStream, true).thenReturn(inputGobbler);
+		PowerMockito.whenNew(StreamGobbler.class).withArguments(inputStream, true, StreamGobbler.sharedExecutor())
+				.thenReturn(inputGobbler);
 
 		FinalizedProcessBuilder pb = new FinalizedProcessBuilder("myCommand");
 		pb.gobbleInputStreamWithLogging(true);
@@ -322,7 +958,8 @@ public class FinalizedProcessBuilderTest {
 		PowerMockito.whenNew(ProcessBuilder.class).withArguments("myCommand").thenReturn(mockProcessBuilder);
 
 		StreamGobbler errorGobbler = mock(StreamGobbler.class);
-		PowerMockito.whenNew(StreamGobbler.class).withArguments(errorStream, false).thenReturn(errorGobbler);
+		PowerMockito.whenNew(StreamGobbler.class).withArguments(errorStream, false, StreamGobbler.sharedExecutor())
+				.thenReturn(errorGobbler);
 
 		FinalizedProcessBuilder pb = new FinalizedProcessBuilder("myCommand");
 		pb.gobbleErrorStream(true);
@@ -345,7 +982,8 @@ public class FinalizedProcessBuilderTest {
 		PowerMockito.whenNew(ProcessBuilder.class).withArguments("myCommand").thenReturn(mockProcessBuilder);
 
 		StreamGobbler errorGobbler = mock(StreamGobbler.class);
-		PowerMockito.whenNew(StreamGobbler.class).withArguments(errorStream, true).thenReturn(errorGobbler);
+		PowerMockito.whenNew(StreamGobbler.class).withArguments(errorStream, true, StreamGobbler.sharedExecutor())
+				.thenReturn(errorGobbler);
 
 		FinalizedProcessBuilder pb = new FinalizedProcessBuilder("myCommand");
 		pb.gobbleErrorStreamWithLogging(true);
@@ -370,10 +1008,12 @@ public class FinalizedProcessBuilderTest {
 		PowerMockito.whenNew(ProcessBuilder.class).withArguments("myCommand").thenReturn(mockProcessBuilder);
 
 		StreamGobbler inputGobbler = mock(StreamGobbler.class);
-		PowerMockito.whenNew(StreamGobbler.class).withArguments(inputStream, false).thenReturn(inputGobbler);
+		PowerMockito.whenNew(StreamGobbler.class).withArguments(inputStream, false, StreamGobbler.sharedExecutor())
+				.thenReturn(inputGobbler);
 
 		StreamGobbler errorGobbler = mock(StreamGobbler.class);
-		PowerMockito.whenNew(StreamGobbler.class).withArguments(errorStream, false).thenReturn(errorGobbler);
+		PowerMockito.whenNew(StreamGobbler.class).withArguments(errorStream, false, StreamGobbler.sharedExecutor())
+				.thenReturn(errorGobbler);
 
 		FinalizedProcessBuilder pb = new FinalizedProcessBuilder("myCommand");
 		pb.gobbleStreams(true);
@@ -399,10 +1039,12 @@ public class FinalizedProcessBuilderTest {
 		PowerMockito.whenNew(ProcessBuilder.class).withArguments("myCommand").thenReturn(mockProcessBuilder);
 
 		StreamGobbler inputGobbler = mock(StreamGobbler.class);
-		PowerMockito.whenNew(StreamGobbler.class).withArguments(inputStream, true).thenReturn(inputGobbler);
+		PowerMockito.whenNew(StreamGobbler.class).withArguments(inputStream, true, StreamGobbler.sharedExecutor())
+				.thenReturn(inputGobbler);
 
 		StreamGobbler errorGobbler = mock(StreamGobbler.class);
-		PowerMockito.whenNew(StreamGobbler.class).withArguments(errorStream, true).thenReturn(errorGobbler);
+		PowerMockito.whenNew(StreamGobbler.class).withArguments(errorStream, true, StreamGobbler.sharedExecutor())
+				.thenReturn(errorGobbler);
 
 		FinalizedProcessBuilder pb = new FinalizedProcessBuilder("myCommand");
 		pb.gobbleStreamsWithLogging(true);
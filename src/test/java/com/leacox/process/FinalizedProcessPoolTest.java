@@ -0,0 +1,363 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link FinalizedProcessPool}.
+ * 
+ * @author John Leacox
+ * 
+ */
+public class FinalizedProcessPoolTest {
+	private FinalizedProcessPool pool;
+
+	@After
+	public void tearDown() {
+		if (pool != null) {
+			pool.close();
+		}
+	}
+
+	private static FinalizedProcessPool newCatPool(int size) {
+		return new FinalizedProcessPool(new FinalizedProcessBuilder("cat").gobbleErrorStream(true), size);
+	}
+
+	// Recycled workers are replaced in the background before their permit is released
+	private void awaitAvailable(int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (pool.getAvailableCount() < count && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(count, pool.getAvailableCount());
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testConstructorThrowsNullPointerExceptionForNullBuilder() {
+		new FinalizedProcessPool(null, 1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testConstructorThrowsIllegalArgumentExceptionForZeroSize() {
+		new FinalizedProcessPool(new FinalizedProcessBuilder("cat"), 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testConstructorThrowsIllegalArgumentExceptionForGobbledInputStream() {
+		new FinalizedProcessPool(new FinalizedProcessBuilder("cat").gobbleInputStream(true), 1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testConstructorThrowsIllegalArgumentExceptionForRedirectedErrorStream() {
+		new FinalizedProcessPool(new FinalizedProcessBuilder("cat").redirectErrorStream(true), 1);
+	}
+
+	@Test
+	public void testNewlineFraming() throws Exception {
+		pool = newCatPool(1);
+
+		PooledWorker worker = pool.borrow(1000);
+		try {
+			assertArrayEquals("hello".getBytes(), worker.request("hello".getBytes()));
+			assertArrayEquals(new byte[0], worker.request(new byte[0]));
+			assertArrayEquals("world".getBytes(), worker.request("world\r".getBytes()));
+		} finally {
+			worker.close();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNewlineFramingThrowsIllegalArgumentExceptionForNewlineInRequest() throws Exception {
+		pool = newCatPool(1);
+
+		PooledWorker worker = pool.borrow(1000);
+		try {
+			worker.request("a\nb".getBytes());
+		} finally {
+			worker.close();
+		}
+	}
+
+	@Test
+	public void testLengthPrefixedFraming() throws Exception {
+		pool = newCatPool(1).framing(Framing.LENGTH_PREFIXED);
+
+		byte[] request = new byte[] { 'a', '\n', 0, (byte) 0xff, '\r' };
+		PooledWorker worker = pool.borrow(1000);
+		try {
+			assertArrayEquals(request, worker.request(request));
+			assertArrayEquals(new byte[0], worker.request(new byte[0]));
+		} finally {
+			worker.close();
+		}
+	}
+
+	@Test
+	public void testResponseLongerThanMaxResponseSizeFailsRequestAndRecyclesWorker() throws Exception {
+		pool = newCatPool(1).maxResponseSize(4);
+
+		PooledWorker worker = pool.borrow(1000);
+		try {
+			worker.request("too long".getBytes());
+			fail("Expected IOException");
+		} catch (IOException e) {
+		} finally {
+			worker.close();
+		}
+
+		awaitAvailable(1);
+		assertEquals(1, pool.getWorkersRecycled());
+		assertEquals(2, pool.getWorkersStarted());
+	}
+
+	@Test
+	public void testRequestTimeoutKillsAndRecyclesWorker() throws Exception {
+		pool = new FinalizedProcessPool(new FinalizedProcessBuilder("sleep", "10"), 1).requestTimeoutMilliseconds(200);
+
+		PooledWorker worker = pool.borrow(1000);
+		long start = System.currentTimeMillis();
+		try {
+			worker.request("a".getBytes());
+			fail("Expected IOException");
+		} catch (IOException e) {
+			assertTrue(System.currentTimeMillis() - start < 5000);
+			assertTrue(worker.isBroken());
+		} finally {
+			worker.close();
+		}
+
+		awaitAvailable(1);
+		assertEquals(1, pool.getWorkersRecycled());
+		assertEquals(2, pool.getWorkersStarted());
+	}
+
+	@Test
+	public void testRequestTimeoutDoesNotAffectTimelyRequests() throws Exception {
+		pool = newCatPool(1).requestTimeoutMilliseconds(5000);
+
+		PooledWorker worker = pool.borrow(1000);
+		try {
+			assertArrayEquals("a".getBytes(), worker.request("a".getBytes()));
+			assertFalse(worker.isBroken());
+		} finally {
+			worker.close();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRequestTimeoutMillisecondsThrowsIllegalArgumentExceptionForNegative() {
+		newCatPool(1).requestTimeoutMilliseconds(-1);
+	}
+
+	@Test
+	public void testRecycledWorkerIsReplacedInBackground() throws Exception {
+		pool = newCatPool(1).maxUsesPerWorker(1);
+
+		PooledWorker worker = pool.borrow(1000);
+		worker.request("a".getBytes());
+		worker.close();
+		PooledWorker replacement = pool.borrow(5000);
+		replacement.close();
+
+		assertNotSame(worker, replacement);
+		assertEquals(1, pool.getWorkersRecycled());
+		assertEquals(2, pool.getWorkersStarted());
+	}
+
+	@Test
+	public void testStartPrewarmsWorkers() throws Exception {
+		pool = newCatPool(3);
+		pool.start();
+
+		assertEquals(3, pool.getWorkersStarted());
+		assertEquals(3, pool.getAvailableCount());
+
+		PooledWorker worker = pool.borrow(1000);
+		worker.close();
+
+		assertEquals(3, pool.getWorkersStarted());
+	}
+
+	@Test
+	public void testWorkerIsReused() throws Exception {
+		pool = newCatPool(1);
+
+		PooledWorker worker = pool.borrow(1000);
+		worker.request("a".getBytes());
+		worker.close();
+		PooledWorker again = pool.borrow(1000);
+		again.close();
+
+		assertSame(worker, again);
+		assertEquals(1, pool.getWorkersStarted());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testRequestThrowsIllegalStateExceptionAfterClose() throws Exception {
+		pool = newCatPool(1);
+
+		PooledWorker worker = pool.borrow(1000);
+		worker.close();
+		worker.request("a".getBytes());
+	}
+
+	@Test
+	public void testMaxUsesPerWorkerRecyclesWorkers() throws Exception {
+		pool = newCatPool(1).maxUsesPerWorker(2);
+
+		for (int i = 0; i < 5; i++) {
+			PooledWorker worker = pool.borrow(1000);
+			try {
+				assertArrayEquals(("request" + i).getBytes(), worker.request(("request" + i).getBytes()));
+			} finally {
+				worker.close();
+			}
+		}
+
+		assertEquals(2, pool.getWorkersRecycled());
+		assertEquals(3, pool.getWorkersStarted());
+	}
+
+	@Test
+	public void testDeadIdleWorkerIsReplacedOnBorrow() throws Exception {
+		pool = newCatPool(1);
+
+		PooledWorker worker = pool.borrow(1000);
+		worker.close();
+		worker.getProcess().destroy();
+		worker.getProcess().waitFor(5000);
+
+		PooledWorker replacement = pool.borrow(1000);
+		try {
+			assertNotSame(worker, replacement);
+			assertArrayEquals("a".getBytes(), replacement.request("a".getBytes()));
+		} finally {
+			replacement.close();
+		}
+		assertEquals(1, pool.getWorkersRecycled());
+	}
+
+	@Test
+	public void testUnhealthyWorkerIsReplacedOnBorrow() throws Exception {
+		final AtomicInteger checks = new AtomicInteger();
+		pool = newCatPool(1).healthCheck(new WorkerHealthCheck() {
+			@Override
+			public boolean isHealthy(PooledWorker worker) throws IOException {
+				return checks.incrementAndGet() > 1 && "ping".equals(new String(worker.request("ping".getBytes())));
+			}
+		});
+		pool.start();
+
+		PooledWorker worker = pool.borrow(1000);
+		worker.close();
+		PooledWorker again = pool.borrow(1000);
+		again.close();
+
+		assertEquals(2, checks.get());
+		assertEquals(1, pool.getWorkersRecycled());
+		assertSame(worker, again);
+	}
+
+	@Test(expected = TimeoutException.class)
+	public void testBorrowThrowsTimeoutExceptionWhenAllWorkersAreBorrowed() throws Exception {
+		pool = newCatPool(1);
+
+		PooledWorker worker = pool.borrow(1000);
+		try {
+			pool.borrow(50);
+		} finally {
+			worker.close();
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testBorrowThrowsIllegalStateExceptionWhenClosed() throws Exception {
+		pool = newCatPool(1);
+		pool.close();
+
+		pool.borrow(1000);
+	}
+
+	@Test
+	public void testWorkerReturnedAfterCloseIsDestroyed() throws Exception {
+		pool = newCatPool(1);
+		PooledWorker worker = pool.borrow(1000);
+		pool.close();
+
+		worker.close();
+
+		worker.getProcess().waitFor(5000);
+		assertEquals(1, pool.getAvailableCount());
+	}
+
+	@Test
+	public void testConcurrentBorrowers() throws Exception {
+		pool = newCatPool(3).maxUsesPerWorker(20);
+		pool.start();
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (int t = 0; t < 8; t++) {
+				final int thread = t;
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						for (int i = 0; i < 50; i++) {
+							byte[] request = ("thread" + thread + "-" + i).getBytes();
+							PooledWorker worker = pool.borrow(10000);
+							try {
+								assertArrayEquals(request, worker.request(request));
+							} finally {
+								worker.close();
+							}
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		awaitAvailable(3);
+		assertEquals(pool.getWorkersStarted() - 3, pool.getWorkersRecycled());
+	}
+}
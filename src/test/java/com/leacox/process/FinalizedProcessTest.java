@@ -18,6 +18,10 @@ package com.leacox.process;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -26,9 +30,17 @@ import static org.mockito.Mockito.when;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 import org.omg.CORBA.portable.OutputStream;
@@ -57,7 +69,7 @@ public class FinalizedProcessTest {
 	}
 
 	@Test
-	public void testExitValue() throws IOException, InterruptedException {
+	public void testExitValue() throws IOException, InterruptedException, ProcessTimeoutException {
 		FinalizedProcessBuilder fpb = new FinalizedProcessBuilder("java", "-version");
 
 		FinalizedProcess fp = fpb.start();
@@ -70,7 +82,22 @@ public class FinalizedProcessTest {
 	}
 
 	@Test
-	public void testExitValueAbnormalTermination() throws IOException, InterruptedException {
+	public void testSpawnNanoseconds() throws IOException, InterruptedException {
+		FinalizedProcess fp = new FinalizedProcessBuilder("/bin/sh", "-c", "exit 0").start();
+		try {
+			assertTrue(fp.getSpawnNanoseconds() > 0);
+		} finally {
+			fp.close();
+		}
+
+		@SuppressWarnings("resource")
+		FinalizedProcess notStarted = new FinalizedProcess(mock(Process.class), true,
+				Collections.<StreamGobbler> emptySet());
+		assertEquals(-1, notStarted.getSpawnNanoseconds());
+	}
+
+	@Test
+	public void testExitValueAbnormalTermination() throws IOException, InterruptedException, ProcessTimeoutException {
 		FinalizedProcessBuilder fpb = new FinalizedProcessBuilder("/bin/sh", "-c", "exit 42");
 
 		FinalizedProcess fp = fpb.start();
@@ -113,7 +140,8 @@ public class FinalizedProcessTest {
 	}
 
 	@Test
-	public void testWaitForThrowsIllegalargumentExceptionForNegativeTimeout() throws IOException, InterruptedException {
+	public void testWaitForThrowsIllegalargumentExceptionForNegativeTimeout() throws IOException, InterruptedException,
+			ProcessTimeoutException {
 		FinalizedProcessBuilder fpb = new FinalizedProcessBuilder("/bin/sh", "-c", "exit 0");
 
 		FinalizedProcess fp = fpb.start();
@@ -127,7 +155,8 @@ public class FinalizedProcessTest {
 	}
 
 	@Test
-	public void testWaitForThrowsIllegalargumentExceptionForZeroTimeout() throws IOException, InterruptedException {
+	public void testWaitForThrowsIllegalargumentExceptionForZeroTimeout() throws IOException, InterruptedException,
+			ProcessTimeoutException {
 		FinalizedProcessBuilder fpb = new FinalizedProcessBuilder("/bin/sh", "-c", "exit 0");
 
 		FinalizedProcess fp = fpb.start();
@@ -141,7 +170,7 @@ public class FinalizedProcessTest {
 	}
 
 	@Test
-	public void waitFor() throws IOException, InterruptedException {
+	public void waitFor() throws IOException, InterruptedException, ProcessTimeoutException {
 		FinalizedProcessBuilder fpb = new FinalizedProcessBuilder("/bin/sh", "-c", "exit 0");
 
 		FinalizedProcess fp = fpb.start();
@@ -153,28 +182,373 @@ public class FinalizedProcessTest {
 	}
 
 	@Test
-	public void waitForTimeout() throws IOException {
+	public void waitForTimeout() throws IOException, InterruptedException {
 		FinalizedProcessBuilder fpb = new FinalizedProcessBuilder("/bin/sh");
 
 		FinalizedProcess fp = fpb.start();
 		try {
 			assertEquals(0, fp.waitFor(100));
+			fail("Expected ProcessTimeoutException");
+		} catch (ProcessTimeoutException e) {
+		} finally {
+			fp.close();
+		}
+	}
+
+	@Test
+	public void waitForTimeoutIsReportedToMetrics() throws IOException, InterruptedException {
+		CountingProcessMetrics metrics = new CountingProcessMetrics();
+		FinalizedProcessBuilder fpb = new FinalizedProcessBuilder("/bin/sh").metrics(metrics);
+
+		FinalizedProcess fp = fpb.start();
+		try {
+			fp.waitFor(100);
+			fail("Expected ProcessTimeoutException");
+		} catch (ProcessTimeoutException e) {
+		} finally {
+			fp.close();
+		}
+
+		assertEquals(1, metrics.getWaitTimeouts());
+	}
+
+	@Test
+	public void waitForTimeoutThrowsProcessTimeoutException() throws Exception {
+		FinalizedProcess fp = new FinalizedProcessBuilder("sleep", "10").start();
+		try {
+			fp.waitFor(100);
+			fail("Expected ProcessTimeoutException");
+		} catch (ProcessTimeoutException e) {
+			assertEquals(100, e.getTimeoutMilliseconds());
+			assertEquals(TimeoutPolicy.LEAVE_RUNNING, e.getPolicy());
+			assertNull(e.getKillReport());
+			assertNull(fp.tryExitValue());
+		} finally {
+			fp.close();
+		}
+	}
+
+	@Test
+	public void waitForTimeoutWithDestroyPolicyDestroysProcess() throws Exception {
+		FinalizedProcess fp = new FinalizedProcessBuilder("sleep", "10").timeoutPolicy(TimeoutPolicy.DESTROY).start();
+		try {
+			fp.waitFor(100);
+			fail("Expected ProcessTimeoutException");
+		} catch (ProcessTimeoutException e) {
+			assertEquals(TimeoutPolicy.DESTROY, e.getPolicy());
+			assertTrue(fp.onExit().get(5, TimeUnit.SECONDS).intValue() != 0);
+		} finally {
+			fp.close();
+		}
+	}
+
+	@Test
+	public void waitForTimeoutWithDestroyTreePolicyDestroysTree() throws Exception {
+		FinalizedProcess fp = new FinalizedProcessBuilder("/bin/sh", "-c", "sleep 10 & wait").start();
+		try {
+			fp.waitFor(200, TimeoutPolicy.DESTROY_TREE);
+			fail("Expected ProcessTimeoutException");
+		} catch (ProcessTimeoutException e) {
+			assertEquals(TimeoutPolicy.DESTROY_TREE, e.getPolicy());
+			assertNotNull(e.getKillReport());
+			assertTrue(e.getKillReport().isComplete());
+			assertSame(e.getKillReport(), fp.getKillReport());
+			assertNotNull(fp.tryExitValue());
+		} finally {
+			fp.close();
+		}
+	}
+
+	@Test
+	public void waitForInterruptedByOtherThreadIsNotTimeout() throws Exception {
+		FinalizedProcess fp = new FinalizedProcessBuilder("sleep", "10").start();
+		try {
+			Thread.currentThread().interrupt();
+			fp.waitFor(5000);
 			fail("Expected InterruptedException");
+		} catch (ProcessTimeoutException e) {
+			fail("Expected a plain InterruptedException");
 		} catch (InterruptedException e) {
 		} finally {
 			fp.close();
 		}
 	}
 
+	@Test(expected = NullPointerException.class)
+	public void waitForThrowsNullPointerExceptionForNullPolicy() throws Exception {
+		FinalizedProcess fp = new FinalizedProcessBuilder("true").start();
+		try {
+			fp.waitFor(1000, null);
+		} finally {
+			fp.close();
+		}
+	}
+
 	@Test
-	public void waitForTimeoutClearsInterruptedFlag() throws IOException {
+	public void waitForTimeoutDoesNotInterruptCallingThread() throws IOException {
 		FinalizedProcessBuilder fpb = new FinalizedProcessBuilder("/bin/sh");
 
 		FinalizedProcess fp = fpb.start();
 		try {
-			assertEquals(0, fp.waitFor(100));
+			fp.waitFor(100);
+			fail("Expected ProcessTimeoutException");
+		} catch (ProcessTimeoutException e) {
+		} catch (InterruptedException e) {
+			fail("Expected ProcessTimeoutException");
+		} finally {
+			fp.close();
+		}
+
+		assertFalse(Thread.interrupted());
+	}
+
+	@Test
+	public void waitForKeepsInterruptsAfterExit() throws Exception {
+		FinalizedProcess fp = new FinalizedProcessBuilder("/bin/sh", "-c", "exit 0").start();
+		try {
+			assertEquals(0, fp.waitFor(50));
+			Thread.sleep(150);
+			Thread.currentThread().interrupt();
+		} finally {
+			fp.close();
+		}
+
+		assertTrue(Thread.interrupted());
+	}
+
+	@Test
+	public void waitForInterruptedWhileWaitingIsNotTimeout() throws Exception {
+		FinalizedProcess fp = new FinalizedProcessBuilder("sleep", "10").start();
+		final Thread waiter = Thread.currentThread();
+		Thread interrupter = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+				}
+				waiter.interrupt();
+			}
+		});
+		interrupter.start();
+		try {
+			fp.waitFor(5000);
 			fail("Expected InterruptedException");
+		} catch (ProcessTimeoutException e) {
+			fail("Expected a plain InterruptedException");
 		} catch (InterruptedException e) {
+		} finally {
+			interrupter.join();
+			Thread.interrupted();
+			fp.close();
+		}
+	}
+
+	@Test
+	public void waitForConcurrentWaitsDoNotUseTimeoutThreads() throws Exception {
+		final int waiters = 20;
+		final CountDownLatch done = new CountDownLatch(waiters);
+		final AtomicInteger exited = new AtomicInteger();
+		int threadsBefore = TimeoutScheduler.getInstance().getThreadsCreated();
+
+		for (int i = 0; i < waiters; i++) {
+			final FinalizedProcess fp = new FinalizedProcessBuilder("/bin/sh", "-c", "sleep 0.1").start();
+
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						if (fp.waitFor(5000) == 0) {
+							exited.incrementAndGet();
+						}
+					} catch (InterruptedException e) {
+					} catch (ProcessTimeoutException e) {
+					} finally {
+						try {
+							fp.close();
+						} catch (IOException e) {
+						}
+						done.countDown();
+					}
+				}
+			}).start();
+		}
+
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertEquals(waiters, exited.get());
+		assertEquals(threadsBefore, TimeoutScheduler.getInstance().getThreadsCreated());
+	}
+
+	@Test
+	public void testAwaitExit() throws Exception {
+		FinalizedProcess fp = new FinalizedProcessBuilder("/bin/sh", "-c", "exit 7").start();
+		try {
+			assertTrue(fp.awaitExit(2000));
+			assertEquals(7, fp.exitValue());
+		} finally {
+			fp.close();
+		}
+	}
+
+	@Test
+	public void testAwaitExitTimeoutLeavesProcessRunning() throws Exception {
+		FinalizedProcess fp = new FinalizedProcessBuilder("sleep", "10").timeoutPolicy(TimeoutPolicy.DESTROY).start();
+		try {
+			assertFalse(fp.awaitExit(100));
+			assertNull(fp.tryExitValue());
+		} finally {
+			fp.close();
+		}
+
+		assertFalse(Thread.interrupted());
+	}
+
+	@Test
+	public void testIsAliveAndTryExitValue() throws Exception {
+		FinalizedProcess fp = new FinalizedProcessBuilder("sleep", "10").start();
+		try {
+			assertTrue(fp.isAlive());
+			assertNull(fp.tryExitValue());
+
+			fp.destroy();
+			assertTrue(fp.awaitExit(5000));
+			assertFalse(fp.isAlive());
+			assertEquals(Integer.valueOf(fp.exitValue()), fp.tryExitValue());
+			assertTrue(fp.getTrace().isReached(ProcessTrace.Phase.EXIT_OBSERVED));
+		} finally {
+			fp.close();
+		}
+	}
+
+	@Test
+	public void testWaitAnyReturnsFirstExited() throws Exception {
+		List<FinalizedProcess> processes = new ArrayList<FinalizedProcess>();
+		try {
+			for (int i = 0; i < 20; i++) {
+				processes.add(new FinalizedProcessBuilder("sleep", "10").start());
+			}
+			FinalizedProcess quick = new FinalizedProcessBuilder("/bin/sh", "-c", "sleep 0.2; exit 3").start();
+			processes.add(quick);
+
+			assertSame(quick, FinalizedProcess.waitAny(processes, 5000));
+			assertEquals(Integer.valueOf(3), quick.tryExitValue());
+		} finally {
+			for (FinalizedProcess process : processes) {
+				process.close();
+			}
+		}
+	}
+
+	@Test
+	public void testWaitAnyReturnsAlreadyExited() throws Exception {
+		FinalizedProcess running = new FinalizedProcessBuilder("sleep", "10").start();
+		FinalizedProcess exited = new FinalizedProcessBuilder("/bin/sh", "-c", "exit 0").start();
+		try {
+			assertTrue(exited.awaitExit(5000));
+			assertSame(exited, FinalizedProcess.waitAny(Arrays.asList(running, exited), 5000));
+		} finally {
+			running.close();
+			exited.close();
+		}
+	}
+
+	@Test
+	public void testWaitAnyThrowsTimeoutException() throws Exception {
+		FinalizedProcess fp = new FinalizedProcessBuilder("sleep", "10").start();
+		try {
+			FinalizedProcess.waitAny(Collections.singleton(fp), 100);
+			fail("Expected TimeoutException");
+		} catch (TimeoutException e) {
+			assertTrue(fp.isAlive());
+		} finally {
+			fp.close();
+		}
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testWaitAnyThrowsNullPointerExceptionForNullProcesses() throws Exception {
+		FinalizedProcess.waitAny(null, 1000);
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testWaitAnyThrowsNullPointerExceptionForNullProcess() throws Exception {
+		FinalizedProcess.waitAny(Collections.<FinalizedProcess> singleton(null), 1000);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWaitAnyThrowsIllegalArgumentExceptionForEmptyProcesses() throws Exception {
+		FinalizedProcess.waitAny(Collections.<FinalizedProcess> emptySet(), 1000);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWaitAnyThrowsIllegalArgumentExceptionForZeroTimeout() throws Exception {
+		@SuppressWarnings("resource")
+		FinalizedProcess fp = new FinalizedProcess(mock(Process.class), true, Collections.<StreamGobbler> emptySet());
+		FinalizedProcess.waitAny(Collections.singleton(fp), 0);
+	}
+
+	@Test
+	public void testOnExit() throws Exception {
+		FinalizedProcessBuilder fpb = new FinalizedProcessBuilder("/bin/sh", "-c", "exit 42");
+
+		FinalizedProcess fp = fpb.start();
+		try {
+			assertEquals(Integer.valueOf(42), fp.onExit().get(2000, TimeUnit.MILLISECONDS));
+			assertTrue(fp.onExit().isDone());
+		} finally {
+			fp.close();
+		}
+	}
+
+	@Test
+	public void testOnExitReturnsSameFuture() throws IOException {
+		FinalizedProcessBuilder fpb = new FinalizedProcessBuilder("/bin/sh", "-c", "exit 0");
+
+		FinalizedProcess fp = fpb.start();
+		try {
+			assertTrue(fp.onExit() == fp.onExit());
+		} finally {
+			fp.close();
+		}
+	}
+
+	@Test
+	public void testOnExitNotifiesListener() throws Exception {
+		FinalizedProcessBuilder fpb = new FinalizedProcessBuilder("/bin/sh", "-c", "exit 3");
+
+		FinalizedProcess fp = fpb.start();
+		try {
+			final CountDownLatch latch = new CountDownLatch(1);
+			final AtomicInteger exitValue = new AtomicInteger(-1);
+			fp.onExit().addListener(new ExitListener() {
+				@Override
+				public void onExit(FinalizedProcess process, int value) {
+					exitValue.set(value);
+					latch.countDown();
+				}
+
+				@Override
+				public void onTimeout(FinalizedProcess process) {
+				}
+			});
+
+			assertTrue(latch.await(2, TimeUnit.SECONDS));
+			assertEquals(3, exitValue.get());
+		} finally {
+			fp.close();
+		}
+	}
+
+	@Test
+	public void testOnExitWithTimeout() throws Exception {
+		FinalizedProcessBuilder fpb = new FinalizedProcessBuilder("/bin/sh");
+
+		FinalizedProcess fp = fpb.start();
+		try {
+			fp.onExit(100).get(2000, TimeUnit.MILLISECONDS);
+			fail("Expected ExecutionException");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
 		} finally {
 			fp.close();
 		}
@@ -182,6 +556,50 @@ public class FinalizedProcessTest {
 		assertFalse(Thread.interrupted());
 	}
 
+	@Test(expected = IllegalArgumentException.class)
+	public void testOnExitThrowsIllegalArgumentExceptionForZeroTimeout() {
+		Process mockProcess = mock(Process.class);
+		@SuppressWarnings("resource")
+		FinalizedProcess fp = new FinalizedProcess(mockProcess, true, Collections.<StreamGobbler> emptySet());
+		fp.onExit(0);
+	}
+
+	@Test
+	public void testStreamTails() throws IOException, InterruptedException, ProcessTimeoutException {
+		FinalizedProcessBuilder fpb = new FinalizedProcessBuilder("/bin/sh", "-c",
+				"i=0; while [ $i -lt 1000 ]; do echo line$i; echo err$i >&2; i=$((i+1)); done");
+		fpb.gobbleStreams(true);
+		fpb.tailCapacity(16);
+
+		FinalizedProcess fp = fpb.start();
+		try {
+			assertEquals(0, fp.waitFor(5000));
+			assertTrue(fp.awaitStreamsDrained(5000));
+
+			assertEquals("line998\nline999\n", new String(fp.getInputStreamTail(), "UTF-8"));
+			assertEquals("7\nerr998\nerr999\n", new String(fp.getErrorStreamTail(), "UTF-8"));
+		} finally {
+			fp.close();
+		}
+	}
+
+	@Test
+	public void testStreamTailsEmptyWithoutCapture() throws IOException, InterruptedException, ProcessTimeoutException {
+		FinalizedProcessBuilder fpb = new FinalizedProcessBuilder("/bin/sh", "-c", "echo hello");
+		fpb.gobbleStreams(true);
+
+		FinalizedProcess fp = fpb.start();
+		try {
+			assertEquals(0, fp.waitFor(5000));
+			assertTrue(fp.awaitStreamsDrained(5000));
+
+			assertEquals(0, fp.getInputStreamTail().length);
+			assertEquals(0, fp.getErrorStreamTail().length);
+		} finally {
+			fp.close();
+		}
+	}
+
 	@Test
 	public void testCloseDoesNotTryToCloseNullStreams() throws IOException {
 		Process mockProcess = mock(Process.class);
@@ -215,6 +633,27 @@ public class FinalizedProcessTest {
 		verify(mockProcess).destroy();
 	}
 
+	@Test
+	public void testCloseSkipsRedirectedStreams() throws IOException {
+		InputStream mockInputStream = mock(InputStream.class);
+		InputStream mockErrorStream = mock(InputStream.class);
+		OutputStream mockOutputStream = mock(OutputStream.class);
+
+		Process mockProcess = mock(Process.class);
+		when(mockProcess.getInputStream()).thenReturn(mockInputStream);
+		when(mockProcess.getErrorStream()).thenReturn(mockErrorStream);
+		when(mockProcess.getOutputStream()).thenReturn(mockOutputStream);
+
+		FinalizedProcess fp = new FinalizedProcess(mockProcess, false, Collections.<StreamGobbler> emptySet());
+		fp.setPipedStreams(false, true, false);
+		fp.close();
+
+		verify(mockInputStream).close();
+		verify(mockErrorStream, never()).close();
+		verify(mockOutputStream, never()).close();
+		verify(mockProcess).destroy();
+	}
+
 	@Test
 	public void testCloseDoesNotDestroyProcessWithKeepProcessFlag() throws IOException {
 		InputStream mockInputStream = mock(InputStream.class);
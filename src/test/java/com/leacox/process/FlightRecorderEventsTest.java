@@ -0,0 +1,82 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link FlightRecorderEvents}.
+ * 
+ * @author John Leacox
+ * 
+ */
+public class FlightRecorderEventsTest {
+	@Test
+	public void testLifecycleWithoutRecording() {
+		// Must be harmless whether or not Flight Recorder is available
+		FlightRecorderEvents.lifecycle("cat", ProcessTrace.Phase.SPAWNED, 1000);
+	}
+
+	@Test
+	public void testLifecycleIsRecorded() throws Exception {
+		Assume.assumeTrue(FlightRecorderEvents.isAvailable());
+
+		// Flight Recorder is only available on Java 11 and later, so it is used reflectively like in the main code
+		Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+		Object recording = recordingClass.newInstance();
+		Object settings = recordingClass.getMethod("enable", String.class).invoke(recording,
+				FlightRecorderEvents.EVENT_NAME);
+		settings.getClass().getMethod("withoutThreshold").invoke(settings);
+		recordingClass.getMethod("start").invoke(recording);
+		File file = File.createTempFile("process-warden", ".jfr");
+		file.deleteOnExit();
+		try {
+			FlightRecorderEvents.lifecycle("cat", ProcessTrace.Phase.SPAWNED, 1000);
+			recordingClass.getMethod("stop").invoke(recording);
+			recordingClass.getMethod("dump", Class.forName("java.nio.file.Path")).invoke(recording,
+					File.class.getMethod("toPath").invoke(file));
+		} finally {
+			recordingClass.getMethod("close").invoke(recording);
+		}
+
+		List<String> phases = new ArrayList<String>();
+		Class<?> recordingFileClass = Class.forName("jdk.jfr.consumer.RecordingFile");
+		Class<?> recordedEventClass = Class.forName("jdk.jfr.consumer.RecordedEvent");
+		Method getEventType = recordedEventClass.getMethod("getEventType");
+		Method getValue = recordedEventClass.getMethod("getValue", String.class);
+		List<?> events = (List<?>) recordingFileClass.getMethod("readAllEvents", Class.forName("java.nio.file.Path"))
+				.invoke(null, File.class.getMethod("toPath").invoke(file));
+		for (Object event : events) {
+			Object eventType = getEventType.invoke(event);
+			String name = (String) eventType.getClass().getMethod("getName").invoke(eventType);
+			if (FlightRecorderEvents.EVENT_NAME.equals(name)) {
+				assertEquals("cat", getValue.invoke(event, "program"));
+				phases.add((String) getValue.invoke(event, "phase"));
+			}
+		}
+		assertTrue(phases.contains("SPAWNED"));
+	}
+}
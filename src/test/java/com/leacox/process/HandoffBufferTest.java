@@ -0,0 +1,124 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link HandoffBuffer}.
+ * 
+ * @author John Leacox
+ * 
+ */
+public class HandoffBufferTest {
+	@Test
+	public void testWriteThenRead() throws InterruptedException {
+		HandoffBuffer handoff = new HandoffBuffer(8, OverflowPolicy.BLOCK);
+		handoff.write("abcdef".getBytes(), 0, 6);
+		handoff.finish();
+
+		assertEquals("abcdef", readAll(handoff));
+	}
+
+	@Test
+	public void testReadWrapsAround() throws InterruptedException {
+		HandoffBuffer handoff = new HandoffBuffer(4, OverflowPolicy.BLOCK);
+		byte[] bytes = new byte[3];
+		handoff.write("abc".getBytes(), 0, 3);
+		assertEquals(3, handoff.read(bytes));
+		handoff.write("def".getBytes(), 0, 3);
+		handoff.finish();
+
+		assertEquals("def", readAll(handoff));
+	}
+
+	@Test
+	public void testDropNewest() throws InterruptedException {
+		HandoffBuffer handoff = new HandoffBuffer(4, OverflowPolicy.DROP_NEWEST);
+		handoff.write("abc".getBytes(), 0, 3);
+		handoff.write("def".getBytes(), 0, 3);
+		handoff.finish();
+
+		assertEquals("abcd", readAll(handoff));
+		assertEquals(2, handoff.getDroppedBytes());
+	}
+
+	@Test
+	public void testDropOldest() throws InterruptedException {
+		HandoffBuffer handoff = new HandoffBuffer(4, OverflowPolicy.DROP_OLDEST);
+		handoff.write("abc".getBytes(), 0, 3);
+		handoff.write("defghij".getBytes(), 0, 7);
+		handoff.finish();
+
+		assertEquals("ghij", readAll(handoff));
+		assertEquals(6, handoff.getDroppedBytes());
+	}
+
+	@Test
+	public void testBlockWaitsForReader() throws InterruptedException {
+		final HandoffBuffer handoff = new HandoffBuffer(4, OverflowPolicy.BLOCK);
+		final CountDownLatch written = new CountDownLatch(1);
+		Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					handoff.write("abcdefgh".getBytes(), 0, 8);
+					written.countDown();
+				} catch (InterruptedException e) {
+				}
+			}
+		});
+		writer.start();
+
+		assertFalse(written.await(100, TimeUnit.MILLISECONDS));
+
+		byte[] bytes = new byte[8];
+		assertEquals(4, handoff.read(bytes));
+		assertTrue(written.await(2, TimeUnit.SECONDS));
+		handoff.finish();
+
+		assertEquals("efgh", readAll(handoff));
+		assertEquals(0, handoff.getDroppedBytes());
+	}
+
+	@Test
+	public void testAbortReleasesBlockedWriterAndReader() throws InterruptedException {
+		HandoffBuffer handoff = new HandoffBuffer(4, OverflowPolicy.BLOCK);
+		handoff.write("abcd".getBytes(), 0, 4);
+		handoff.abort();
+
+		handoff.write("efgh".getBytes(), 0, 4);
+		assertEquals(-1, handoff.read(new byte[4]));
+	}
+
+	private static String readAll(HandoffBuffer handoff) throws InterruptedException {
+		StringBuilder result = new StringBuilder();
+		byte[] bytes = new byte[3];
+		int read;
+		while ((read = handoff.read(bytes)) != -1) {
+			result.append(new String(bytes, 0, read));
+		}
+		return result.toString();
+	}
+}
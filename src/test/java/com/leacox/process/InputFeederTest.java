@@ -0,0 +1,93 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link InputFeeder}.
+ * 
+ * @author John Leacox
+ * 
+ */
+public class InputFeederTest {
+	@Test
+	public void testWritesInputAndClosesStream() throws Exception {
+		ByteBuffer direct = ByteBuffer.allocateDirect(100000);
+		for (int i = 0; i < direct.capacity(); i++) {
+			direct.put((byte) i);
+		}
+		direct.flip();
+		ProcessInput input = ProcessInput.of(ByteBuffer.wrap(new byte[] { 1, 2 }), direct);
+		OutputStream outputStream = mock(OutputStream.class);
+
+		new InputFeeder(input, outputStream).run();
+
+		verify(outputStream).close();
+		assertTrue(input.awaitCompletion(0));
+		assertNull(input.getFailure());
+		assertEquals(100002, input.getBytesWritten());
+		// The buffers themselves are left untouched
+		assertEquals(100000, direct.remaining());
+	}
+
+	@Test
+	public void testWritesBufferContents() throws Exception {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		ByteBuffer buffer = ByteBuffer.wrap(new byte[] { 0, 1, 2, 3 }, 1, 2).slice();
+
+		new InputFeeder(ProcessInput.of(buffer.asReadOnlyBuffer(), buffer), outputStream).run();
+
+		assertArrayEquals(new byte[] { 1, 2, 1, 2 }, outputStream.toByteArray());
+	}
+
+	@Test
+	public void testWriteFailureAbortsInput() throws Exception {
+		QueuedProcessInput input = ProcessInput.queue(1);
+		input.put(ByteBuffer.allocate(1));
+		OutputStream outputStream = mock(OutputStream.class);
+		IOException failure = new IOException("Broken pipe");
+		doThrow(failure).when(outputStream).write(any(byte[].class), anyInt(), anyInt());
+
+		new InputFeeder(input, outputStream).run();
+
+		verify(outputStream).close();
+		assertEquals(failure, input.getFailure());
+		try {
+			input.put(ByteBuffer.allocate(1));
+			fail("Expected IOException");
+		} catch (IOException e) {
+			assertEquals(failure, e);
+		}
+	}
+}
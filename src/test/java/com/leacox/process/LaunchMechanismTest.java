@@ -0,0 +1,77 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.Properties;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link LaunchMechanism}.
+ * 
+ * @author John Leacox
+ * 
+ */
+public class LaunchMechanismTest {
+	@Test
+	public void testSelectSetsPropertyBeforeFirstProcess() {
+		Properties properties = new Properties();
+
+		LaunchMechanism.select(LaunchMechanism.VFORK, properties, false);
+
+		assertEquals("VFORK", properties.getProperty(LaunchMechanism.PROPERTY));
+	}
+
+	@Test
+	public void testSelectAcceptsSameMechanism() {
+		Properties properties = new Properties();
+		properties.setProperty(LaunchMechanism.PROPERTY, "posix_spawn");
+
+		LaunchMechanism.select(LaunchMechanism.POSIX_SPAWN, properties, true);
+
+		assertEquals("posix_spawn", properties.getProperty(LaunchMechanism.PROPERTY));
+	}
+
+	@Test
+	public void testSelectThrowsIllegalStateExceptionForDifferentMechanism() {
+		Properties properties = new Properties();
+		properties.setProperty(LaunchMechanism.PROPERTY, "FORK");
+
+		try {
+			LaunchMechanism.select(LaunchMechanism.VFORK, properties, false);
+			fail("Expected IllegalStateException");
+		} catch (IllegalStateException e) {
+		}
+		assertEquals("FORK", properties.getProperty(LaunchMechanism.PROPERTY));
+	}
+
+	@Test
+	public void testSelectThrowsIllegalStateExceptionAfterFirstProcess() {
+		Properties properties = new Properties();
+
+		try {
+			LaunchMechanism.select(LaunchMechanism.FORK, properties, true);
+			fail("Expected IllegalStateException");
+		} catch (IllegalStateException e) {
+		}
+		assertNull(properties.getProperty(LaunchMechanism.PROPERTY));
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+
+/**
+ * Unit tests for {@link LineLogger}.
+ * 
+ * @author John Leacox
+ * 
+ */
+public class LineLoggerTest {
+	private Logger logger;
+
+	@Before
+	public void setUp() {
+		logger = mock(Logger.class);
+		when(logger.isInfoEnabled()).thenReturn(true);
+	}
+
+	private static void log(LineLogger lineLogger, String line) {
+		byte[] bytes = line.getBytes();
+		lineLogger.onLine(bytes, 0, bytes.length);
+	}
+
+	@Test
+	public void testLogsEveryLineByDefault() {
+		LineLogger lineLogger = new LineLogger(logger, 0, 0, 1, false);
+		log(lineLogger, "one");
+		log(lineLogger, "two");
+		lineLogger.endOfStream();
+
+		verify(logger).info("one");
+		verify(logger).info("two");
+		verify(logger, never()).info(anyString(), any(), any());
+	}
+
+	@Test
+	public void testSkipsLinesWhenInfoIsDisabled() {
+		when(logger.isInfoEnabled()).thenReturn(false);
+		LineLogger lineLogger = new LineLogger(logger, 0, 0, 1, false);
+		log(lineLogger, "one");
+		lineLogger.endOfStream();
+
+		verify(logger, never()).info(anyString());
+	}
+
+	@Test
+	public void testSampleRate() {
+		LineLogger lineLogger = new LineLogger(logger, 0, 0, 3, false);
+		for (int i = 0; i < 7; i++) {
+			log(lineLogger, "line" + i);
+		}
+		lineLogger.endOfStream();
+
+		verify(logger).info("line0");
+		verify(logger).info("line3");
+		verify(logger).info("line6");
+		verify(logger, never()).info("line1");
+		verify(logger).info("{} lines suppressed ({} bytes)", 4L, 20L);
+	}
+
+	@Test
+	public void testMaxLinesPerSecond() {
+		LineLogger lineLogger = new LineLogger(logger, 2, 0, 1, false);
+		for (int i = 0; i < 5; i++) {
+			log(lineLogger, "line" + i);
+		}
+		lineLogger.endOfStream();
+
+		verify(logger).info("line0");
+		verify(logger).info("line1");
+		verify(logger, never()).info("line2");
+		verify(logger).info("{} lines suppressed ({} bytes)", 3L, 15L);
+	}
+
+	@Test
+	public void testMaxBytesPerSecond() {
+		LineLogger lineLogger = new LineLogger(logger, 0, 8, 1, false);
+		log(lineLogger, "abcd");
+		log(lineLogger, "efgh");
+		log(lineLogger, "ijkl");
+		lineLogger.endOfStream();
+
+		verify(logger).info("abcd");
+		verify(logger).info("efgh");
+		verify(logger, never()).info("ijkl");
+		verify(logger).info("{} lines suppressed ({} bytes)", 1L, 4L);
+	}
+
+	@Test
+	public void testRateLimitResetsAfterOneSecond() throws InterruptedException {
+		LineLogger lineLogger = new LineLogger(logger, 1, 0, 1, false);
+		log(lineLogger, "one");
+		log(lineLogger, "two");
+		Thread.sleep(1100);
+		log(lineLogger, "three");
+		lineLogger.endOfStream();
+
+		verify(logger).info("one");
+		verify(logger, never()).info("two");
+		verify(logger).info("three");
+		verify(logger, times(1)).info("{} lines suppressed ({} bytes)", 1L, 3L);
+	}
+
+	@Test
+	public void testCollapseRepeatedLines() {
+		LineLogger lineLogger = new LineLogger(logger, 0, 0, 1, true);
+		log(lineLogger, "status");
+		log(lineLogger, "status");
+		log(lineLogger, "status");
+		log(lineLogger, "done");
+		log(lineLogger, "done");
+		lineLogger.endOfStream();
+
+		verify(logger, times(1)).info("status");
+		verify(logger, times(1)).info("done");
+		verify(logger).info("last line repeated {} times", 2L);
+		verify(logger).info("last line repeated {} times", 1L);
+	}
+
+	@Test
+	public void testCollapseRepeatedLinesComparesBytes() {
+		LineLogger lineLogger = new LineLogger(logger, 0, 0, 1, true);
+		log(lineLogger, "abc");
+		log(lineLogger, "abd");
+		log(lineLogger, "ab");
+		lineLogger.endOfStream();
+
+		verify(logger).info("abc");
+		verify(logger).info("abd");
+		verify(logger).info("ab");
+		verify(logger, never()).info(anyString(), any());
+	}
+
+	@Test
+	public void testRepeatedLinesDoNotCountTowardsRateLimit() {
+		LineLogger lineLogger = new LineLogger(logger, 2, 0, 1, true);
+		for (int i = 0; i < 100; i++) {
+			log(lineLogger, "same");
+		}
+		log(lineLogger, "other");
+		log(lineLogger, "third");
+		lineLogger.endOfStream();
+
+		verify(logger).info("same");
+		verify(logger).info("last line repeated {} times", 99L);
+		verify(logger).info("other");
+		verify(logger).info("{} lines suppressed ({} bytes)", 1L, 5L);
+	}
+
+	@Test
+	public void testRepeatsOfSuppressedLineAreCountedAsSuppressed() {
+		LineLogger lineLogger = new LineLogger(logger, 1, 0, 1, true);
+		log(lineLogger, "first");
+		log(lineLogger, "spam");
+		log(lineLogger, "spam");
+		lineLogger.endOfStream();
+
+		verify(logger).info("first");
+		verify(logger, never()).info("spam");
+		verify(logger, never()).info(anyString(), any());
+		verify(logger).info("{} lines suppressed ({} bytes)", 2L, 8L);
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link LineSplitter}.
+ * 
+ * @author John Leacox
+ * 
+ */
+public class LineSplitterTest {
+	private final List<String> lines = new ArrayList<String>();
+	private final LineSplitter splitter = new LineSplitter(new LineListener() {
+		@Override
+		public void onLine(byte[] buffer, int offset, int length) {
+			lines.add(new String(buffer, offset, length));
+		}
+	});
+
+	private void write(String value) {
+		byte[] bytes = value.getBytes();
+		splitter.write(bytes, 0, bytes.length);
+	}
+
+	@Test
+	public void testLineTerminators() {
+		write("a\nb\rc\r\nd\n\ne");
+		splitter.flush();
+
+		assertEquals(Arrays.asList("a", "b", "c", "d", "", "e"), lines);
+	}
+
+	@Test
+	public void testLineSpanningWrites() {
+		write("hel");
+		write("lo\r");
+		write("\nwor");
+		write("ld\n");
+		splitter.flush();
+
+		assertEquals(Arrays.asList("hello", "world"), lines);
+	}
+
+	@Test
+	public void testFlushWithoutPartialLine() {
+		write("a\n");
+		splitter.flush();
+
+		assertEquals(Arrays.asList("a"), lines);
+	}
+
+	@Test
+	public void testLongLineIsSplit() {
+		char[] chars = new char[LineSplitter.MAX_LINE_LENGTH + 10];
+		Arrays.fill(chars, 'x');
+		write(new String(chars));
+		write("\n");
+
+		assertEquals(2, lines.size());
+		assertEquals(LineSplitter.MAX_LINE_LENGTH, lines.get(0).length());
+		assertEquals(10, lines.get(1).length());
+	}
+}
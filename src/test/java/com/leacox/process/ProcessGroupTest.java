@@ -0,0 +1,150 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ProcessGroup}.
+ * 
+ * @author John Leacox
+ * 
+ */
+public class ProcessGroupTest {
+	private static FinalizedProcessBuilder sh(String script) {
+		return new FinalizedProcessBuilder("/bin/sh", "-c", script);
+	}
+
+	@Test
+	public void testWaitAll() throws Exception {
+		ProcessGroup group = ProcessGroup.start(sh("sleep 0.2; exit 1"), sh("exit 0"), sh("exit 7"));
+		try {
+			assertEquals(3, group.size());
+			assertArrayEquals(new int[] { 1, 0, 7 }, group.waitAll(5000));
+		} finally {
+			group.close();
+		}
+	}
+
+	@Test
+	public void testWaitAny() throws Exception {
+		ProcessGroup group = ProcessGroup.start(sh("sleep 10"), sh("exit 3"), sh("sleep 10"));
+		try {
+			FinalizedProcess first = group.waitAny(5000);
+
+			assertSame(group.getProcesses().get(1), first);
+			assertEquals(3, first.exitValue());
+		} finally {
+			group.close();
+		}
+	}
+
+	@Test(expected = TimeoutException.class)
+	public void testWaitAnyThrowsTimeoutException() throws Exception {
+		ProcessGroup group = ProcessGroup.start(sh("sleep 10"), sh("sleep 10"));
+		try {
+			group.waitAny(200);
+		} finally {
+			group.close();
+		}
+	}
+
+	@Test(expected = TimeoutException.class)
+	public void testWaitAllThrowsTimeoutException() throws Exception {
+		ProcessGroup group = ProcessGroup.start(sh("exit 0"), sh("sleep 10"));
+		try {
+			group.waitAll(200);
+		} finally {
+			group.close();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWaitAllThrowsIllegalArgumentExceptionForZeroTimeout() throws Exception {
+		ProcessGroup group = ProcessGroup.start(sh("exit 0"));
+		try {
+			group.waitAll(0);
+		} finally {
+			group.close();
+		}
+	}
+
+	@Test
+	public void testWaitAllOrFailReturnsExitValuesOnSuccess() throws Exception {
+		ProcessGroup group = ProcessGroup.start(sh("exit 0"), sh("sleep 0.1"));
+		try {
+			assertArrayEquals(new int[] { 0, 0 }, group.waitAllOrFail(5000));
+		} finally {
+			group.close();
+		}
+	}
+
+	@Test
+	public void testWaitAllOrFailCancelsRemainingMembers() throws Exception {
+		ProcessGroup group = ProcessGroup.start(sh("sleep 30"), sh("sleep 0.1; exit 4"), sh("sleep 30"));
+		try {
+			long start = System.nanoTime();
+			try {
+				group.waitAllOrFail(20000);
+				fail("Expected ProcessFailedException");
+			} catch (ProcessFailedException e) {
+				assertSame(group.getProcesses().get(1), e.getProcess());
+				assertEquals(4, e.getExitValue());
+			}
+
+			int[] exitValues = group.waitAll(5000);
+			assertTrue(System.nanoTime() - start < 15000000000L);
+			assertEquals(4, exitValues[1]);
+			assertTrue(exitValues[0] != 0);
+			assertTrue(exitValues[2] != 0);
+		} finally {
+			group.close();
+		}
+	}
+
+	@Test
+	public void testStartClosesStartedProcessesWhenStartFails() {
+		ProcessLimiter limiter = new ProcessLimiter(10);
+		try {
+			ProcessGroup.start(sh("sleep 30").processLimiter(limiter), new FinalizedProcessBuilder("/does/not/exist"));
+			fail("Expected IOException");
+		} catch (IOException e) {
+		}
+
+		assertEquals(1, limiter.getAdmittedCount());
+		assertEquals(0, limiter.getActiveCount());
+	}
+
+	@Test
+	public void testCloseDestroysMembers() throws Exception {
+		ProcessGroup group = ProcessGroup.start(sh("sleep 30"), sh("sleep 30"));
+		group.close();
+
+		int[] exitValues = group.waitAll(5000);
+		assertTrue(exitValues[0] != 0);
+		assertTrue(exitValues[1] != 0);
+	}
+}
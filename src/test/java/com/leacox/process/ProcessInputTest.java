@@ -0,0 +1,208 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ProcessInput} and {@link QueuedProcessInput}.
+ * 
+ * @author John Leacox
+ * 
+ */
+public class ProcessInputTest {
+	@Test
+	public void testOfBytes() throws Exception {
+		ProcessInput input = ProcessInput.of(new byte[] { 1, 2, 3 });
+
+		assertArrayEquals(new byte[] { 1, 2, 3 }, toBytes(input.next()));
+		assertNull(input.next());
+	}
+
+	@Test
+	public void testOfBuffers() throws Exception {
+		ProcessInput input = ProcessInput.of(ByteBuffer.wrap(new byte[] { 1 }), ByteBuffer.wrap(new byte[] { 2, 3 }));
+
+		assertArrayEquals(new byte[] { 1 }, toBytes(input.next()));
+		assertArrayEquals(new byte[] { 2, 3 }, toBytes(input.next()));
+		assertNull(input.next());
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testOfBytesThrowsNullPointerExceptionForNull() {
+		ProcessInput.of((byte[]) null);
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testOfBuffersThrowsNullPointerExceptionForNullElement() {
+		ProcessInput.of(ByteBuffer.allocate(1), null);
+	}
+
+	@Test
+	public void testOfFile() throws Exception {
+		File file = File.createTempFile("process-input", ".txt");
+		file.deleteOnExit();
+		FileOutputStream outputStream = new FileOutputStream(file);
+		try {
+			outputStream.write(new byte[] { 4, 5, 6 });
+		} finally {
+			outputStream.close();
+		}
+
+		ProcessInput input = ProcessInput.ofFile(file);
+		try {
+			assertArrayEquals(new byte[] { 4, 5, 6 }, toBytes(input.next()));
+			assertNull(input.next());
+		} finally {
+			input.release();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testOfFileThrowsIOExceptionForMissingFile() throws Exception {
+		ProcessInput.ofFile(new File("does-not-exist.txt")).next();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testClaimThrowsIllegalStateExceptionWhenAlreadyClaimed() {
+		ProcessInput input = ProcessInput.of(new byte[0]);
+		input.claim();
+		input.claim();
+	}
+
+	@Test
+	public void testAwaitCompletion() throws Exception {
+		ProcessInput input = ProcessInput.of(new byte[0]);
+		assertFalse(input.awaitCompletion(0));
+
+		IOException failure = new IOException("broken pipe");
+		input.finish(failure);
+
+		assertTrue(input.awaitCompletion(0));
+		assertEquals(failure, input.getFailure());
+	}
+
+	@Test
+	public void testQueueReturnsBuffersUntilFinished() throws Exception {
+		QueuedProcessInput input = ProcessInput.queue(2);
+		input.put(ByteBuffer.wrap(new byte[] { 1 }));
+		input.finish();
+
+		assertArrayEquals(new byte[] { 1 }, toBytes(input.next()));
+		assertNull(input.next());
+	}
+
+	@Test
+	public void testQueueOfferTimesOutWhenFull() throws Exception {
+		QueuedProcessInput input = ProcessInput.queue(1);
+
+		assertTrue(input.offer(ByteBuffer.allocate(1), 0));
+		assertFalse(input.offer(ByteBuffer.allocate(1), 10));
+	}
+
+	@Test
+	public void testQueueCancelWakesUpWaitingFeeder() throws Exception {
+		final QueuedProcessInput input = ProcessInput.queue(1);
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+				}
+				input.cancel();
+			}
+		}).start();
+
+		try {
+			input.next();
+			fail("Expected IOException");
+		} catch (IOException e) {
+		}
+	}
+
+	@Test
+	public void testCancelDoesNotAbortFinishedInput() throws Exception {
+		QueuedProcessInput input = ProcessInput.queue(1);
+		input.finish(null);
+		input.cancel();
+
+		input.put(ByteBuffer.allocate(1));
+	}
+
+	@Test
+	public void testQueuePutThrowsIOExceptionAfterAbort() throws Exception {
+		QueuedProcessInput input = ProcessInput.queue(1);
+		input.abort();
+
+		try {
+			input.put(ByteBuffer.allocate(1));
+			fail("Expected IOException");
+		} catch (IOException e) {
+		}
+	}
+
+	@Test
+	public void testAbortWakesUpBlockedProducer() throws Exception {
+		final QueuedProcessInput input = ProcessInput.queue(1);
+		input.put(ByteBuffer.allocate(1));
+		Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					input.put(ByteBuffer.allocate(1));
+				} catch (Exception e) {
+				}
+			}
+		});
+		producer.start();
+
+		Thread.sleep(50);
+		input.abort();
+		producer.join(5000);
+
+		assertFalse(producer.isAlive());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testQueueThrowsIllegalArgumentExceptionForZeroCapacity() {
+		ProcessInput.queue(0);
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testQueuePutThrowsNullPointerExceptionForNull() throws Exception {
+		ProcessInput.queue(1).put(null);
+	}
+
+	private static byte[] toBytes(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return bytes;
+	}
+}
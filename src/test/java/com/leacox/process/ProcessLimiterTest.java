@@ -0,0 +1,219 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ProcessLimiter}.
+ * 
+ * @author John Leacox
+ * 
+ */
+public class ProcessLimiterTest {
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	private Future<ProcessLimiter.Permit> acquireAsync(final ProcessLimiter limiter, final long timeoutMilliseconds) {
+		return executor.submit(new Callable<ProcessLimiter.Permit>() {
+			@Override
+			public ProcessLimiter.Permit call() throws InterruptedException {
+				return limiter.acquire(timeoutMilliseconds);
+			}
+		});
+	}
+
+	private static void awaitQueueLength(ProcessLimiter limiter, int queueLength) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (limiter.getQueueLength() != queueLength && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		assertEquals(queueLength, limiter.getQueueLength());
+	}
+
+	private static void awaitActiveCount(ProcessLimiter limiter, int activeCount) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (limiter.getActiveCount() != activeCount && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		assertEquals(activeCount, limiter.getActiveCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testConstructorThrowsIllegalArgumentExceptionForZero() {
+		new ProcessLimiter(0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSetMaxProcessesThrowsIllegalArgumentExceptionForZero() {
+		new ProcessLimiter(1).setMaxProcesses(0);
+	}
+
+	@Test
+	public void testAcquireFailsFastWithZeroTimeout() throws InterruptedException {
+		ProcessLimiter limiter = new ProcessLimiter(1);
+
+		assertNotNull(limiter.acquire(0));
+		assertNull(limiter.acquire(0));
+
+		assertEquals(1, limiter.getActiveCount());
+		assertEquals(1, limiter.getAdmittedCount());
+		assertEquals(1, limiter.getRejectedCount());
+	}
+
+	@Test
+	public void testAcquireTimesOut() throws InterruptedException {
+		ProcessLimiter limiter = new ProcessLimiter(1);
+		limiter.acquire(0);
+
+		assertNull(limiter.acquire(50));
+
+		assertEquals(1, limiter.getRejectedCount());
+		assertTrue(limiter.getMaxWaitNanoseconds() >= TimeUnit.MILLISECONDS.toNanos(50));
+		assertTrue(limiter.getTotalWaitNanoseconds() >= limiter.getMaxWaitNanoseconds());
+	}
+
+	@Test
+	public void testWaiterIsAdmittedWhenPermitIsReleased() throws Exception {
+		ProcessLimiter limiter = new ProcessLimiter(1);
+		ProcessLimiter.Permit permit = limiter.acquire(0);
+
+		Future<ProcessLimiter.Permit> waiter = acquireAsync(limiter, -1);
+		awaitQueueLength(limiter, 1);
+		permit.release();
+
+		assertNotNull(waiter.get(5, TimeUnit.SECONDS));
+		assertEquals(0, limiter.getQueueLength());
+		assertEquals(1, limiter.getActiveCount());
+	}
+
+	@Test
+	public void testRaisingLimitAdmitsWaiter() throws Exception {
+		ProcessLimiter limiter = new ProcessLimiter(1);
+		limiter.acquire(0);
+
+		Future<ProcessLimiter.Permit> waiter = acquireAsync(limiter, 10000);
+		awaitQueueLength(limiter, 1);
+		limiter.setMaxProcesses(2);
+
+		assertNotNull(waiter.get(5, TimeUnit.SECONDS));
+		assertEquals(2, limiter.getActiveCount());
+	}
+
+	@Test
+	public void testAcquireTakesSeveralPermitsAtOnce() throws InterruptedException {
+		ProcessLimiter limiter = new ProcessLimiter(3);
+		ProcessLimiter.Permit permit = limiter.acquire(0);
+
+		assertNull(limiter.acquire(3, 0));
+		assertEquals(1, limiter.getActiveCount());
+
+		permit.release();
+		List<ProcessLimiter.Permit> permits = limiter.acquire(3, 0);
+		assertEquals(3, permits.size());
+		assertEquals(3, limiter.getActiveCount());
+		for (ProcessLimiter.Permit p : permits) {
+			p.release();
+		}
+		assertEquals(0, limiter.getActiveCount());
+	}
+
+	@Test(timeout = 5000)
+	public void testAcquireRejectsMorePermitsThanLimitWithoutWaiting() throws InterruptedException {
+		ProcessLimiter limiter = new ProcessLimiter(2);
+
+		assertNull(limiter.acquire(3, -1));
+		assertEquals(1, limiter.getRejectedCount());
+	}
+
+	@Test
+	public void testPermitIsOnlyReleasedOnce() throws InterruptedException {
+		ProcessLimiter limiter = new ProcessLimiter(2);
+		ProcessLimiter.Permit permit = limiter.acquire(0);
+		limiter.acquire(0);
+
+		permit.release();
+		permit.release();
+
+		assertEquals(1, limiter.getActiveCount());
+	}
+
+	@Test
+	public void testStartFailsWhenLimitIsReached() throws IOException {
+		ProcessLimiter limiter = new ProcessLimiter(1);
+		FinalizedProcessBuilder pb = new FinalizedProcessBuilder("/bin/sh", "-c", "sleep 10").processLimiter(limiter)
+				.admissionTimeoutMilliseconds(0);
+
+		FinalizedProcess process = pb.start();
+		try {
+			pb.start().close();
+			fail("Expected ProcessAdmissionException");
+		} catch (ProcessAdmissionException e) {
+		} finally {
+			process.close();
+		}
+
+		assertEquals(0, limiter.getActiveCount());
+		pb.start().close();
+		assertEquals(2, limiter.getAdmittedCount());
+		assertEquals(1, limiter.getRejectedCount());
+	}
+
+	@Test
+	public void testPermitIsReleasedWhenProcessExits() throws IOException, InterruptedException {
+		ProcessLimiter limiter = new ProcessLimiter(1);
+		FinalizedProcess process = new FinalizedProcessBuilder("/bin/sh", "-c", "exit 0").processLimiter(limiter)
+				.start();
+		try {
+			awaitActiveCount(limiter, 0);
+		} finally {
+			process.close();
+		}
+		assertEquals(0, limiter.getActiveCount());
+	}
+
+	@Test
+	public void testPermitIsReleasedWhenStartFails() {
+		ProcessLimiter limiter = new ProcessLimiter(1);
+		try {
+			new FinalizedProcessBuilder("/does/not/exist").processLimiter(limiter).start();
+			fail("Expected IOException");
+		} catch (IOException e) {
+		}
+
+		assertEquals(0, limiter.getActiveCount());
+	}
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ProcessPipeline}.
+ * 
+ * @author John Leacox
+ * 
+ */
+public class ProcessPipelineTest {
+	private static FinalizedProcessBuilder sh(String script) {
+		return new FinalizedProcessBuilder("/bin/sh", "-c", script);
+	}
+
+	private static String readFully(InputStream inputStream) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int read;
+		while ((read = inputStream.read(buffer)) != -1) {
+			output.write(buffer, 0, read);
+		}
+		return output.toString();
+	}
+
+	@Test
+	public void testConnectsStages() throws Exception {
+		ProcessPipeline pipeline = FinalizedProcessBuilder.startPipeline(Arrays.asList(sh("printf 'b\\na\\nc\\n'"),
+				new FinalizedProcessBuilder("sort"), new FinalizedProcessBuilder("tr", "a-z", "A-Z")));
+		try {
+			assertEquals("A\nB\nC\n", readFully(pipeline.getInputStream()));
+			assertArrayEquals(new int[] { 0, 0, 0 }, pipeline.waitAll(5000));
+		} finally {
+			pipeline.close();
+		}
+	}
+
+	@Test
+	public void testWritesToFirstStage() throws Exception {
+		ProcessPipeline pipeline = FinalizedProcessBuilder.startPipeline(Arrays.asList(new FinalizedProcessBuilder(
+				"cat"), new FinalizedProcessBuilder("tr", "a-z", "A-Z")));
+		try {
+			OutputStream input = pipeline.getOutputStream();
+			input.write("hello\n".getBytes());
+			input.close();
+
+			assertEquals("HELLO\n", readFully(pipeline.getInputStream()));
+			assertArrayEquals(new int[] { 0, 0 }, pipeline.waitAll(5000));
+		} finally {
+			pipeline.close();
+		}
+	}
+
+	@Test
+	public void testReportsExitValueOfEachStage() throws Exception {
+		ProcessPipeline pipeline = FinalizedProcessBuilder.startPipeline(Arrays.asList(sh("echo x; exit 3"),
+				sh("cat > /dev/null; exit 5")));
+		try {
+			assertArrayEquals(new int[] { 3, 5 }, pipeline.waitAll(5000));
+		} finally {
+			pipeline.close();
+		}
+	}
+
+	@Test
+	public void testCloseClosesEveryStage() throws Exception {
+		ProcessPipeline pipeline = FinalizedProcessBuilder.startPipeline(Arrays.asList(sh("sleep 30"),
+				new FinalizedProcessBuilder("cat")));
+		pipeline.close();
+
+		int[] exitValues = pipeline.waitAll(5000);
+		assertTrue(exitValues[0] != 0);
+	}
+
+	@Test
+	public void testReleasesPermitsWhenStartFails() {
+		ProcessLimiter limiter = new ProcessLimiter(10);
+		try {
+			FinalizedProcessBuilder.startPipeline(Arrays.asList(new FinalizedProcessBuilder("cat")
+					.processLimiter(limiter), new FinalizedProcessBuilder("/does/not/exist").processLimiter(limiter)));
+			fail("Expected IOException");
+		} catch (IOException e) {
+		}
+
+		assertEquals(0, limiter.getActiveCount());
+	}
+
+	@Test(timeout = 5000)
+	public void testRejectsPipelineWithMoreStagesThanLimit() {
+		ProcessLimiter limiter = new ProcessLimiter(2);
+		try {
+			FinalizedProcessBuilder.startPipeline(Arrays.asList(sh("echo a").processLimiter(limiter),
+					new FinalizedProcessBuilder("cat").processLimiter(limiter), new FinalizedProcessBuilder("cat")
+							.processLimiter(limiter)));
+			fail("Expected ProcessAdmissionException");
+		} catch (ProcessAdmissionException e) {
+		} catch (IOException e) {
+			fail("Expected ProcessAdmissionException");
+		}
+
+		assertEquals(0, limiter.getActiveCount());
+	}
+
+	@Test(timeout = 30000)
+	public void testConcurrentPipelinesDoNotDeadlockOnLimiter() throws Exception {
+		final ProcessLimiter limiter = new ProcessLimiter(2);
+		final AtomicInteger completed = new AtomicInteger();
+		final CyclicBarrier barrier = new CyclicBarrier(2);
+		Runnable runner = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; i < 10; i++) {
+						barrier.await();
+						ProcessPipeline pipeline = FinalizedProcessBuilder.startPipeline(Arrays.asList(sh("echo a")
+								.processLimiter(limiter), new FinalizedProcessBuilder("cat").processLimiter(limiter)));
+						try {
+							readFully(pipeline.getInputStream());
+							pipeline.waitAll(5000);
+						} finally {
+							pipeline.close();
+						}
+						completed.incrementAndGet();
+					}
+				} catch (Exception e) {
+				}
+			}
+		};
+		Thread first = new Thread(runner);
+		Thread second = new Thread(runner);
+		first.start();
+		second.start();
+		first.join();
+		second.join();
+
+		assertEquals(20, completed.get());
+		assertEquals(0, limiter.getActiveCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testStartPipelineThrowsIllegalArgumentExceptionForEmptyList() throws IOException {
+		FinalizedProcessBuilder.startPipeline(Collections.<FinalizedProcessBuilder> emptyList());
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testStartPipelineThrowsNullPointerExceptionForNullStage() throws IOException {
+		FinalizedProcessBuilder.startPipeline(Arrays.asList(new FinalizedProcessBuilder("cat"), null));
+	}
+}
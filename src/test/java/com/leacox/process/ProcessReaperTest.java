@@ -0,0 +1,119 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ProcessReaper}.
+ * 
+ * @author John Leacox
+ * 
+ */
+public class ProcessReaperTest {
+	@Test
+	public void testManyProcessesShareOneReaperThread() throws Exception {
+		ProcessReaper reaper = new ProcessReaper("test-reaper");
+		List<FinalizedProcess> processes = new ArrayList<FinalizedProcess>();
+		List<ExitFuture> futures = new ArrayList<ExitFuture>();
+		try {
+			for (int i = 0; i < 20; i++) {
+				FinalizedProcess process = new FinalizedProcessBuilder("/bin/sh", "-c", "sleep 0.2; exit " + i).start();
+				processes.add(process);
+
+				ExitFuture future = new ExitFuture(process);
+				futures.add(future);
+				reaper.register(future);
+			}
+
+			for (int i = 0; i < futures.size(); i++) {
+				assertEquals(Integer.valueOf(i), futures.get(i).get(5, TimeUnit.SECONDS));
+			}
+			assertEquals(1, reaper.getThreadsCreated());
+		} finally {
+			for (FinalizedProcess process : processes) {
+				process.close();
+			}
+		}
+	}
+
+	@Test
+	public void testReaperThreadRestartsAfterIdle() throws Exception {
+		ProcessReaper reaper = new ProcessReaper("test-reaper");
+
+		FinalizedProcess process = new FinalizedProcessBuilder("/bin/sh", "-c", "exit 0").start();
+		try {
+			ExitFuture future = new ExitFuture(process);
+			reaper.register(future);
+			future.get(5, TimeUnit.SECONDS);
+		} finally {
+			process.close();
+		}
+
+		Thread.sleep(1500);
+
+		process = new FinalizedProcessBuilder("/bin/sh", "-c", "exit 1").start();
+		try {
+			ExitFuture future = new ExitFuture(process);
+			reaper.register(future);
+			assertEquals(Integer.valueOf(1), future.get(5, TimeUnit.SECONDS));
+		} finally {
+			process.close();
+		}
+
+		assertEquals(2, reaper.getThreadsCreated());
+	}
+
+	@Test
+	public void testThrowingListenerDoesNotStopReaper() throws Exception {
+		ProcessReaper reaper = new ProcessReaper("test-reaper");
+
+		FinalizedProcess process = new FinalizedProcessBuilder("/bin/sh", "-c", "exit 0").start();
+		try {
+			ExitFuture future = new ExitFuture(process);
+			future.addListener(new ExitListener() {
+				@Override
+				public void onExit(FinalizedProcess process, int exitValue) {
+					throw new IllegalStateException("listener failure");
+				}
+
+				@Override
+				public void onTimeout(FinalizedProcess process) {
+				}
+			});
+			reaper.register(future);
+			future.get(5, TimeUnit.SECONDS);
+		} finally {
+			process.close();
+		}
+
+		process = new FinalizedProcessBuilder("/bin/sh", "-c", "sleep 0.1; exit 2").start();
+		try {
+			ExitFuture future = new ExitFuture(process);
+			reaper.register(future);
+			assertEquals(Integer.valueOf(2), future.get(5, TimeUnit.SECONDS));
+		} finally {
+			process.close();
+		}
+	}
+}
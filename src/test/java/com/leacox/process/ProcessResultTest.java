@@ -0,0 +1,75 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ProcessResult}.
+ * 
+ * @author John Leacox
+ * 
+ */
+public class ProcessResultTest {
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	@Test
+	public void testAccessors() {
+		ProcessResult result = new ProcessResult(3, "out".getBytes(UTF_8), true, "err".getBytes(UTF_8), false, true);
+
+		assertEquals(3, result.getExitValue());
+		assertArrayEquals("out".getBytes(UTF_8), result.getOutput());
+		assertEquals("out", result.getOutputString(UTF_8));
+		assertTrue(result.isOutputTruncated());
+		assertArrayEquals("err".getBytes(UTF_8), result.getError());
+		assertEquals("err", result.getErrorString(UTF_8));
+		assertFalse(result.isErrorTruncated());
+		assertTrue(result.isComplete());
+	}
+
+	@Test
+	public void testToStringMarksIncompleteResult() {
+		ProcessResult result = new ProcessResult(0, new byte[0], false, new byte[0], false, false);
+
+		assertFalse(result.isComplete());
+		assertEquals("ProcessResult[exitValue=0, output=0 bytes, error=0 bytes, incomplete]", result.toString());
+	}
+
+	@Test
+	public void testDecodedStringIsCached() {
+		ProcessResult result = new ProcessResult(0, "out".getBytes(), false, "err".getBytes(), false, true);
+
+		assertSame(result.getOutputString(), result.getOutputString());
+		assertSame(result.getErrorString(), result.getErrorString());
+	}
+
+	@Test
+	public void testBytesCannotBeModified() {
+		ProcessResult result = new ProcessResult(0, "out".getBytes(UTF_8), false, new byte[0], false, true);
+		result.getOutput()[0] = 'x';
+
+		assertEquals("out", result.getOutputString(UTF_8));
+	}
+}
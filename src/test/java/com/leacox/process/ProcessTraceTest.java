@@ -0,0 +1,78 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.leacox.process.ProcessTrace.Phase;
+
+/**
+ * Unit tests for {@link ProcessTrace}.
+ * 
+ * @author John Leacox
+ * 
+ */
+public class ProcessTraceTest {
+	@Test
+	public void testRecord() {
+		ProcessTrace trace = new ProcessTrace("cat");
+		trace.record(Phase.START_REQUESTED, 1000);
+		trace.record(Phase.SPAWNED, 3000);
+
+		assertTrue(trace.isReached(Phase.SPAWNED));
+		assertFalse(trace.isReached(Phase.CLOSED));
+		assertEquals(3000, trace.getNanoTime(Phase.SPAWNED));
+		assertEquals(2000, trace.getNanosecondsSinceStart(Phase.SPAWNED));
+		assertEquals(-1, trace.getNanosecondsSinceStart(Phase.CLOSED));
+	}
+
+	@Test
+	public void testRecordKeepsFirstTime() {
+		ProcessTrace trace = new ProcessTrace("cat");
+		trace.record(Phase.CLOSED, 1000);
+		trace.record(Phase.CLOSED, 2000);
+
+		assertEquals(1000, trace.getNanoTime(Phase.CLOSED));
+	}
+
+	@Test
+	public void testSinceStartWithoutStart() {
+		ProcessTrace trace = new ProcessTrace(null);
+		trace.record(Phase.CLOSED);
+
+		assertEquals(-1, trace.getNanosecondsSinceStart(Phase.CLOSED));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testGetNanoTimeThrowsIllegalStateExceptionWhenNotReached() {
+		new ProcessTrace("cat").getNanoTime(Phase.SPAWNED);
+	}
+
+	@Test
+	public void testToString() {
+		ProcessTrace trace = new ProcessTrace("cat");
+		trace.record(Phase.START_REQUESTED, 1000);
+		trace.record(Phase.SPAWNED, 813000);
+		trace.record(Phase.CLOSED, 2001000);
+
+		assertEquals("[START_REQUESTED=0us, SPAWNED=812us, CLOSED=2000us]", trace.toString());
+	}
+}
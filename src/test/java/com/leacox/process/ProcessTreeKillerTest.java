@@ -0,0 +1,133 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ProcessTreeKiller}.
+ * 
+ * @author John Leacox
+ * 
+ */
+public class ProcessTreeKillerTest {
+	private ProcessTree tree;
+
+	@Before
+	public void setUp() {
+		File proc = new File("/proc");
+		Assume.assumeTrue(proc.isDirectory());
+		tree = new ProcessTree.ProcFsProcessTree(proc);
+	}
+
+	@Test
+	public void testKillTerminatesTreeGracefully() throws Exception {
+		FinalizedProcess process = new FinalizedProcessBuilder("/bin/sh", "-c", "sleep 30 & sleep 30 & wait").start();
+		try {
+			List<Long> sleeps = startedDescendants(process, 2);
+
+			KillReport report = new ProcessTreeKiller(tree).kill(process.getProcess(), 2000, 5000);
+
+			assertTrue(report.isComplete());
+			assertEquals(3, report.getTerminated().size());
+			assertTrue(report.getTerminated().containsAll(sleeps));
+			assertTrue(report.getKilled().isEmpty());
+			assertEquals("sleep", report.getCommand(sleeps.get(0)));
+			assertNotAlive(sleeps);
+		} finally {
+			process.close();
+		}
+	}
+
+	@Test
+	public void testKillEscalatesAfterGracePeriod() throws Exception {
+		FinalizedProcess process = new FinalizedProcessBuilder("/bin/sh", "-c",
+				"trap '' TERM; sleep 30 & sleep 30 & wait").start();
+		try {
+			List<Long> sleeps = startedDescendants(process, 2);
+
+			KillReport report = new ProcessTreeKiller(tree).kill(process.getProcess(), 200, 5000);
+
+			assertTrue(report.isComplete());
+			assertEquals(3, report.getKilled().size());
+			assertTrue(report.getKilled().containsAll(sleeps));
+			assertTrue(report.getElapsedMilliseconds() >= 200);
+			assertNotAlive(sleeps);
+		} finally {
+			process.close();
+		}
+	}
+
+	@Test
+	public void testKillWithoutGracePeriodKillsRightAway() throws Exception {
+		FinalizedProcess process = new FinalizedProcessBuilder("/bin/sh", "-c", "sleep 30 & wait").start();
+		try {
+			List<Long> sleeps = startedDescendants(process, 1);
+
+			KillReport report = new ProcessTreeKiller(tree).kill(process.getProcess(), 0, 5000);
+
+			assertTrue(report.getTerminated().isEmpty());
+			assertEquals(2, report.getKilled().size());
+			assertNotAlive(sleeps);
+		} finally {
+			process.close();
+		}
+	}
+
+	@Test
+	public void testKillExitedProcess() throws Exception {
+		FinalizedProcess process = new FinalizedProcessBuilder("true").start();
+		try {
+			assertEquals(0, process.waitFor(5000));
+
+			KillReport report = new ProcessTreeKiller(tree).kill(process.getProcess(), 1000, 5000);
+
+			assertTrue(report.isComplete());
+			assertTrue(report.getTerminated().isEmpty());
+			assertTrue(report.getKilled().isEmpty());
+		} finally {
+			process.close();
+		}
+	}
+
+	private List<Long> startedDescendants(FinalizedProcess process, int count) throws InterruptedException {
+		long pid = ProcessCompat.pid(process.getProcess());
+		Assume.assumeTrue(pid > 0);
+		List<Long> pids = new ArrayList<Long>();
+		for (Object descendant : ProcessTreeTest.awaitDescendants(tree, tree.handle(pid), count)) {
+			pids.add(Long.valueOf(tree.pid(descendant)));
+		}
+		assertEquals(count, pids.size());
+		return pids;
+	}
+
+	private void assertNotAlive(List<Long> pids) {
+		for (Long pid : pids) {
+			assertFalse(tree.isAlive(pid));
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ProcessTree}.
+ * 
+ * @author John Leacox
+ * 
+ */
+public class ProcessTreeTest {
+	@Test
+	public void testParseStat() {
+		assertArrayEquals(new String[] { "sleep", "S", "42" },
+				ProcessTree.ProcFsProcessTree.parseStat("1234 (sleep) S 42 1234 1 0 -1"));
+	}
+
+	@Test
+	public void testParseStatWithParenthesesInCommand() {
+		assertArrayEquals(new String[] { "my (cmd) x", "Z", "7" },
+				ProcessTree.ProcFsProcessTree.parseStat("99 (my (cmd) x) Z 7 99 1 0"));
+	}
+
+	@Test
+	public void testParseStatReturnsNullForMalformedLine() {
+		assertNull(ProcessTree.ProcFsProcessTree.parseStat("99 sleep S 7"));
+		assertNull(ProcessTree.ProcFsProcessTree.parseStat(null));
+	}
+
+	@Test
+	public void testProcFsDescendants() throws Exception {
+		File proc = new File("/proc");
+		Assume.assumeTrue(proc.isDirectory());
+		testDescendants(new ProcessTree.ProcFsProcessTree(proc));
+	}
+
+	@Test
+	public void testDefaultDescendants() throws Exception {
+		Assume.assumeTrue(new File("/proc").isDirectory() || ProcessTree.HandleProcessTree.create(null) != null);
+		testDescendants(ProcessTree.getInstance());
+	}
+
+	private static void testDescendants(ProcessTree tree) throws Exception {
+		FinalizedProcess process = new FinalizedProcessBuilder("/bin/sh", "-c", "sleep 30 & sleep 30 & wait").start();
+		try {
+			long pid = ProcessCompat.pid(process.getProcess());
+			Assume.assumeTrue(pid > 0);
+			Object root = tree.handle(pid);
+			List<Object> descendants = awaitDescendants(tree, root, 2);
+
+			assertEquals(pid, tree.pid(root));
+			assertTrue(tree.isAlive(root));
+			assertEquals(2, descendants.size());
+			for (Object descendant : descendants) {
+				assertEquals("sleep", tree.command(descendant));
+			}
+
+			tree.signal(descendants, true);
+			long deadline = System.currentTimeMillis() + 5000;
+			while ((tree.isAlive(descendants.get(0)) || tree.isAlive(descendants.get(1)))
+					&& System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertFalse(tree.isAlive(descendants.get(0)));
+			assertFalse(tree.isAlive(descendants.get(1)));
+		} finally {
+			process.close();
+		}
+	}
+
+	static List<Object> awaitDescendants(ProcessTree tree, Object root, int count) throws InterruptedException {
+		List<Object> descendants = new ArrayList<Object>();
+		long deadline = System.currentTimeMillis() + 5000;
+		while (System.currentTimeMillis() < deadline) {
+			descendants = tree.descendants(root);
+			if (descendants.size() >= count) {
+				break;
+			}
+			Thread.sleep(10);
+		}
+		return descendants;
+	}
+}
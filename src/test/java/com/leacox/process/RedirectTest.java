@@ -0,0 +1,65 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link Redirect}.
+ * 
+ * @author John Leacox
+ * 
+ */
+public class RedirectTest {
+	@Test
+	public void testFactories() {
+		File file = new File("file.txt");
+
+		assertEquals(Redirect.Type.READ, Redirect.from(file).type());
+		assertEquals(Redirect.Type.WRITE, Redirect.to(file).type());
+		assertEquals(Redirect.Type.APPEND, Redirect.appendTo(file).type());
+		assertEquals(file, Redirect.to(file).file());
+		assertNull(Redirect.PIPE.file());
+	}
+
+	@Test
+	public void testEquals() {
+		File file = new File("file.txt");
+
+		assertEquals(Redirect.to(file), Redirect.to(new File("file.txt")));
+		assertEquals(Redirect.to(file).hashCode(), Redirect.to(new File("file.txt")).hashCode());
+		assertFalse(Redirect.to(file).equals(Redirect.appendTo(file)));
+		assertFalse(Redirect.PIPE.equals(Redirect.INHERIT));
+	}
+
+	@Test
+	public void testToString() {
+		assertEquals("DISCARD", Redirect.DISCARD.toString());
+		assertEquals("APPEND file.txt", Redirect.appendTo(new File("file.txt")).toString());
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testToThrowsNullPointerExceptionForNullFile() {
+		Redirect.to(null);
+	}
+}
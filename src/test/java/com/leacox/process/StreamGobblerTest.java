@@ -17,20 +17,25 @@
 package com.leacox.process;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.junit.Assume;
 import org.junit.Test;
-import org.junit.runner.RunWith;
-import org.powermock.api.mockito.PowerMockito;
-import org.powermock.core.classloader.annotations.PrepareForTest;
-import org.powermock.modules.junit4.PowerMockRunner;
-
-import com.leacox.process.StreamGobbler.GobblerThread;
 
 /**
  * Unit tests for {@link StreamGobbler}.
@@ -38,15 +43,26 @@ import com.leacox.process.StreamGobbler.GobblerThread;
  * @author John Leacox
  * 
  */
-@RunWith(PowerMockRunner.class)
-@PrepareForTest({ StreamGobbler.class, GobblerThread.class })
 public class StreamGobblerTest {
+	private static final Executor CALLER_RUNS = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
 	@SuppressWarnings("resource")
 	@Test(expected = NullPointerException.class)
 	public void testConstructorThrowsNullPointerExceptionForNullInputStream() {
 		new StreamGobbler((InputStream) null, false);
 	}
 
+	@SuppressWarnings("resource")
+	@Test(expected = NullPointerException.class)
+	public void testConstructorThrowsNullPointerExceptionForNullExecutor() {
+		new StreamGobbler(mock(InputStream.class), false, null);
+	}
+
 	@Test
 	public void testClose() throws IOException {
 		InputStream inputStream = mock(InputStream.class);
@@ -62,18 +78,251 @@ public class StreamGobblerTest {
 				" [ ? ]  acpi-support\n [ ? ]  acpid\n [ ? ]  alsa-restore\n [ ? ]  alsa-store".getBytes("UTF-8"));
 		boolean enableLogging = true;
 
-		GobblerThread thread = new GobblerThread(inputStream, enableLogging);
-		PowerMockito.whenNew(GobblerThread.class).withArguments(inputStream, enableLogging).thenReturn(thread);
+		StreamGobbler gobbler = new StreamGobbler(inputStream, enableLogging, CALLER_RUNS);
+		gobbler.gobble();
+
+		gobbler.close();
 
-		StreamGobbler gobbler = null;
+		// Verify that there is nothing left to read on the input stream
+		assertEquals(0, inputStream.available());
+	}
 
-		gobbler = new StreamGobbler(inputStream, enableLogging);
+	@Test
+	public void testGobbleReportsMetrics() throws Exception {
+		CountingProcessMetrics metrics = new CountingProcessMetrics();
+		InputStream inputStream = new ByteArrayInputStream("one\ntwo\nthree".getBytes("UTF-8"));
+
+		StreamGobbler gobbler = new StreamGobbler(inputStream, false, CALLER_RUNS);
+		gobbler.metrics(metrics, ProcessMetrics.Stream.ERROR);
 		gobbler.gobble();
-		thread.join();
 
+		assertEquals(13, metrics.getBytesGobbled(ProcessMetrics.Stream.ERROR));
+		assertEquals(2, metrics.getLinesGobbled(ProcessMetrics.Stream.ERROR));
+		assertEquals(0, metrics.getBytesGobbled(ProcessMetrics.Stream.OUTPUT));
+		assertEquals(0, metrics.getLiveGobblers());
+	}
+
+	@Test
+	public void testGobblerIsLiveWhileRunning() throws Exception {
+		final CountingProcessMetrics metrics = new CountingProcessMetrics();
+		final AtomicReference<Long> liveGobblers = new AtomicReference<Long>();
+		InputStream inputStream = new ByteArrayInputStream(new byte[0]) {
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				liveGobblers.set(metrics.getLiveGobblers());
+				return -1;
+			}
+		};
+
+		StreamGobbler gobbler = new StreamGobbler(inputStream, false, CALLER_RUNS);
+		gobbler.metrics(metrics, ProcessMetrics.Stream.OUTPUT);
+		gobbler.gobble();
+
+		assertEquals(Long.valueOf(1), liveGobblers.get());
+		assertEquals(0, metrics.getLiveGobblers());
+	}
+
+	@SuppressWarnings("resource")
+	@Test(expected = NullPointerException.class)
+	public void testMetricsThrowsNullPointerExceptionForNullStream() {
+		new StreamGobbler(mock(InputStream.class), false).metrics(new CountingProcessMetrics(), null);
+	}
+
+	@Test
+	public void testGobbleOnSharedExecutor() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final AtomicReference<String> threadName = new AtomicReference<String>();
+		InputStream inputStream = new ByteArrayInputStream(new byte[0]) {
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				threadName.set(Thread.currentThread().getName());
+				latch.countDown();
+				return -1;
+			}
+		};
+
+		StreamGobbler gobbler = new StreamGobbler(inputStream, false);
+		gobbler.gobble();
+
+		assertTrue(latch.await(2, TimeUnit.SECONDS));
+		assertTrue(threadName.get().startsWith("StreamGobbler-"));
 		gobbler.close();
+	}
 
-		// Verify that there is nothing left to read on the input stream
+	@Test
+	public void testLineListener() throws IOException {
+		InputStream inputStream = new ByteArrayInputStream("first\nsecond\r\nthird".getBytes("UTF-8"));
+		final List<String> lines = new ArrayList<String>();
+
+		StreamGobbler gobbler = new StreamGobbler(inputStream, false, CALLER_RUNS);
+		gobbler.lineListener(new LineListener() {
+			@Override
+			public void onLine(byte[] buffer, int offset, int length) {
+				lines.add(new String(buffer, offset, length));
+			}
+		});
+		gobbler.gobble();
+		gobbler.close();
+
+		assertEquals(Arrays.asList("first", "second", "third"), lines);
+	}
+
+	@Test
+	public void testFailingLineListenerDoesNotStopGobbling() throws IOException {
+		InputStream inputStream = new ByteArrayInputStream("a\nb\nc\n".getBytes("UTF-8"));
+		final List<String> lines = new ArrayList<String>();
+
+		StreamGobbler gobbler = new StreamGobbler(inputStream, false, CALLER_RUNS);
+		gobbler.lineListener(new LineListener() {
+			@Override
+			public void onLine(byte[] buffer, int offset, int length) {
+				lines.add(new String(buffer, offset, length));
+				throw new IllegalStateException("listener failure");
+			}
+		});
+		gobbler.gobble();
+		gobbler.close();
+
+		assertEquals(Arrays.asList("a", "b", "c"), lines);
 		assertEquals(0, inputStream.available());
 	}
+
+	@Test(expected = NullPointerException.class)
+	public void testLineListenerThrowsNullPointerExceptionForNull() {
+		new StreamGobbler(mock(InputStream.class), false).lineListener(null);
+	}
+
+	@Test
+	public void testHandoffDeliversAllLinesWithBlockPolicy() throws Exception {
+		StringBuilder input = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			input.append("line").append(i).append('\n');
+		}
+		InputStream inputStream = new ByteArrayInputStream(input.toString().getBytes("UTF-8"));
+		final List<String> lines = Collections.synchronizedList(new ArrayList<String>());
+
+		StreamGobbler gobbler = new StreamGobbler(inputStream, false);
+		gobbler.lineListener(new LineListener() {
+			@Override
+			public void onLine(byte[] buffer, int offset, int length) {
+				lines.add(new String(buffer, offset, length));
+			}
+		});
+		gobbler.handoff(64, OverflowPolicy.BLOCK);
+		gobbler.gobble();
+
+		assertTrue(gobbler.awaitCompletion(5000));
+		assertEquals(1000, lines.size());
+		assertEquals("line999", lines.get(999));
+		assertEquals(0, gobbler.getDroppedBytes());
+		gobbler.close();
+	}
+
+	@Test
+	public void testHandoffDoesNotStallReaderWithDropPolicy() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch readerDone = new CountDownLatch(1);
+		InputStream inputStream = new ByteArrayInputStream(new byte[100000]) {
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				int read = super.read(b, off, len);
+				if (read == -1) {
+					readerDone.countDown();
+				}
+				return read;
+			}
+		};
+
+		StreamGobbler gobbler = new StreamGobbler(inputStream, false);
+		gobbler.lineListener(new LineListener() {
+			@Override
+			public void onLine(byte[] buffer, int offset, int length) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+				}
+			}
+		});
+		gobbler.handoff(1024, OverflowPolicy.DROP_NEWEST);
+		gobbler.gobble();
+
+		// The listener is stuck, but the reader still drains the whole stream
+		assertTrue(readerDone.await(5, TimeUnit.SECONDS));
+		release.countDown();
+
+		assertTrue(gobbler.awaitCompletion(5000));
+		assertTrue(gobbler.getDroppedBytes() > 0);
+		gobbler.close();
+	}
+
+	@Test
+	public void testGobbleWithoutLoggingConsumesAllBytes() throws IOException {
+		ChunkedInputStream inputStream = new ChunkedInputStream(1000);
+
+		StreamGobbler gobbler = new StreamGobbler(inputStream, false, CALLER_RUNS);
+		gobbler.gobble();
+		gobbler.close();
+
+		assertEquals(1000, inputStream.chunksRead);
+	}
+
+	@Test
+	public void testGobbleWithoutLoggingDoesNotAllocatePerChunk() throws IOException {
+		Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+
+		// Warm up so that the measured runs only differ in the number of chunks read
+		gobbleChunks(100000);
+
+		long fewChunks = gobbleChunks(1000);
+		long manyChunks = gobbleChunks(100000);
+
+		// 99,000 extra chunks of 8 KiB must not add any allocation beyond measurement noise
+		assertTrue("allocated " + (manyChunks - fewChunks) + " bytes", manyChunks - fewChunks < 1024);
+	}
+
+	private static long gobbleChunks(int chunks) throws IOException {
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+
+		ChunkedInputStream inputStream = new ChunkedInputStream(chunks);
+		StreamGobbler gobbler = new StreamGobbler(inputStream, false, CALLER_RUNS);
+		long before = threadBean.getThreadAllocatedBytes(threadId);
+		gobbler.gobble();
+		long after = threadBean.getThreadAllocatedBytes(threadId);
+		gobbler.close();
+
+		return after - before;
+	}
+
+	/**
+	 * An input stream that produces a fixed number of full chunks without allocating.
+	 */
+	private static class ChunkedInputStream extends InputStream {
+		private final int chunks;
+		private int chunksRead = 0;
+
+		ChunkedInputStream(int chunks) {
+			this.chunks = chunks;
+		}
+
+		@Override
+		public int read() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (chunksRead == chunks) {
+				return -1;
+			}
+			chunksRead++;
+			b[off] = (byte) chunksRead;
+			return len;
+		}
+	}
 }
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link TailBuffer}.
+ * 
+ * @author John Leacox
+ * 
+ */
+public class TailBufferTest {
+	@Test(expected = IllegalArgumentException.class)
+	public void testConstructorThrowsIllegalArgumentExceptionForZeroCapacity() {
+		new TailBuffer(0);
+	}
+
+	@Test
+	public void testEmpty() {
+		assertEquals(0, new TailBuffer(4).toByteArray().length);
+	}
+
+	@Test
+	public void testWriteLessThanCapacity() {
+		TailBuffer tail = new TailBuffer(8);
+		tail.write(bytes("abc"), 0, 3);
+
+		assertArrayEquals(bytes("abc"), tail.toByteArray());
+	}
+
+	@Test
+	public void testWriteWrapsAround() {
+		TailBuffer tail = new TailBuffer(4);
+		tail.write(bytes("abc"), 0, 3);
+		tail.write(bytes("def"), 0, 3);
+
+		assertArrayEquals(bytes("cdef"), tail.toByteArray());
+	}
+
+	@Test
+	public void testWriteExactlyCapacity() {
+		TailBuffer tail = new TailBuffer(4);
+		tail.write(bytes("ab"), 0, 2);
+		tail.write(bytes("cd"), 0, 2);
+
+		assertArrayEquals(bytes("abcd"), tail.toByteArray());
+	}
+
+	@Test
+	public void testWriteLargerThanCapacity() {
+		TailBuffer tail = new TailBuffer(4);
+		tail.write(bytes("x"), 0, 1);
+		tail.write(bytes("0123456789"), 2, 7);
+
+		assertArrayEquals(bytes("5678"), tail.toByteArray());
+	}
+
+	@Test
+	public void testManySmallWrites() {
+		TailBuffer tail = new TailBuffer(5);
+		for (char c = 'a'; c <= 'z'; c++) {
+			tail.write(new byte[] { (byte) c }, 0, 1);
+		}
+
+		assertArrayEquals(bytes("vwxyz"), tail.toByteArray());
+	}
+
+	private static byte[] bytes(String value) {
+		return value.getBytes();
+	}
+}
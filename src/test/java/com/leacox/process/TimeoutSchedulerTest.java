@@ -0,0 +1,111 @@
+/*
+ * Copyright 2013 John Leacox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package com.leacox.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link TimeoutScheduler}.
+ * 
+ * @author John Leacox
+ * 
+ */
+public class TimeoutSchedulerTest {
+	@Test
+	public void testNoThreadsBeforeFirstSchedule() {
+		TimeoutScheduler scheduler = new TimeoutScheduler("test-timeout", 50);
+
+		assertEquals(0, scheduler.getPoolSize());
+		assertEquals(0, scheduler.getThreadsCreated());
+	}
+
+	@Test
+	public void testScheduleRunsTask() throws InterruptedException {
+		TimeoutScheduler scheduler = new TimeoutScheduler("test-timeout", 50);
+		final CountDownLatch latch = new CountDownLatch(1);
+		scheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				latch.countDown();
+			}
+		}, 10, TimeUnit.MILLISECONDS);
+
+		assertTrue(latch.await(2, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testCancelPreventsTaskFromRunning() throws InterruptedException {
+		TimeoutScheduler scheduler = new TimeoutScheduler("test-timeout", 50);
+		final AtomicBoolean ran = new AtomicBoolean();
+		ScheduledFuture<?> future = scheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				ran.set(true);
+			}
+		}, 100, TimeUnit.MILLISECONDS);
+		scheduler.cancel(future);
+
+		Thread.sleep(200);
+		assertFalse(ran.get());
+	}
+
+	@Test
+	public void testThreadDiesWhenIdle() throws InterruptedException {
+		TimeoutScheduler scheduler = new TimeoutScheduler("test-timeout", 50);
+		ScheduledFuture<?> future = scheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+			}
+		}, 1, TimeUnit.HOURS);
+		assertEquals(1, scheduler.getPoolSize());
+
+		// A cancelled deadline must not keep the thread alive until it would have expired
+		scheduler.cancel(future);
+		long deadline = System.currentTimeMillis() + 2000;
+		while (scheduler.getPoolSize() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+
+		assertEquals(0, scheduler.getPoolSize());
+	}
+
+	@Test
+	public void testThreadCreationStaysFlatForManySchedules() throws InterruptedException {
+		TimeoutScheduler scheduler = new TimeoutScheduler("test-timeout", 1000);
+		final CountDownLatch latch = new CountDownLatch(500);
+		for (int i = 0; i < 500; i++) {
+			scheduler.schedule(new Runnable() {
+				@Override
+				public void run() {
+					latch.countDown();
+				}
+			}, i % 20, TimeUnit.MILLISECONDS);
+		}
+
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertEquals(1, scheduler.getThreadsCreated());
+	}
+}